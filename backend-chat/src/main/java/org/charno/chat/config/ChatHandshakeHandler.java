@@ -0,0 +1,16 @@
+package org.charno.chat.config;
+
+import org.charno.chat.constants.ChatConstants;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+/**
+ * 聊天WebSocket握手处理器
+ * 支持JSON与二进制两种子协议（客户端未请求子协议时使用JSON）。
+ * permessage-deflate等扩展由Tomcat在升级时按客户端请求自行协商，与子协议无关。
+ */
+public class ChatHandshakeHandler extends DefaultHandshakeHandler {
+
+    public ChatHandshakeHandler() {
+        setSupportedProtocols(ChatConstants.WebSocket.JSON_PROTOCOL, ChatConstants.WebSocket.BINARY_PROTOCOL);
+    }
+}
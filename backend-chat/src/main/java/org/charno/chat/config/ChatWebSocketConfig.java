@@ -28,8 +28,9 @@ public class ChatWebSocketConfig implements WebSocketConfigurer {
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        // 注册WebSocket处理器，允许跨域
+        // 注册WebSocket处理器，允许跨域；握手时协商JSON/二进制子协议
         registry.addHandler(chatWebSocketHandler, "/chat/websocket")
+                .setHandshakeHandler(new ChatHandshakeHandler())
                 .addInterceptors(webSocketAuthInterceptor)
                 .setAllowedOrigins("*");
     }
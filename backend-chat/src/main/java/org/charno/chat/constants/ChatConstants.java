@@ -27,6 +27,12 @@ public class ChatConstants {
         
         /** 最大二进制消息大小（字节） */
         public static final int MAX_BINARY_MESSAGE_SIZE = 8192;
+        
+        /** JSON文本子协议（未协商子协议时的默认协议） */
+        public static final String JSON_PROTOCOL = "reflip.chat.json.v1";
+        
+        /** 紧凑二进制子协议 */
+        public static final String BINARY_PROTOCOL = "reflip.chat.binary.v1";
     }
 
     /**
@@ -52,6 +58,9 @@ public class ChatConstants {
         /** 消息已发送 */
         public static final String MESSAGE_SENT = "message_sent";
         
+        /** 已确认的消息最终未能保存 */
+        public static final String MESSAGE_FAILED = "message_failed";
+        
         /** 系统消息 */
         public static final String SYSTEM_MESSAGE = "system_message";
         
@@ -64,6 +73,12 @@ public class ChatConstants {
         /** 用户状态 */
         public static final String USER_STATUS = "user_status";
         
+        /** 离线消息补发 */
+        public static final String BACKLOG = "backlog";
+        
+        /** 送达/已读回执 */
+        public static final String RECEIPT = "receipt";
+        
         /** 错误消息 */
         public static final String ERROR = "error";
     }
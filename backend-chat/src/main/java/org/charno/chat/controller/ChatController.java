@@ -3,8 +3,16 @@ package org.charno.chat.controller;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.charno.chat.entity.ChatMessage;
 import org.charno.chat.dto.ChatListDTO;
+import org.charno.chat.manager.ChatBroadcastEngine;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.charno.chat.manager.ChatRecentMessageCache;
+import org.charno.chat.manager.ChatSessionReaper;
 import org.charno.chat.manager.WebSocketSessionManager;
+import org.charno.chat.persistence.ChatMessageWriteBehind;
+import org.charno.chat.service.ChatBacklogService;
+import org.charno.chat.service.ChatReceiptService;
 import org.charno.chat.service.IChatMessageService;
+import org.charno.common.annotation.RequireRoles;
 import org.charno.common.core.R;
 import org.charno.common.security.LoginUser;
 import org.charno.common.utils.SecurityUtils;
@@ -14,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,12 +41,35 @@ public class ChatController {
     @Autowired
     private WebSocketSessionManager sessionManager;
 
+    @Autowired
+    private ChatMessageWriteBehind chatMessageWriteBehind;
+
+    @Autowired
+    private ChatMessageRouter messageRouter;
+
+    @Autowired
+    private ChatBroadcastEngine broadcastEngine;
+
+    @Autowired
+    private ChatSessionReaper sessionReaper;
+
+    @Autowired
+    private ChatReceiptService receiptService;
+
+    @Autowired
+    private ChatBacklogService backlogService;
+
+    @Autowired
+    private ChatRecentMessageCache recentMessageCache;
+
     /**
      * 获取聊天列表
-     * 返回与当前用户有过聊天记录的所有用户信息
+     * 返回与当前用户有过聊天记录的用户信息，按最后消息时间倒序分页
      */
     @GetMapping("/list")
-    public R<List<ChatListDTO>> getChatList() {
+    public R<List<ChatListDTO>> getChatList(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "50") int size) {
         try {
             LoginUser loginUser = SecurityUtils.getLoginUser();
             if (loginUser == null || loginUser.getUser() == null) {
@@ -45,7 +77,7 @@ public class ChatController {
             }
             
             Long currentUserId = loginUser.getUser().getId();
-            List<ChatListDTO> chatList = chatMessageService.getChatList(currentUserId);
+            List<ChatListDTO> chatList = chatMessageService.getChatList(currentUserId, page, size);
             
             return R.ok(chatList, "获取聊天列表成功");
         } catch (Exception e) {
@@ -56,9 +88,14 @@ public class ChatController {
 
     /**
      * 获取与指定用户的聊天记录
+     * 传入limit时按游标分页：返回before之前（不含）最多limit条消息，按时间倒序，
+     * 以返回的最后一条消息ID作为下一次的before继续向前翻页；不传limit时返回全部记录
      */
     @GetMapping("/history/{otherUserId}")
-    public R<List<ChatMessage>> getChatHistory(@PathVariable Long otherUserId) {
+    public R<List<ChatMessage>> getChatHistory(
+            @PathVariable Long otherUserId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer limit) {
         try {
             LoginUser loginUser = SecurityUtils.getLoginUser();
             if (loginUser == null || loginUser.getUser() == null) {
@@ -66,7 +103,9 @@ public class ChatController {
             }
             
             Long currentUserId = loginUser.getUser().getId();
-            List<ChatMessage> messages = chatMessageService.getChatHistory(currentUserId, otherUserId);
+            List<ChatMessage> messages = limit != null
+                    ? chatMessageService.getChatHistoryBefore(currentUserId, otherUserId, before, limit)
+                    : chatMessageService.getChatHistory(currentUserId, otherUserId);
             
             return R.ok(messages, "获取聊天记录成功");
         } catch (Exception e) {
@@ -218,7 +257,7 @@ public class ChatController {
     }
 
     /**
-     * 获取所有在线用户
+     * 获取连接在本节点的在线用户
      */
     @GetMapping("/online/users")
     public R<Set<Long>> getOnlineUsers() {
@@ -232,7 +271,7 @@ public class ChatController {
     }
 
     /**
-     * 获取在线用户数量
+     * 获取连接在本节点的在线用户数量
      */
     @GetMapping("/online/count")
     public R<Integer> getOnlineUserCount() {
@@ -244,4 +283,76 @@ public class ChatController {
             return R.fail("获取在线用户数量失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 获取消息持久化统计
+     */
+    @GetMapping("/metrics/persistence")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getPersistenceStats() {
+        return R.ok(chatMessageWriteBehind.getStats());
+    }
+
+    /**
+     * 获取跨节点消息路由统计
+     */
+    @GetMapping("/metrics/routing")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getRoutingStats() {
+        return R.ok(messageRouter.getStats());
+    }
+
+    /**
+     * 获取本节点各会话发送队列统计
+     */
+    @GetMapping("/metrics/outbound")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getOutboundStats() {
+        return R.ok(sessionManager.getOutboundStats());
+    }
+
+    /**
+     * 获取本节点广播统计
+     */
+    @GetMapping("/metrics/broadcast")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getBroadcastStats() {
+        return R.ok(broadcastEngine.getStats());
+    }
+
+    /**
+     * 获取本节点会话心跳与空闲回收统计
+     */
+    @GetMapping("/metrics/heartbeat")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getHeartbeatStats() {
+        return R.ok(sessionReaper.getStats());
+    }
+
+    /**
+     * 获取送达/已读回执统计
+     */
+    @GetMapping("/metrics/receipts")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getReceiptStats() {
+        return R.ok(receiptService.getStats());
+    }
+
+    /**
+     * 获取离线消息补发统计
+     */
+    @GetMapping("/metrics/backlog")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getBacklogStats() {
+        return R.ok(backlogService.getStats());
+    }
+
+    /**
+     * 获取最近消息缓存统计
+     */
+    @GetMapping("/metrics/recent-cache")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getRecentCacheStats() {
+        return R.ok(recentMessageCache.getStats());
+    }
 } 
\ No newline at end of file
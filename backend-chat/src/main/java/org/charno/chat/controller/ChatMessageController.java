@@ -3,9 +3,12 @@ package org.charno.chat.controller;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.charno.chat.dto.ChatSearchResultDTO;
 import org.charno.chat.entity.ChatMessage;
 import org.charno.chat.service.IChatMessageService;
 import org.charno.common.core.R;
+import org.charno.common.security.LoginUser;
+import org.charno.common.utils.SecurityUtils;
 
 import java.util.List;
 
@@ -87,6 +90,29 @@ public class ChatMessageController {
         return R.ok(result);
     }
 
+    /**
+     * 在当前用户的聊天记录中全文检索
+     * 按相关度倒序返回，命中词以mark标签高亮；以返回的nextCursor作为cursor获取下一页
+     */
+    @GetMapping("/search")
+    public R<ChatSearchResultDTO> searchMessages(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Long peerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer limit) {
+        LoginUser loginUser = SecurityUtils.getLoginUser();
+        if (loginUser == null || loginUser.getUser() == null) {
+            return R.fail("未登录");
+        }
+        try {
+            ChatSearchResultDTO result = chatMessageService.searchMessages(
+                    loginUser.getUser().getId(), keyword, peerId, cursor, limit);
+            return R.ok(result);
+        } catch (IllegalArgumentException e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
     /**
      * 获取用户的未读消息
      */
@@ -0,0 +1,34 @@
+package org.charno.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 聊天消息搜索结果项DTO
+ */
+@Data
+public class ChatSearchHitDTO {
+    
+    /** 消息ID */
+    private Long messageId;
+    
+    /** 发送者ID */
+    private Long senderUserId;
+    
+    /** 接收者ID */
+    private Long receiverUserId;
+    
+    /** 消息内容 */
+    private String messageContent;
+    
+    /** 高亮片段，命中词以mark标签包裹 */
+    private String highlight;
+    
+    /** 发送时间 */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime sendTime;
+    
+    /** 相关度 */
+    private Float rank;
+}
@@ -0,0 +1,24 @@
+package org.charno.chat.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * 聊天消息搜索结果DTO
+ */
+@Data
+public class ChatSearchResultDTO {
+    
+    /** 按相关度倒序的结果 */
+    private List<ChatSearchHitDTO> items;
+    
+    /** 下一页游标，没有更多结果时为空 */
+    private String nextCursor;
+    
+    public ChatSearchResultDTO() {}
+    
+    public ChatSearchResultDTO(List<ChatSearchHitDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
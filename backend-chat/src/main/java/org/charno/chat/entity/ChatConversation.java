@@ -0,0 +1,47 @@
+package org.charno.chat.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要实体
+ * 每个用户与每个聊天对象一行，随消息写入和已读标记同步维护，用于聊天列表查询
+ */
+@Data
+@TableName("chat_conversation")
+public class ChatConversation {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /** 会话所属用户ID */
+    private Long ownerUserId;
+
+    /** 聊天对象用户ID */
+    private Long partnerUserId;
+
+    /** 最后一条消息ID */
+    private Long lastMessageId;
+
+    /** 最后一条消息预览 */
+    private String lastMessagePreview;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    private LocalDateTime lastMessageTime;
+
+    /** 所属用户未读的消息数量 */
+    private Integer unreadCount;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    private LocalDateTime updateTime;
+}
@@ -4,8 +4,15 @@ import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
 import org.charno.chat.constants.ChatConstants;
 import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.charno.chat.manager.ChatRecentMessageCache;
+import org.charno.chat.manager.ChatSessionReaper;
 import org.charno.chat.manager.WebSocketSessionManager;
-import org.charno.chat.service.IChatMessageService;
+import org.charno.chat.persistence.ChatMessageWriteBehind;
+import org.charno.chat.protocol.ChatBinaryCodec;
+import org.charno.chat.protocol.ChatFrame;
+import org.charno.chat.service.ChatBacklogService;
+import org.charno.chat.service.ChatReceiptService;
 import org.charno.common.security.LoginUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +21,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 /**
  * WebSocket处理器
@@ -28,7 +36,22 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     private WebSocketSessionManager sessionManager;
 
     @Autowired
-    private IChatMessageService chatMessageService;
+    private ChatMessageWriteBehind chatMessageWriteBehind;
+
+    @Autowired
+    private ChatMessageRouter messageRouter;
+
+    @Autowired
+    private ChatSessionReaper sessionReaper;
+
+    @Autowired
+    private ChatReceiptService receiptService;
+
+    @Autowired
+    private ChatBacklogService backlogService;
+
+    @Autowired
+    private ChatRecentMessageCache recentMessageCache;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -39,6 +62,7 @@ public class ChatWebSocketHandler implements WebSocketHandler {
         if (loginUser != null && userId != null) {
             // 将会话添加到管理器
             sessionManager.addSession(userId, session);
+            sessionReaper.register(session);
             
             // 发送连接成功消息
             JSONObject response = new JSONObject();
@@ -46,9 +70,12 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             response.put("status", "success");
             response.put("message", "连接成功");
             response.put("userId", userId);
-            response.put("timestamp", LocalDateTime.now().toString());
+            response.put("timestamp", LocalDateTime.now());
             
-            session.sendMessage(new TextMessage(response.toString()));
+            sessionManager.outbound(session).sendMessage(ChatFrame.encode(session, response));
+            
+            // 在新连接上补发离线期间的消息
+            backlogService.replay(userId, sessionManager.outbound(session));
             
             logger.info("用户 {} 建立WebSocket连接成功", userId);
         } else {
@@ -59,28 +86,29 @@ public class ChatWebSocketHandler implements WebSocketHandler {
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        // 任何消息（包括对服务端Ping的Pong）都视为连接活跃
+        sessionReaper.touch(session);
         if (message instanceof TextMessage textMessage) {
-            handleTextMessage(session, textMessage);
-        } else if (message instanceof BinaryMessage) {
-            logger.warn("暂不支持二进制消息");
+            logger.debug("收到WebSocket消息: {}", textMessage.getPayload());
+            handleFrame(session, () -> JSON.parseObject(textMessage.getPayload()));
+        } else if (message instanceof BinaryMessage binaryMessage) {
+            handleFrame(session, () -> ChatBinaryCodec.decode(binaryMessage.getPayload()));
         }
     }
 
     /**
-     * 处理文本消息
+     * 处理消息帧（JSON文本与二进制帧解码后结构相同）
      */
-    private void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String payload = message.getPayload();
-        logger.debug("收到WebSocket消息: {}", payload);
-        
+    private void handleFrame(WebSocketSession session, Supplier<JSONObject> decoder) throws Exception {
         try {
-            JSONObject messageJson = JSON.parseObject(payload);
+            JSONObject messageJson = decoder.get();
             String messageType = messageJson.getString("type");
             
             switch (messageType) {
                 case ChatConstants.MessageType.CHAT -> handleChatMessage(session, messageJson);
                 case ChatConstants.MessageType.PING -> handlePingMessage(session);
                 case ChatConstants.MessageType.TYPING -> handleTypingMessage(session, messageJson);
+                case ChatConstants.MessageType.RECEIPT -> handleReceiptMessage(session, messageJson);
                 default -> logger.warn("未知的消息类型: {}", messageType);
             }
         } catch (Exception e) {
@@ -123,38 +151,35 @@ public class ChatWebSocketHandler implements WebSocketHandler {
         chatMessage.setUpdateTime(LocalDateTime.now());
         chatMessage.setIsDelete(false);
         
-        // 保存消息到数据库
-        boolean saved = chatMessageService.save(chatMessage);
+        // 保存消息（写入本地日志后由后台批量落库）
+        boolean saved = chatMessageWriteBehind.persist(chatMessage);
         if (!saved) {
             sendErrorMessage(session, "消息保存失败");
             return;
         }
+        recentMessageCache.add(chatMessage);
         
         // 发送确认消息给发送者
         JSONObject senderResponse = new JSONObject();
         senderResponse.put("type", ChatConstants.MessageType.MESSAGE_SENT);
         senderResponse.put("messageId", chatMessage.getId());
         senderResponse.put("status", "success");
-        senderResponse.put("timestamp", chatMessage.getSendTime().toString());
-        session.sendMessage(new TextMessage(senderResponse.toString()));
+        senderResponse.put("timestamp", chatMessage.getSendTime());
+        sessionManager.outbound(session).sendMessage(ChatFrame.encode(session, senderResponse));
         
-        // 检查接收者是否在线，如果在线则推送消息
-        if (sessionManager.isUserOnline(receiverId)) {
-            WebSocketSession receiverSession = sessionManager.getSession(receiverId);
-            if (receiverSession != null && receiverSession.isOpen()) {
-                JSONObject receiverMessage = new JSONObject();
-                receiverMessage.put("type", ChatConstants.MessageType.NEW_MESSAGE);
-                receiverMessage.put("messageId", chatMessage.getId());
-                receiverMessage.put("senderId", senderId);
-                receiverMessage.put("content", content);
-                receiverMessage.put("messageType", chatMessage.getMessageType());
-                receiverMessage.put("sendTime", chatMessage.getSendTime().toString());
-                
-                receiverSession.sendMessage(new TextMessage(receiverMessage.toString()));
-                logger.info("消息已推送给在线用户 {}", receiverId);
-            }
+        // 推送给接收者（接收者可能连接在其他节点）
+        JSONObject receiverMessage = new JSONObject();
+        receiverMessage.put("type", ChatConstants.MessageType.NEW_MESSAGE);
+        receiverMessage.put("messageId", chatMessage.getId());
+        receiverMessage.put("senderId", senderId);
+        receiverMessage.put("content", content);
+        receiverMessage.put("messageType", chatMessage.getMessageType());
+        receiverMessage.put("sendTime", chatMessage.getSendTime());
+        
+        if (messageRouter.deliver(receiverId, receiverMessage)) {
+            logger.info("消息已推送给在线用户 {}", receiverId);
         } else {
-            logger.info("用户 {} 不在线，消息已保存到数据库", receiverId);
+            logger.info("用户 {} 不在线，消息已保存", receiverId);
         }
     }
 
@@ -164,8 +189,8 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     private void handlePingMessage(WebSocketSession session) throws Exception {
         JSONObject pongResponse = new JSONObject();
         pongResponse.put("type", ChatConstants.MessageType.PONG);
-        pongResponse.put("timestamp", LocalDateTime.now().toString());
-        session.sendMessage(new TextMessage(pongResponse.toString()));
+        pongResponse.put("timestamp", LocalDateTime.now());
+        sessionManager.outbound(session).sendMessage(ChatFrame.encode(session, pongResponse));
     }
 
     /**
@@ -180,17 +205,22 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             return;
         }
         
-        // 如果接收者在线，转发正在输入状态
-        if (sessionManager.isUserOnline(receiverId)) {
-            WebSocketSession receiverSession = sessionManager.getSession(receiverId);
-            if (receiverSession != null && receiverSession.isOpen()) {
-                JSONObject typingMessage = new JSONObject();
-                typingMessage.put("type", ChatConstants.MessageType.TYPING);
-                typingMessage.put("senderId", senderId);
-                typingMessage.put("isTyping", isTyping);
-                
-                receiverSession.sendMessage(new TextMessage(typingMessage.toString()));
-            }
+        // 转发正在输入状态（接收者不在线时忽略）
+        JSONObject typingMessage = new JSONObject();
+        typingMessage.put("type", ChatConstants.MessageType.TYPING);
+        typingMessage.put("senderId", senderId);
+        typingMessage.put("isTyping", isTyping);
+        
+        messageRouter.deliver(receiverId, typingMessage, true);
+    }
+
+    /**
+     * 处理送达/已读回执，合并后批量落库并推送给消息发送者
+     */
+    private void handleReceiptMessage(WebSocketSession session, JSONObject messageJson) throws Exception {
+        Long readerId = (Long) session.getAttributes().get("userId");
+        if (!receiptService.submit(readerId, messageJson)) {
+            sendErrorMessage(session, "回执参数无效");
         }
     }
 
@@ -201,13 +231,14 @@ public class ChatWebSocketHandler implements WebSocketHandler {
         JSONObject errorResponse = new JSONObject();
         errorResponse.put("type", ChatConstants.MessageType.ERROR);
         errorResponse.put("message", errorMsg);
-        errorResponse.put("timestamp", LocalDateTime.now().toString());
-        session.sendMessage(new TextMessage(errorResponse.toString()));
+        errorResponse.put("timestamp", LocalDateTime.now());
+        sessionManager.outbound(session).sendMessage(ChatFrame.encode(session, errorResponse));
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         logger.error("WebSocket传输错误", exception);
+        sessionReaper.unregister(session);
         Long userId = (Long) session.getAttributes().get("userId");
         if (userId != null) {
             sessionManager.removeSessionByUserId(userId);
@@ -216,6 +247,7 @@ public class ChatWebSocketHandler implements WebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        sessionReaper.unregister(session);
         Long userId = (Long) session.getAttributes().get("userId");
         if (userId != null) {
             sessionManager.removeSession(session.getId());
@@ -1,5 +1,6 @@
 package org.charno.chat.interceptor;
 
+import io.jsonwebtoken.Claims;
 import org.charno.common.utils.JwtUtils;
 import org.charno.common.utils.RedisUtils;
 import org.charno.common.security.LoginUser;
@@ -44,7 +45,8 @@ public class WebSocketAuthInterceptor implements HandshakeInterceptor {
         }
 
         // 验证token
-        if (!jwtUtils.validateToken(token)) {
+        Claims claims = jwtUtils.verify(token);
+        if (claims == null) {
             logger.warn("WebSocket握手失败: token无效");
             return false;
         }
@@ -59,6 +61,7 @@ public class WebSocketAuthInterceptor implements HandshakeInterceptor {
         // 将用户信息存储到WebSocket会话属性中
         attributes.put("loginUser", loginUser);
         attributes.put("token", token);
+        attributes.put(JwtUtils.CLAIMS_ATTRIBUTE, claims);
         attributes.put("userId", loginUser.getUser().getId());
         
         logger.info("WebSocket握手成功: 用户ID={}, 用户名={}", 
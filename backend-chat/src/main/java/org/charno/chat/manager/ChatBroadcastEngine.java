@@ -0,0 +1,144 @@
+package org.charno.chat.manager;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.protocol.ChatFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本节点广播引擎
+ * 消息的每种子协议编码只计算一次，本节点会话按分片交给有限的工作线程并行发送，调用方立即得到带成功/失败数的完成结果。
+ */
+@Component
+public class ChatBroadcastEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatBroadcastEngine.class);
+
+    @Value("${value.chat.broadcast.workers:8}")
+    private int workers;
+
+    /**
+     * 每个分片的会话数
+     */
+    @Value("${value.chat.broadcast.partition-size:500}")
+    private int partitionSize;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    private ExecutorService executor;
+
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long lastElapsedMs;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "chat-broadcast-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 广播消息给本节点所有在线用户
+     *
+     * @param body 消息内容
+     */
+    public CompletableFuture<BroadcastResult> broadcast(JSONObject body) {
+        long start = System.currentTimeMillis();
+        ChatFrame frame = new ChatFrame(body);
+        List<Map.Entry<Long, WebSocketSession>> sessions = new ArrayList<>(sessionManager.getSessions().entrySet());
+
+        List<CompletableFuture<int[]>> parts = new ArrayList<>();
+        for (int from = 0; from < sessions.size(); from += partitionSize) {
+            List<Map.Entry<Long, WebSocketSession>> partition =
+                    sessions.subList(from, Math.min(from + partitionSize, sessions.size()));
+            parts.add(CompletableFuture.supplyAsync(() -> send(partition, frame), executor));
+        }
+
+        broadcasts.increment();
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            int successCount = 0;
+            int failCount = 0;
+            for (CompletableFuture<int[]> part : parts) {
+                int[] counts = part.join();
+                successCount += counts[0];
+                failCount += counts[1];
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            lastElapsedMs = elapsed;
+            logger.info("广播消息完成，成功: {}, 失败: {}, 耗时: {}ms", successCount, failCount, elapsed);
+            return new BroadcastResult(successCount, failCount, elapsed);
+        });
+    }
+
+    /**
+     * 广播统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("broadcasts", broadcasts.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("failed", failed.sum());
+        stats.put("lastElapsedMs", lastElapsedMs);
+        return stats;
+    }
+
+    private int[] send(List<Map.Entry<Long, WebSocketSession>> partition, ChatFrame frame) {
+        int successCount = 0;
+        int failCount = 0;
+        for (Map.Entry<Long, WebSocketSession> entry : partition) {
+            WebSocketSession session = entry.getValue();
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(frame.toMessage(session));
+                    successCount++;
+                } else {
+                    sessionManager.removeSession(session.getId());
+                    failCount++;
+                }
+            } catch (Exception e) {
+                logger.warn("广播消息给用户 {} 失败: {}", entry.getKey(), e.getMessage());
+                failCount++;
+            }
+        }
+        delivered.add(successCount);
+        failed.add(failCount);
+        return new int[]{successCount, failCount};
+    }
+
+    /**
+     * 广播结果
+     *
+     * @param success   发送成功的会话数
+     * @param failure   发送失败或已断开的会话数
+     * @param elapsedMs 耗时（毫秒）
+     */
+    public record BroadcastResult(int success, int failure, long elapsedMs) {
+    }
+}
@@ -0,0 +1,213 @@
+package org.charno.chat.manager;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.protocol.ChatFrame;
+import org.charno.chat.service.ChatBacklogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨节点消息路由
+ * 接收者连接在本节点时直接发送；连接在其他节点时，通过Redis发布到该节点专属频道，由目标节点转发给用户
+ */
+@Component
+public class ChatMessageRouter implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageRouter.class);
+
+    private static final String NODE_CHANNEL_PREFIX = "reflip:chat:node:";
+
+    /**
+     * 全员广播频道，其他节点收到后发送给本节点的所有在线用户（发起节点直接在本地发送）
+     */
+    private static final String BROADCAST_CHANNEL = "reflip:chat:broadcast";
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private ChatPresenceRegistry presenceRegistry;
+
+    @Autowired
+    private ChatBroadcastEngine broadcastEngine;
+
+    @Autowired
+    private ChatBacklogService backlogService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final LongAdder localDeliveries = new LongAdder();
+    private final LongAdder remoteForwards = new LongAdder();
+    private final LongAdder remoteReceived = new LongAdder();
+    private final LongAdder undeliverable = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel(presenceRegistry.getNodeId())));
+        listenerContainer.addMessageListener(this, new ChannelTopic(BROADCAST_CHANNEL));
+    }
+
+    /**
+     * 向用户投递消息，用户不在任何节点在线时返回false
+     * 消息按接收者会话协商的子协议编码
+     */
+    public boolean deliver(Long userId, JSONObject frame) {
+        return deliver(userId, frame, false);
+    }
+
+    /**
+     * 向用户投递消息
+     *
+     * @param droppable 是否可丢弃（如正在输入状态），接收方发送队列已满时直接丢弃而不是关闭会话
+     */
+    public boolean deliver(Long userId, JSONObject frame, boolean droppable) {
+        if (userId == null) {
+            return false;
+        }
+        if (sendLocal(userId, frame, droppable)) {
+            localDeliveries.increment();
+            return true;
+        }
+
+        String node = presenceRegistry.getNode(userId);
+        if (node == null || node.equals(presenceRegistry.getNodeId())) {
+            undeliverable.increment();
+            return false;
+        }
+
+        JSONObject envelope = new JSONObject();
+        envelope.put("userId", userId);
+        envelope.put("frame", frame);
+        envelope.put("droppable", droppable);
+        try {
+            Long receivers = stringRedisTemplate.convertAndSend(channel(node), ChatFrame.toJson(envelope));
+            if (receivers != null && receivers > 0) {
+                remoteForwards.increment();
+                return true;
+            }
+        } catch (Exception e) {
+            logger.warn("转发消息到节点 {} 失败: {}", node, e.getMessage());
+        }
+        undeliverable.increment();
+        return false;
+    }
+
+    /**
+     * 广播消息给所有节点的在线用户
+     * 本节点用户直接由广播引擎发送，其他节点经Redis转发；Redis不可用时只发送给本节点用户
+     *
+     * @return 本节点的发送结果
+     */
+    public CompletableFuture<ChatBroadcastEngine.BroadcastResult> broadcast(JSONObject frame) {
+        JSONObject envelope = new JSONObject();
+        envelope.put("origin", presenceRegistry.getNodeId());
+        envelope.put("frame", frame);
+        try {
+            stringRedisTemplate.convertAndSend(BROADCAST_CHANNEL, ChatFrame.toJson(envelope));
+        } catch (Exception e) {
+            logger.warn("发布广播消息失败，仅发送给本节点用户: {}", e.getMessage());
+        }
+        return broadcastEngine.broadcast(frame);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (BROADCAST_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8))) {
+            onBroadcast(message);
+            return;
+        }
+        try {
+            JSONObject envelope = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            Long userId = envelope.getLong("userId");
+            remoteReceived.increment();
+            if (!sendLocal(userId, envelope.getJSONObject("frame"), envelope.getBooleanValue("droppable"))) {
+                undeliverable.increment();
+                logger.debug("转发到本节点的用户 {} 已不在线", userId);
+            }
+        } catch (Exception e) {
+            logger.error("处理跨节点消息失败", e);
+        }
+    }
+
+    /**
+     * 路由统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", presenceRegistry.getNodeId());
+        stats.put("localDeliveries", localDeliveries.sum());
+        stats.put("remoteForwards", remoteForwards.sum());
+        stats.put("remoteReceived", remoteReceived.sum());
+        stats.put("undeliverable", undeliverable.sum());
+        return stats;
+    }
+
+    private void onBroadcast(Message message) {
+        try {
+            JSONObject envelope = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (presenceRegistry.getNodeId().equals(envelope.getString("origin"))) {
+                return;
+            }
+            broadcastEngine.broadcast(envelope.getJSONObject("frame"));
+        } catch (Exception e) {
+            logger.error("处理广播消息失败", e);
+        }
+    }
+
+    private boolean sendLocal(Long userId, JSONObject frame, boolean droppable) {
+        WebSocketSession session = sessionManager.getSession(userId);
+        if (session == null) {
+            return false;
+        }
+        if (!session.isOpen()) {
+            sessionManager.removeSessionByUserId(userId);
+            return false;
+        }
+        try {
+            WebSocketMessage<?> message = ChatFrame.encode(session, frame);
+            if (session instanceof OutboundSession outbound) {
+                if (droppable) {
+                    outbound.sendDroppable(message);
+                } else if (ChatConstants.MessageType.NEW_MESSAGE.equals(frame.getString("type"))) {
+                    // 新消息实际写出后推进送达水位，重连时不再补发
+                    Long messageId = frame.getLong("messageId");
+                    outbound.sendMessage(message, () -> backlogService.onDelivered(userId, messageId));
+                } else {
+                    outbound.sendMessage(message);
+                }
+            } else {
+                session.sendMessage(message);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("发送消息给用户 {} 失败: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    private static String channel(String nodeId) {
+        return NODE_CHANNEL_PREFIX + nodeId;
+    }
+}
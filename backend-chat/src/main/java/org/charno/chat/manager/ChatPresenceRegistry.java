@@ -0,0 +1,221 @@
+package org.charno.chat.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天在线状态注册表
+ * 在Redis中记录用户当前连接的聊天节点（用户ID -> 节点ID），带TTL，由各节点定时心跳续期。
+ * 节点宕机后其用户的在线记录在TTL到期后自动消失。
+ * 用户重连到其他节点后记录即指向新节点，旧节点的心跳和注销都只作用于仍指向本节点（或已过期）的记录。
+ */
+@Component
+public class ChatPresenceRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatPresenceRegistry.class);
+
+    private static final String PRESENCE_PREFIX = "reflip:chat:presence:";
+
+    /**
+     * 仅当记录仍指向本节点时才删除，避免用户已重连到其他节点时误删
+     */
+    private static final DefaultRedisScript<Long> COMPARE_AND_DELETE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 心跳续期：记录指向本节点或已过期时写入并设置TTL，已指向其他节点（用户已在别处重连）时保持不变，返回续期的数量
+     */
+    private static final DefaultRedisScript<Long> RENEW_IF_OWNED = new DefaultRedisScript<>(
+            "local renewed = 0 " +
+            "for _, key in ipairs(KEYS) do " +
+            "local owner = redis.call('get', key) " +
+            "if not owner or owner == ARGV[1] then " +
+            "redis.call('set', key, ARGV[1], 'EX', ARGV[2]) " +
+            "renewed = renewed + 1 " +
+            "end " +
+            "end " +
+            "return renewed",
+            Long.class);
+
+    /**
+     * 单次续期脚本处理的最大用户数
+     */
+    private static final int RENEW_BATCH_SIZE = 500;
+
+    @Value("${value.chat.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${value.chat.presence.ttl-seconds:90}")
+    private long ttlSeconds;
+
+    @Value("${value.chat.presence.heartbeat-seconds:30}")
+    private long heartbeatSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private String nodeId;
+
+    /**
+     * 本节点登记的用户
+     */
+    private final Set<Long> localUsers = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void init() {
+        nodeId = StringUtils.hasText(configuredNodeId) ? configuredNodeId : defaultNodeId();
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-presence-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renewAll, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        logger.info("聊天节点ID: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        heartbeat.shutdownNow();
+        // 正常下线时立即清除本节点用户的在线记录
+        for (Long userId : localUsers) {
+            try {
+                unregister(userId);
+            } catch (Exception e) {
+                logger.debug("清除用户 {} 在线记录失败: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 登记用户连接到本节点
+     */
+    public void register(Long userId) {
+        localUsers.add(userId);
+        try {
+            stringRedisTemplate.opsForValue().set(key(userId), nodeId, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warn("登记用户 {} 在线状态失败: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 注销用户在本节点的连接
+     */
+    public void unregister(Long userId) {
+        localUsers.remove(userId);
+        try {
+            stringRedisTemplate.execute(COMPARE_AND_DELETE, List.of(key(userId)), nodeId);
+        } catch (Exception e) {
+            logger.warn("注销用户 {} 在线状态失败: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取用户所在节点，不在线返回null
+     */
+    public String getNode(Long userId) {
+        try {
+            return stringRedisTemplate.opsForValue().get(key(userId));
+        } catch (Exception e) {
+            logger.warn("查询用户 {} 在线状态失败: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 批量获取用户所在节点，不在线的用户不包含在结果中
+     */
+    public Map<Long, String> getNodes(Collection<Long> userIds) {
+        Map<Long, String> nodes = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return nodes;
+        }
+        List<Long> ids = new ArrayList<>(userIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long userId : ids) {
+            keys.add(key(userId));
+        }
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            if (values != null) {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (values.get(i) != null) {
+                        nodes.put(ids.get(i), values.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("批量查询在线状态失败: {}", e.getMessage());
+        }
+        return nodes;
+    }
+
+    /**
+     * 心跳：按批执行比较后续期的脚本，为本节点全部用户续期
+     * 记录可能已被TTL清除，此时重新写入；用户已在其他节点重连时不改写，避免消息被路由到本节点的旧连接
+     */
+    private void renewAll() {
+        if (localUsers.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(localUsers.size());
+        for (Long userId : localUsers) {
+            keys.add(key(userId));
+        }
+        long skipped = 0;
+        try {
+            for (int from = 0; from < keys.size(); from += RENEW_BATCH_SIZE) {
+                List<String> batch = keys.subList(from, Math.min(from + RENEW_BATCH_SIZE, keys.size()));
+                Long renewed = stringRedisTemplate.execute(RENEW_IF_OWNED, batch, nodeId, String.valueOf(ttlSeconds));
+                skipped += batch.size() - (renewed != null ? renewed : 0);
+            }
+        } catch (Exception e) {
+            logger.warn("在线状态心跳失败: {}", e.getMessage());
+        }
+        if (skipped > 0) {
+            logger.debug("{} 个用户已在其他节点重连，未续期", skipped);
+        }
+    }
+
+    private String key(Long userId) {
+        return PRESENCE_PREFIX + userId;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "chat";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,460 @@
+package org.charno.chat.manager;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.charno.common.utils.TransactionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 会话最近消息缓存
+ * 每个会话保留最近N条消息的环形缓冲区，会话之间按LRU在内存预算内淘汰。
+ * 写入路径把新消息追加到缓冲区，因此缓冲区总是包含其最早一条之后的全部消息，可直接返回聊天记录首页；
+ * 缓冲区条数不足且不确定是否已包含整个会话时回源数据库，并把结果合并进缓冲区。
+ * 多节点部署时，写入和状态变化通过Redis通知其他节点失效对应会话：新消息在落库后（写后模式下为批量写入完成后）由publishPersisted通知，
+ * 其余变化在事务提交后通知，避免其他节点在数据提交前回源并缓存旧数据。
+ * 回源查询前先取得会话的失效版本，查询期间会话被失效时放弃填充，避免把失效前读到的旧数据写回缓冲区。
+ */
+@Component
+public class ChatRecentMessageCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatRecentMessageCache.class);
+
+    private static final String INVALIDATE_CHANNEL = "reflip:chat:recent:invalidate";
+
+    /**
+     * 估算单条缓存消息的固定内存开销（对象头、时间、包装类型等）
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 200;
+
+    /**
+     * 失效版本的分段数，会话按哈希映射到分段，不同会话共用分段只会多放弃一次填充
+     */
+    private static final int VERSION_STRIPES = 1024;
+
+    @Value("${value.chat.recent.capacity:50}")
+    private int capacity;
+
+    @Value("${value.chat.recent.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Autowired
+    private ChatPresenceRegistry presenceRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 会话 -> 缓冲区，按访问顺序排列，由this保护
+     */
+    private final LinkedHashMap<ConversationKey, Ring> conversations = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long usedBytes;
+
+    /**
+     * 各分段的失效版本，会话每次失效时递增，由this保护
+     */
+    private final long[] versions = new long[VERSION_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder staleSeeds = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 写入路径：把新消息追加到本节点缓冲区
+     * 此时消息可能尚未落库，其他节点的失效通知由publishPersisted在落库后发布
+     */
+    public void add(ChatMessage message) {
+        if (message == null || message.getId() == null
+                || message.getSenderUserId() == null || message.getReceiverUserId() == null) {
+            return;
+        }
+        ConversationKey key = ConversationKey.of(message.getSenderUserId(), message.getReceiverUserId());
+        synchronized (this) {
+            Ring ring = conversations.computeIfAbsent(key, k -> new Ring(capacity));
+            usedBytes += ring.insert(copy(message));
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * 消息落库后通知其他节点失效对应会话，每个会话只发布一次
+     */
+    public void publishPersisted(Collection<ChatMessage> messages) {
+        Set<ConversationKey> keys = new LinkedHashSet<>();
+        for (ChatMessage message : messages) {
+            if (message.getSenderUserId() != null && message.getReceiverUserId() != null) {
+                keys.add(ConversationKey.of(message.getSenderUserId(), message.getReceiverUserId()));
+            }
+        }
+        TransactionUtils.runAfterCommit(() -> keys.forEach(this::publishInvalidate));
+    }
+
+    /**
+     * 获取会话最新的limit条消息（按时间倒序），缓冲区无法完整提供时返回null
+     */
+    public List<ChatMessage> latest(Long userId1, Long userId2, int limit) {
+        ConversationKey key = ConversationKey.of(userId1, userId2);
+        synchronized (this) {
+            Ring ring = conversations.get(key);
+            if (ring != null && (ring.size >= limit || ring.exhaustive)) {
+                hits.increment();
+                return ring.newest(limit);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 会话当前的失效版本，回源查询前调用，查询结果连同版本交给seed
+     */
+    public synchronized long version(Long userId1, Long userId2) {
+        return versions[stripe(ConversationKey.of(userId1, userId2))];
+    }
+
+    /**
+     * 用数据库查询的会话最新消息（按时间倒序）填充缓冲区
+     * 查询期间会话被失效（本节点写入提交或其他节点通知）时放弃填充
+     *
+     * @param limit   查询时的条数上限，返回条数少于上限说明已包含整个会话
+     * @param version 查询前由version取得的失效版本
+     */
+    public void seed(Long userId1, Long userId2, List<ChatMessage> newestFirst, int limit, long version) {
+        if (limit > capacity) {
+            return;
+        }
+        ConversationKey key = ConversationKey.of(userId1, userId2);
+        synchronized (this) {
+            if (versions[stripe(key)] != version) {
+                staleSeeds.increment();
+                return;
+            }
+            Ring ring = conversations.computeIfAbsent(key, k -> new Ring(capacity));
+            for (ChatMessage message : newestFirst) {
+                usedBytes += ring.insert(copy(message));
+            }
+            if (newestFirst.size() < limit && ring.size < capacity) {
+                ring.exhaustive = true;
+            }
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * 回执更新：将senderId发给receiverId、按(发送时间, ID)不晚于upToId消息的缓存消息更新为指定状态，
+     * 已读更新全部这些消息，送达只更新仍为已发送状态的消息
+     * 水位消息不在缓冲区中时无法判断范围，直接失效该会话
+     */
+    public void updateStatus(Long senderId, Long receiverId, Long upToId, String status, boolean read) {
+        ConversationKey key = ConversationKey.of(senderId, receiverId);
+        synchronized (this) {
+            bumpVersion(key);
+            Ring ring = conversations.get(key);
+            if (ring != null) {
+                int watermark = ring.indexOf(upToId);
+                if (watermark < 0) {
+                    removeLocal(key);
+                } else {
+                    // 送达只覆盖仍为已发送状态的消息，与markDeliveredUpTo一致，不会把已读改回送达
+                    Predicate<ChatMessage> filter = read
+                            ? message -> senderId.equals(message.getSenderUserId())
+                            : message -> senderId.equals(message.getSenderUserId())
+                                    && ChatConstants.MessageStatus.SENT.equals(message.getStatus());
+                    ring.update(watermark, filter, message -> {
+                        ChatMessage updated = copy(message);
+                        updated.setStatus(status);
+                        if (read) {
+                            updated.setIsRead(true);
+                        }
+                        return updated;
+                    });
+                }
+            }
+        }
+        TransactionUtils.runAfterCommit(() -> {
+            // 提交前开始的回源查询可能读到旧状态
+            synchronized (this) {
+                bumpVersion(key);
+            }
+            publishInvalidate(key);
+        });
+    }
+
+    /**
+     * 失效单个会话，在事务中调用时提交后再失效
+     */
+    public void invalidate(Long userId1, Long userId2) {
+        ConversationKey key = ConversationKey.of(userId1, userId2);
+        TransactionUtils.runAfterCommit(() -> {
+            removeLocal(key);
+            publishInvalidate(key);
+        });
+    }
+
+    /**
+     * 失效全部会话（管理端直接修改或删除消息时使用），在事务中调用时提交后再失效
+     */
+    public void invalidateAll() {
+        TransactionUtils.runAfterCommit(() -> {
+            clearLocal();
+            publishInvalidate(null);
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject envelope = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (presenceRegistry.getNodeId().equals(envelope.getString("origin"))) {
+                return;
+            }
+            Long low = envelope.getLong("low");
+            Long high = envelope.getLong("high");
+            if (low == null || high == null) {
+                clearLocal();
+            } else {
+                removeLocal(new ConversationKey(low, high));
+            }
+        } catch (Exception e) {
+            logger.error("处理最近消息缓存失效通知失败", e);
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("conversations", conversations.size());
+        stats.put("usedBytes", usedBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("staleSeeds", staleSeeds.sum());
+        return stats;
+    }
+
+    private synchronized void removeLocal(ConversationKey key) {
+        bumpVersion(key);
+        Ring ring = conversations.remove(key);
+        if (ring != null) {
+            usedBytes -= ring.bytes;
+        }
+    }
+
+    private synchronized void clearLocal() {
+        for (int i = 0; i < versions.length; i++) {
+            versions[i]++;
+        }
+        conversations.clear();
+        usedBytes = 0;
+    }
+
+    private void bumpVersion(ConversationKey key) {
+        versions[stripe(key)]++;
+    }
+
+    private static int stripe(ConversationKey key) {
+        return Math.floorMod(key.hashCode(), VERSION_STRIPES);
+    }
+
+    private void evictOverBudget() {
+        Iterator<Ring> iterator = conversations.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Ring ring = iterator.next();
+            iterator.remove();
+            usedBytes -= ring.bytes;
+            evictions.increment();
+        }
+    }
+
+    private void publishInvalidate(ConversationKey key) {
+        JSONObject envelope = new JSONObject();
+        envelope.put("origin", presenceRegistry.getNodeId());
+        if (key != null) {
+            envelope.put("low", key.low());
+            envelope.put("high", key.high());
+        }
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, envelope.toString());
+        } catch (Exception e) {
+            logger.warn("发布最近消息缓存失效通知失败: {}", e.getMessage());
+        }
+    }
+
+    private static long estimateBytes(ChatMessage message) {
+        String content = message.getMessageContent();
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? content.length() * 2L : 0);
+    }
+
+    /**
+     * 缓存中保存独立副本，返回给调用方的对象不会再被修改
+     */
+    private static ChatMessage copy(ChatMessage source) {
+        ChatMessage message = new ChatMessage();
+        message.setId(source.getId());
+        message.setSenderUserId(source.getSenderUserId());
+        message.setReceiverUserId(source.getReceiverUserId());
+        message.setMessageType(source.getMessageType());
+        message.setMessageContent(source.getMessageContent());
+        message.setSendTime(source.getSendTime());
+        message.setStatus(source.getStatus());
+        message.setCreateTime(source.getCreateTime());
+        message.setUpdateTime(source.getUpdateTime());
+        message.setIsDelete(source.getIsDelete());
+        message.setIsRead(source.getIsRead());
+        return message;
+    }
+
+    /**
+     * 规范化的会话键
+     */
+    private record ConversationKey(long low, long high) {
+
+        static ConversationKey of(Long userId1, Long userId2) {
+            return new ConversationKey(Math.min(userId1, userId2), Math.max(userId1, userId2));
+        }
+    }
+
+    /**
+     * 按(发送时间, ID)升序保存的环形缓冲区，与聊天记录查询的排序一致，写满后覆盖最早的消息
+     * 消息ID按节点分段分配，不代表发送先后，不能单独用于排序
+     */
+    private static final class Ring {
+
+        private static final Comparator<ChatMessage> ORDER = Comparator
+                .comparing(ChatMessage::getSendTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(ChatMessage::getId);
+
+        private final ChatMessage[] items;
+
+        private int head;
+
+        private int size;
+
+        private long bytes;
+
+        /**
+         * 是否包含整个会话（数据库中没有更早的消息）
+         */
+        private boolean exhaustive;
+
+        private Ring(int capacity) {
+            this.items = new ChatMessage[capacity];
+        }
+
+        private ChatMessage get(int index) {
+            return items[(head + index) % items.length];
+        }
+
+        private void set(int index, ChatMessage message) {
+            items[(head + index) % items.length] = message;
+        }
+
+        /**
+         * 插入消息，返回占用内存的变化量；已存在的消息ID保持不变
+         */
+        private long insert(ChatMessage message) {
+            if (indexOf(message.getId()) >= 0) {
+                return 0;
+            }
+            // 绝大多数情况为追加到末尾
+            int position = size;
+            while (position > 0 && ORDER.compare(get(position - 1), message) > 0) {
+                position--;
+            }
+            long before = bytes;
+            if (size == items.length) {
+                if (position == 0) {
+                    // 比缓冲区中所有消息都早，不再保留
+                    return 0;
+                }
+                bytes -= estimateBytes(get(0));
+                head = (head + 1) % items.length;
+                size--;
+                position--;
+                exhaustive = false;
+            }
+            for (int i = size; i > position; i--) {
+                set(i, get(i - 1));
+            }
+            set(position, message);
+            size++;
+            bytes += estimateBytes(message);
+            return bytes - before;
+        }
+
+        private List<ChatMessage> newest(int limit) {
+            int count = Math.min(limit, size);
+            List<ChatMessage> result = new ArrayList<>(count);
+            for (int i = size - 1; i >= size - count; i--) {
+                result.add(get(i));
+            }
+            return result;
+        }
+
+        /**
+         * 查找消息ID所在位置，不存在时返回-1
+         */
+        private int indexOf(Long id) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (get(i).getId().equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 更新位置不超过upTo且满足条件的消息
+         */
+        private void update(int upTo, Predicate<ChatMessage> filter, UnaryOperator<ChatMessage> updater) {
+            for (int i = 0; i <= upTo; i++) {
+                ChatMessage message = get(i);
+                if (filter.test(message)) {
+                    set(i, updater.apply(message));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.charno.chat.manager;
+
+import org.charno.chat.constants.ChatConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话心跳与空闲回收
+ * 会话按下一次检查时间挂在时间轮上，收到任何消息只更新最后活跃时间，不移动时间轮中的条目。
+ * 每秒推进一格，到期时按最后活跃时间判断：空闲超过心跳间隔发送一次协议层Ping，超过连接超时时间则关闭并移除会话，
+ * 否则按最后活跃时间重新挂到时间轮上。
+ * 每次推进同时检查本节点所有发送会话，关闭单次发送超过时间上限的会话，释放被卡住的发送线程。
+ */
+@Component
+public class ChatSessionReaper {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSessionReaper.class);
+
+    private static final long TICK_MS = 1000;
+
+    private static final long HEARTBEAT_MS = TimeUnit.SECONDS.toMillis(ChatConstants.WebSocket.HEARTBEAT_INTERVAL);
+
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(ChatConstants.WebSocket.CONNECTION_TIMEOUT);
+
+    /**
+     * 时间轮格数，覆盖最长的检查间隔，到期时间更远的条目在轮转时保留到对应圈数
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    private static final CloseStatus IDLE_TIMEOUT = CloseStatus.SESSION_NOT_RELIABLE.withReason("心跳超时");
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final Queue<Entry>[] wheel = new Queue[WHEEL_SIZE];
+
+    private volatile long currentTick;
+
+    private ScheduledExecutorService ticker;
+
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder sendStalled = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        currentTick = System.currentTimeMillis() / TICK_MS;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-session-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * 开始跟踪会话（连接建立后调用）
+     */
+    public void register(WebSocketSession session) {
+        Entry entry = new Entry(session.getId(), System.currentTimeMillis());
+        entries.put(entry.sessionId, entry);
+        schedule(entry, entry.lastActivity + HEARTBEAT_MS);
+    }
+
+    /**
+     * 记录会话活跃（收到任何消息时调用）
+     */
+    public void touch(WebSocketSession session) {
+        Entry entry = entries.get(session.getId());
+        if (entry != null) {
+            entry.lastActivity = System.currentTimeMillis();
+            entry.pinged = false;
+        }
+    }
+
+    /**
+     * 停止跟踪会话（连接关闭后调用），时间轮中的条目到期时自动丢弃
+     */
+    public void unregister(WebSocketSession session) {
+        entries.remove(session.getId());
+    }
+
+    /**
+     * 心跳统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tracked", entries.size());
+        stats.put("pingsSent", pingsSent.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("sendStalled", sendStalled.sum());
+        return stats;
+    }
+
+    private void schedule(Entry entry, long deadline) {
+        long tick = Math.max(deadline / TICK_MS, currentTick + 1);
+        entry.deadlineTick = tick;
+        wheel[(int) (tick % WHEEL_SIZE)].add(entry);
+    }
+
+    /**
+     * 推进时间轮，处理追上当前时间前的所有格
+     */
+    private void advance() {
+        long nowTick = System.currentTimeMillis() / TICK_MS;
+        while (currentTick < nowTick) {
+            currentTick++;
+            try {
+                expire(wheel[(int) (currentTick % WHEEL_SIZE)]);
+            } catch (Exception e) {
+                logger.error("处理会话心跳失败", e);
+            }
+        }
+        try {
+            closeStalledSends();
+        } catch (Exception e) {
+            logger.error("检查发送超时失败", e);
+        }
+    }
+
+    /**
+     * 关闭单次发送超过时间上限的会话
+     */
+    private void closeStalledSends() {
+        for (WebSocketSession session : sessionManager.getSessions().values()) {
+            if (session instanceof OutboundSession outbound && outbound.closeIfSendStalled()) {
+                entries.remove(session.getId());
+                sessionManager.removeSession(session.getId());
+                sendStalled.increment();
+            }
+        }
+    }
+
+    private void expire(Queue<Entry> slot) {
+        int size = slot.size();
+        for (int i = 0; i < size; i++) {
+            Entry entry = slot.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entries.get(entry.sessionId) != entry) {
+                continue;
+            }
+            if (entry.deadlineTick > currentTick) {
+                // 尚未到期（还需轮转若干圈）
+                slot.add(entry);
+                continue;
+            }
+            check(entry);
+        }
+    }
+
+    private void check(Entry entry) {
+        Long userId = sessionManager.getUserId(entry.sessionId);
+        WebSocketSession session = userId != null ? sessionManager.getSession(userId) : null;
+        if (session == null || !session.getId().equals(entry.sessionId)) {
+            // 会话已被移除或被同一用户的新连接替换
+            entries.remove(entry.sessionId);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long idle = now - entry.lastActivity;
+        if (idle >= TIMEOUT_MS || !session.isOpen()) {
+            evict(entry, session);
+            return;
+        }
+        if (idle >= HEARTBEAT_MS && !entry.pinged) {
+            entry.pinged = true;
+            ping(session);
+            schedule(entry, entry.lastActivity + TIMEOUT_MS);
+            return;
+        }
+        schedule(entry, entry.lastActivity + (entry.pinged ? TIMEOUT_MS : HEARTBEAT_MS));
+    }
+
+    private void ping(WebSocketSession session) {
+        try {
+            PingMessage ping = new PingMessage();
+            if (session instanceof OutboundSession outbound) {
+                outbound.sendDroppable(ping);
+            } else {
+                session.sendMessage(ping);
+            }
+            pingsSent.increment();
+        } catch (Exception e) {
+            logger.debug("发送心跳到会话 {} 失败: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private void evict(Entry entry, WebSocketSession session) {
+        entries.remove(entry.sessionId);
+        // 先从管理器中移除，避免关闭过程中仍被当作在线用户
+        sessionManager.removeSession(entry.sessionId);
+        evicted.increment();
+        logger.info("会话 {} 超过 {} 秒无活动，关闭连接", entry.sessionId, ChatConstants.WebSocket.CONNECTION_TIMEOUT);
+        try {
+            session.close(IDLE_TIMEOUT);
+        } catch (Exception e) {
+            logger.debug("关闭会话 {} 失败: {}", entry.sessionId, e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+
+        private final String sessionId;
+
+        private volatile long lastActivity;
+
+        private volatile boolean pinged;
+
+        private volatile long deadlineTick;
+
+        private Entry(String sessionId, long lastActivity) {
+            this.sessionId = sessionId;
+            this.lastActivity = lastActivity;
+        }
+    }
+}
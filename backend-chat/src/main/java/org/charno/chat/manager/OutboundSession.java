@@ -0,0 +1,244 @@
+package org.charno.chat.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带有限发送队列的WebSocket会话
+ * 调用方只把消息放入队列，由共享的发送线程池逐条写出，慢速客户端不会阻塞调用方线程，同一会话的发送也不会并发。
+ * 队列超出缓冲上限时先丢弃可丢弃的消息（如正在输入状态），仍放不下聊天消息时关闭会话；
+ * 单次发送超过时间上限也会关闭会话：底层阻塞写出本身带有同样的超时，会话清理器每秒检查一次卡住的发送，
+ * 避免卡住的发送在没有后续消息入队时长期占用发送线程。
+ */
+public class OutboundSession extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundSession.class);
+
+    /**
+     * Tomcat阻塞发送超时的会话属性（毫秒）
+     */
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final Executor sender;
+
+    private final long sendTimeLimitMs;
+
+    private final int bufferSizeLimit;
+
+    /**
+     * 待发送队列，由this保护
+     */
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+
+    private int bufferedBytes;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * 当前发送开始时间，0表示空闲
+     */
+    private volatile long sendStartTime;
+
+    private volatile boolean closing;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public OutboundSession(WebSocketSession delegate, Executor sender, long sendTimeLimitMs, int bufferSizeLimit) {
+        super(delegate);
+        this.sender = sender;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        applyBlockingSendTimeout(delegate, sendTimeLimitMs);
+    }
+
+    /**
+     * 发送聊天等必须送达的消息，队列溢出时关闭会话
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        enqueue(message, false, null);
+    }
+
+    /**
+     * 发送必须送达的消息，实际写出到连接后在发送线程上回调onSent
+     */
+    public void sendMessage(WebSocketMessage<?> message, Runnable onSent) throws IOException {
+        enqueue(message, false, onSent);
+    }
+
+    /**
+     * 发送可丢弃的消息（如正在输入状态），队列溢出时直接丢弃
+     */
+    public void sendDroppable(WebSocketMessage<?> message) throws IOException {
+        enqueue(message, true, null);
+    }
+
+    public int getQueueDepth() {
+        synchronized (this) {
+            return queue.size();
+        }
+    }
+
+    public int getBufferedBytes() {
+        synchronized (this) {
+            return bufferedBytes;
+        }
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 当前发送超过时间上限时关闭会话，返回是否已关闭
+     * 由会话清理器定期调用，不依赖后续消息入队触发
+     */
+    public boolean closeIfSendStalled() {
+        if (closing || !isSendTimeExceeded()) {
+            return false;
+        }
+        closeUnreliable("发送超时");
+        return true;
+    }
+
+    private void enqueue(WebSocketMessage<?> message, boolean droppable, Runnable onSent) throws IOException {
+        if (closing || !isOpen()) {
+            throw new IOException("会话已关闭: " + getId());
+        }
+        if (isSendTimeExceeded()) {
+            closeUnreliable("发送超时");
+            throw new IOException("会话发送超时: " + getId());
+        }
+
+        int size = message.getPayloadLength();
+        boolean overflow = false;
+        synchronized (this) {
+            if (bufferedBytes + size > bufferSizeLimit) {
+                purgeDroppable();
+            }
+            if (bufferedBytes + size > bufferSizeLimit) {
+                if (droppable) {
+                    dropped.increment();
+                    return;
+                }
+                overflow = true;
+            } else {
+                queue.add(new Frame(message, droppable, size, onSent));
+                bufferedBytes += size;
+            }
+        }
+        if (overflow) {
+            closeUnreliable("发送缓冲区溢出");
+            throw new IOException("会话发送缓冲区溢出: " + getId());
+        }
+
+        if (draining.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+    }
+
+    /**
+     * 丢弃队列中所有可丢弃的消息，腾出缓冲空间
+     */
+    private void purgeDroppable() {
+        Iterator<Frame> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if (frame.droppable()) {
+                iterator.remove();
+                bufferedBytes -= frame.size();
+                dropped.increment();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                frame = queue.poll();
+                if (frame == null) {
+                    draining.set(false);
+                    return;
+                }
+                bufferedBytes -= frame.size();
+            }
+            if (closing) {
+                continue;
+            }
+            sendStartTime = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(frame.message());
+                sent.increment();
+            } catch (Exception e) {
+                logger.warn("发送消息到会话 {} 失败: {}", getId(), e.getMessage());
+                continue;
+            } finally {
+                sendStartTime = 0;
+            }
+            if (frame.onSent() != null) {
+                try {
+                    frame.onSent().run();
+                } catch (Exception e) {
+                    logger.warn("会话 {} 发送回调失败", getId(), e);
+                }
+            }
+        }
+    }
+
+    private boolean isSendTimeExceeded() {
+        long start = sendStartTime;
+        return start > 0 && System.currentTimeMillis() - start > sendTimeLimitMs;
+    }
+
+    private void closeUnreliable(String reason) {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        logger.warn("会话 {} {}，关闭连接", getId(), reason);
+        synchronized (this) {
+            dropped.add(queue.size());
+            queue.clear();
+            bufferedBytes = 0;
+        }
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            logger.debug("关闭会话 {} 失败: {}", getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 为底层阻塞写出设置超时，使卡住的写出在时间上限后抛出异常并释放发送线程
+     */
+    private static void applyBlockingSendTimeout(WebSocketSession delegate, long sendTimeLimitMs) {
+        WebSocketSession raw = WebSocketSessionDecorator.unwrap(delegate);
+        if (raw instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session session = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (session != null) {
+                session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMs);
+            }
+        }
+    }
+
+    private record Frame(WebSocketMessage<?> message, boolean droppable, int size, Runnable onSent) {
+    }
+}
@@ -2,23 +2,56 @@ package org.charno.chat.manager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebSocket会话管理器
- * 管理用户的长连接会话
+ * 管理用户的长连接会话，本节点的会话同时登记到ChatPresenceRegistry，供其他节点路由消息。
+ * 注册的会话包装为OutboundSession，所有发送经由有限队列和共享发送线程池完成。
  */
 @Component
 public class WebSocketSessionManager {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSessionManager.class);
 
+    @Autowired
+    private ChatPresenceRegistry presenceRegistry;
+
+    /**
+     * 单次发送时间上限，超出后关闭会话
+     */
+    @Value("${value.chat.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    /**
+     * 每个会话待发送数据的字节上限
+     */
+    @Value("${value.chat.outbound.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Value("${value.chat.outbound.threads:16}")
+    private int senderThreads;
+
+    private ExecutorService sender;
+
     // 用户ID -> WebSocket会话的映射
     private final Map<Long, WebSocketSession> userSessions = new ConcurrentHashMap<>();
     
@@ -26,7 +59,22 @@ public class WebSocketSessionManager {
     private final Map<String, Long> sessionUserMap = new ConcurrentHashMap<>();
     
     // 在线用户ID集合
-    private final Set<Long> onlineUsers = new CopyOnWriteArraySet<>();
+    private final Set<Long> onlineUsers = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "chat-outbound-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sender.shutdownNow();
+    }
 
     /**
      * 添加用户会话
@@ -39,9 +87,10 @@ public class WebSocketSessionManager {
         // 如果用户已经有会话，先移除旧会话
         removeSessionByUserId(userId);
         
-        userSessions.put(userId, session);
+        userSessions.put(userId, new OutboundSession(session, sender, sendTimeLimitMs, bufferSizeLimit));
         sessionUserMap.put(session.getId(), userId);
         onlineUsers.add(userId);
+        presenceRegistry.register(userId);
         
         logger.info("用户 {} 连接成功，会话ID: {}", userId, session.getId());
         logger.info("当前在线用户数: {}", onlineUsers.size());
@@ -59,6 +108,7 @@ public class WebSocketSessionManager {
         if (userId != null) {
             userSessions.remove(userId);
             onlineUsers.remove(userId);
+            presenceRegistry.unregister(userId);
             logger.info("用户 {} 断开连接，会话ID: {}", userId, sessionId);
             logger.info("当前在线用户数: {}", onlineUsers.size());
         }
@@ -76,6 +126,7 @@ public class WebSocketSessionManager {
         if (session != null) {
             sessionUserMap.remove(session.getId());
             onlineUsers.remove(userId);
+            presenceRegistry.unregister(userId);
             logger.info("移除用户 {} 的会话", userId);
         }
     }
@@ -87,6 +138,54 @@ public class WebSocketSessionManager {
         return userSessions.get(userId);
     }
 
+    /**
+     * 获取会话对应的已注册发送会话，未注册时返回原会话
+     * 对同一连接的所有发送都应经过此方法，避免与队列中的发送并发
+     */
+    public WebSocketSession outbound(WebSocketSession session) {
+        Long userId = sessionUserMap.get(session.getId());
+        WebSocketSession registered = userId != null ? userSessions.get(userId) : null;
+        return registered != null && registered.getId().equals(session.getId()) ? registered : session;
+    }
+
+    /**
+     * 每个会话待发送数据的字节上限
+     */
+    public int getBufferSizeLimit() {
+        return bufferSizeLimit;
+    }
+
+    /**
+     * 发送队列统计：汇总及每个会话的队列深度、缓冲字节数和丢弃数
+     */
+    public Map<String, Object> getOutboundStats() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        long totalDropped = 0;
+        int totalQueued = 0;
+        for (Map.Entry<Long, WebSocketSession> entry : userSessions.entrySet()) {
+            if (!(entry.getValue() instanceof OutboundSession outbound)) {
+                continue;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("userId", entry.getKey());
+            item.put("sessionId", outbound.getId());
+            item.put("queueDepth", outbound.getQueueDepth());
+            item.put("bufferedBytes", outbound.getBufferedBytes());
+            item.put("sent", outbound.getSentCount());
+            item.put("dropped", outbound.getDroppedCount());
+            sessions.add(item);
+            totalDropped += outbound.getDroppedCount();
+            totalQueued += outbound.getQueueDepth();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("queued", totalQueued);
+        stats.put("dropped", totalDropped);
+        stats.put("details", sessions);
+        return stats;
+    }
+
     /**
      * 根据会话ID获取用户ID
      */
@@ -95,21 +194,48 @@ public class WebSocketSessionManager {
     }
 
     /**
-     * 检查用户是否在线
+     * 检查用户是否在线（连接在任意节点）
      */
     public boolean isUserOnline(Long userId) {
-        return userId != null && onlineUsers.contains(userId);
+        if (userId == null) {
+            return false;
+        }
+        return onlineUsers.contains(userId) || presenceRegistry.getNode(userId) != null;
     }
 
     /**
-     * 获取所有在线用户ID
+     * 批量检查在线状态，返回其中在线（连接在任意节点）的用户ID
+     */
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        Set<Long> online = new HashSet<>();
+        Set<Long> unknown = new HashSet<>();
+        for (Long userId : userIds) {
+            if (onlineUsers.contains(userId)) {
+                online.add(userId);
+            } else if (userId != null) {
+                unknown.add(userId);
+            }
+        }
+        online.addAll(presenceRegistry.getNodes(unknown).keySet());
+        return online;
+    }
+
+    /**
+     * 获取本节点所有在线用户ID（只读视图，随连接变化）
      */
     public Set<Long> getOnlineUsers() {
-        return new CopyOnWriteArraySet<>(onlineUsers);
+        return Collections.unmodifiableSet(onlineUsers);
+    }
+
+    /**
+     * 获取本节点所有会话（只读视图，用户ID -> 会话）
+     */
+    public Map<Long, WebSocketSession> getSessions() {
+        return Collections.unmodifiableMap(userSessions);
     }
 
     /**
-     * 获取在线用户数量
+     * 获取本节点在线用户数量
      */
     public int getOnlineUserCount() {
         return onlineUsers.size();
@@ -119,6 +245,7 @@ public class WebSocketSessionManager {
      * 清空所有会话
      */
     public void clearAllSessions() {
+        onlineUsers.forEach(presenceRegistry::unregister);
         userSessions.clear();
         sessionUserMap.clear();
         onlineUsers.clear();
@@ -0,0 +1,50 @@
+package org.charno.chat.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+import org.charno.chat.entity.ChatConversation;
+
+/**
+ * 会话摘要数据访问层
+ */
+@Mapper
+public interface ChatConversationMapper extends BaseMapper<ChatConversation> {
+
+    /**
+     * 写入新消息：不存在则创建会话，存在则累加未读数，并在消息更新时替换最后一条消息
+     */
+    @Insert("INSERT INTO chat_conversation (owner_user_id, partner_user_id, last_message_id, last_message_preview, " +
+            "last_message_time, unread_count, update_time) " +
+            "VALUES (#{ownerUserId}, #{partnerUserId}, #{lastMessageId}, #{lastMessagePreview}, " +
+            "#{lastMessageTime}, #{unreadCount}, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (owner_user_id, partner_user_id) DO UPDATE SET " +
+            "unread_count = chat_conversation.unread_count + EXCLUDED.unread_count, " +
+            "last_message_preview = CASE WHEN EXCLUDED.last_message_id > COALESCE(chat_conversation.last_message_id, 0) " +
+            "THEN EXCLUDED.last_message_preview ELSE chat_conversation.last_message_preview END, " +
+            "last_message_time = CASE WHEN EXCLUDED.last_message_id > COALESCE(chat_conversation.last_message_id, 0) " +
+            "THEN EXCLUDED.last_message_time ELSE chat_conversation.last_message_time END, " +
+            "last_message_id = GREATEST(EXCLUDED.last_message_id, chat_conversation.last_message_id), " +
+            "update_time = CURRENT_TIMESTAMP")
+    int upsertOnMessage(ChatConversation conversation);
+
+    /**
+     * 减少未读数（不低于0）
+     */
+    @Update("UPDATE chat_conversation SET unread_count = GREATEST(unread_count - #{count}, 0), update_time = CURRENT_TIMESTAMP " +
+            "WHERE owner_user_id = #{ownerUserId} AND partner_user_id = #{partnerUserId}")
+    int decrementUnread(@Param("ownerUserId") Long ownerUserId,
+                        @Param("partnerUserId") Long partnerUserId,
+                        @Param("count") int count);
+
+    /**
+     * 按消息表重新统计某个会话的未读数（整段会话标记已读后使用，避免与并发写入的新消息产生偏差）
+     */
+    @Update("UPDATE chat_conversation SET update_time = CURRENT_TIMESTAMP, unread_count = (" +
+            "SELECT COUNT(*) FROM chat_message WHERE sender_user_id = #{partnerUserId} " +
+            "AND receiver_user_id = #{ownerUserId} AND is_read = false AND is_delete = false) " +
+            "WHERE owner_user_id = #{ownerUserId} AND partner_user_id = #{partnerUserId}")
+    int recountUnread(@Param("ownerUserId") Long ownerUserId, @Param("partnerUserId") Long partnerUserId);
+}
@@ -2,11 +2,156 @@ package org.charno.chat.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.charno.chat.dto.ChatSearchHitDTO;
 import org.charno.chat.entity.ChatMessage;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * 聊天消息数据访问层
  */
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
-} 
\ No newline at end of file
+
+    /**
+     * 将未读消息标记为已读，返回本次实际由未读变为已读的消息（仅含ID、发送者、接收者）
+     */
+    @Select("<script>" +
+            "UPDATE chat_message SET is_read = true, update_time = CURRENT_TIMESTAMP " +
+            "WHERE is_read = false AND is_delete = false AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "RETURNING id, sender_user_id, receiver_user_id" +
+            "</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    List<ChatMessage> markUnreadAsRead(@Param("ids") List<Long> ids);
+
+    /**
+     * 按预分配ID写入消息，ID已存在时忽略，返回本次实际写入的消息ID
+     * 用RETURNING确定写入的行，不依赖JDBC驱动的批量更新计数（reWriteBatchedInserts下为SUCCESS_NO_INFO）
+     */
+    @Select("<script>" +
+            "INSERT INTO chat_message (id, sender_user_id, receiver_user_id, message_type, message_content, " +
+            "send_time, status, create_time, update_time, is_delete, is_read) VALUES " +
+            "<foreach collection='messages' item='m' separator=','>" +
+            "(#{m.id}, #{m.senderUserId}, #{m.receiverUserId}, #{m.messageType}, #{m.messageContent}, " +
+            "#{m.sendTime}, #{m.status}, " +
+            "COALESCE(#{m.createTime,jdbcType=TIMESTAMP}, #{m.sendTime}), " +
+            "COALESCE(#{m.updateTime,jdbcType=TIMESTAMP}, #{m.sendTime}), " +
+            "COALESCE(#{m.isDelete,jdbcType=BOOLEAN}, false), COALESCE(#{m.isRead,jdbcType=BOOLEAN}, false))" +
+            "</foreach> " +
+            "ON CONFLICT (id) DO NOTHING RETURNING id" +
+            "</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    List<Long> insertIgnoreExisting(@Param("messages") List<ChatMessage> messages);
+
+    /**
+     * 从消息ID序列批量预分配ID
+     */
+    @Select("SELECT nextval('chat_message_id_seq') FROM generate_series(1, #{count})")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    List<Long> allocateIds(@Param("count") int count);
+
+    /**
+     * 将某发送者发给接收者、按(send_time, id)不晚于水位消息(upToTime, upToId)的消息标记为已读
+     * 消息ID按节点分段分配，不代表发送先后，水位按与聊天记录相同的(send_time, id)顺序比较；
+     * 水位由调用方解析后传入，水位消息尚未落库时也能更新已落库的更早消息；
+     * 会话键条件用于命中idx_chat_message_conversation
+     */
+    @Update("UPDATE chat_message SET is_read = true, status = #{readStatus}, update_time = CURRENT_TIMESTAMP " +
+            "WHERE LEAST(sender_user_id, receiver_user_id) = LEAST(#{senderId}, #{receiverId}) " +
+            "AND GREATEST(sender_user_id, receiver_user_id) = GREATEST(#{senderId}, #{receiverId}) " +
+            "AND sender_user_id = #{senderId} AND receiver_user_id = #{receiverId} " +
+            "AND (send_time, id) <= (#{upToTime}, #{upToId}) " +
+            "AND is_delete = false AND (is_read = false OR status <> #{readStatus})")
+    int markReadUpTo(@Param("senderId") Long senderId,
+                     @Param("receiverId") Long receiverId,
+                     @Param("upToTime") LocalDateTime upToTime,
+                     @Param("upToId") Long upToId,
+                     @Param("readStatus") String readStatus);
+
+    /**
+     * 将某发送者发给接收者、按(send_time, id)不晚于水位消息(upToTime, upToId)且仍为已发送状态的消息标记为已送达
+     */
+    @Update("UPDATE chat_message SET status = #{deliveredStatus}, update_time = CURRENT_TIMESTAMP " +
+            "WHERE LEAST(sender_user_id, receiver_user_id) = LEAST(#{senderId}, #{receiverId}) " +
+            "AND GREATEST(sender_user_id, receiver_user_id) = GREATEST(#{senderId}, #{receiverId}) " +
+            "AND sender_user_id = #{senderId} AND receiver_user_id = #{receiverId} " +
+            "AND (send_time, id) <= (#{upToTime}, #{upToId}) " +
+            "AND is_delete = false AND status = #{sentStatus}")
+    int markDeliveredUpTo(@Param("senderId") Long senderId,
+                          @Param("receiverId") Long receiverId,
+                          @Param("upToTime") LocalDateTime upToTime,
+                          @Param("upToId") Long upToId,
+                          @Param("sentStatus") String sentStatus,
+                          @Param("deliveredStatus") String deliveredStatus);
+
+    /**
+     * 在用户参与的消息中全文检索，按相关度倒序、ID倒序游标分页
+     * 内层查询命中idx_chat_message_content_tsv并截取一页，高亮只对返回的行计算
+     *
+     * @param peerId     限定对方用户，为空时检索全部会话
+     * @param cursorRank 上一页最后一条的相关度，与cursorId同时为空表示第一页
+     */
+    @Select("<script>" +
+            "SELECT h.id AS message_id, h.sender_user_id, h.receiver_user_id, h.message_content, h.send_time, h.rank, " +
+            "ts_headline('simple', h.message_content, websearch_to_tsquery('simple', #{keyword}), " +
+            "'StartSel=&lt;mark&gt;, StopSel=&lt;/mark&gt;, MaxFragments=2, MaxWords=20, MinWords=5') AS highlight " +
+            "FROM (" +
+            "SELECT m.id, m.sender_user_id, m.receiver_user_id, m.message_content, m.send_time, " +
+            "ts_rank(m.content_tsv, q) AS rank " +
+            "FROM chat_message m, websearch_to_tsquery('simple', #{keyword}) q " +
+            "WHERE m.content_tsv @@ q AND m.is_delete = false " +
+            "AND (m.sender_user_id = #{userId} OR m.receiver_user_id = #{userId}) " +
+            "<if test='peerId != null'>" +
+            "AND LEAST(m.sender_user_id, m.receiver_user_id) = LEAST(#{userId}, #{peerId}) " +
+            "AND GREATEST(m.sender_user_id, m.receiver_user_id) = GREATEST(#{userId}, #{peerId}) " +
+            "</if>" +
+            "<if test='cursorRank != null and cursorId != null'>" +
+            "AND (ts_rank(m.content_tsv, q), m.id) &lt; (CAST(#{cursorRank} AS real), #{cursorId}) " +
+            "</if>" +
+            "ORDER BY rank DESC, m.id DESC LIMIT #{limit}" +
+            ") h ORDER BY h.rank DESC, h.id DESC" +
+            "</script>")
+    List<ChatSearchHitDTO> searchMessages(@Param("userId") Long userId,
+                                          @Param("keyword") String keyword,
+                                          @Param("peerId") Long peerId,
+                                          @Param("cursorRank") Float cursorRank,
+                                          @Param("cursorId") Long cursorId,
+                                          @Param("limit") int limit);
+
+    /**
+     * 在用户参与的消息中按子串检索（所有片段都须出现），按ID倒序游标分页
+     * simple分词不能切分中日韩文字，这类关键词改用ILIKE，命中idx_chat_message_content_trgm
+     *
+     * @param patterns 已转义LIKE通配符并以%包围的片段模式
+     * @param cursorId 上一页最后一条的消息ID，为空表示第一页
+     */
+    @Select("<script>" +
+            "SELECT m.id AS message_id, m.sender_user_id, m.receiver_user_id, m.message_content, m.send_time, " +
+            "CAST(0 AS real) AS rank " +
+            "FROM chat_message m " +
+            "WHERE m.is_delete = false AND coalesce(m.message_type, 'text') NOT IN ('image', 'file', 'voice', 'video') " +
+            "AND (m.sender_user_id = #{userId} OR m.receiver_user_id = #{userId}) " +
+            "<if test='peerId != null'>" +
+            "AND LEAST(m.sender_user_id, m.receiver_user_id) = LEAST(#{userId}, #{peerId}) " +
+            "AND GREATEST(m.sender_user_id, m.receiver_user_id) = GREATEST(#{userId}, #{peerId}) " +
+            "</if>" +
+            "<foreach collection='patterns' item='pattern'>" +
+            "AND m.message_content ILIKE #{pattern} " +
+            "</foreach>" +
+            "<if test='cursorId != null'>" +
+            "AND m.id &lt; #{cursorId} " +
+            "</if>" +
+            "ORDER BY m.id DESC LIMIT #{limit}" +
+            "</script>")
+    List<ChatSearchHitDTO> searchMessagesBySubstring(@Param("userId") Long userId,
+                                                     @Param("patterns") List<String> patterns,
+                                                     @Param("peerId") Long peerId,
+                                                     @Param("cursorId") Long cursorId,
+                                                     @Param("limit") int limit);
+}
@@ -0,0 +1,297 @@
+package org.charno.chat.persistence;
+
+import org.charno.chat.entity.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * 聊天消息本地日志
+ * 基于内存映射文件的追加日志，按固定大小分段。每条记录格式为 [长度][CRC32][消息数据]，长度为0表示段内数据结束。
+ * 段写满后封存，封存段中的消息全部落库后删除该段文件；启动时读取残留段文件用于补写数据库。
+ * 写入内存映射区后即使进程崩溃，数据也由操作系统页缓存保留；开启syncOnAppend后每条记录强制刷盘。
+ */
+public class ChatMessageJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageJournal.class);
+
+    private static final String FILE_PREFIX = "chat-journal-";
+
+    private static final String FILE_SUFFIX = ".log";
+
+    /**
+     * 记录头：长度(4) + CRC32(4)
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final boolean syncOnAppend;
+
+    private Segment active;
+
+    /**
+     * 启动时读取到的残留段文件
+     */
+    private final List<Path> residualFiles = new ArrayList<>();
+
+    private long nextSegmentIndex;
+
+    public ChatMessageJournal(Path directory, int segmentSize, boolean syncOnAppend) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncOnAppend = syncOnAppend;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * 读取目录中残留的全部消息（上次运行未确认落库的部分），按写入顺序返回
+     * 必须在第一次append之前调用
+     */
+    public List<ChatMessage> readResidual() throws IOException {
+        List<ChatMessage> messages = new ArrayList<>();
+        residualFiles.clear();
+        for (Path file : listSegmentFiles()) {
+            residualFiles.add(file);
+            nextSegmentIndex = Math.max(nextSegmentIndex, parseIndex(file) + 1);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                readRecords(buffer, messages, file);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 删除启动前残留的段文件（残留消息已补写数据库后调用）
+     */
+    public void deleteResidual() throws IOException {
+        for (Path file : residualFiles) {
+            Files.deleteIfExists(file);
+        }
+        residualFiles.clear();
+    }
+
+    /**
+     * 追加一条消息，返回所在的段，用于落库后确认
+     */
+    public synchronized Segment append(ChatMessage message) throws IOException {
+        byte[] payload = encode(message);
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize + HEADER_SIZE > segmentSize) {
+            throw new IOException("消息过大，无法写入日志: " + payload.length + " 字节");
+        }
+        // 预留一个记录头的位置作为段结束标记
+        if (active == null || active.buffer.remaining() < recordSize + HEADER_SIZE) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        MappedByteBuffer buffer = active.buffer;
+        int start = buffer.position();
+        // 先写数据和校验值，最后写长度，保证读取时不会看到写了一半的记录
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.putInt(start, payload.length);
+        if (syncOnAppend) {
+            buffer.force(start, recordSize);
+        }
+        active.appended.incrementAndGet();
+        return active;
+    }
+
+    /**
+     * 确认段中若干条消息已落库，封存段全部确认后删除文件
+     */
+    public void acknowledge(Segment segment, int count) {
+        int flushed = segment.flushed.addAndGet(count);
+        if (segment.sealed && flushed >= segment.appended.get()) {
+            segment.delete();
+        }
+    }
+
+    public synchronized void close() {
+        if (active != null) {
+            active.buffer.force();
+            active.closeChannel();
+            active = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment previous = active;
+        Path file = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, nextSegmentIndex++, FILE_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(segmentSize);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+
+        if (previous != null) {
+            previous.buffer.force();
+            previous.closeChannel();
+            previous.sealed = true;
+            if (previous.flushed.get() >= previous.appended.get()) {
+                previous.delete();
+            }
+        }
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private long parseIndex(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void readRecords(ByteBuffer buffer, List<ChatMessage> messages, Path file) {
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("日志文件 {} 存在损坏的记录，停止读取该文件", file.getFileName());
+                break;
+            }
+            messages.add(decode(ByteBuffer.wrap(payload)));
+        }
+    }
+
+    private static byte[] encode(ChatMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(message.getId());
+        out.writeLong(message.getSenderUserId());
+        out.writeLong(message.getReceiverUserId());
+        writeString(out, message.getMessageType());
+        writeString(out, message.getMessageContent());
+        writeString(out, message.getStatus());
+        LocalDateTime sendTime = message.getSendTime();
+        out.writeLong(sendTime.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(sendTime.getNano());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ChatMessage decode(ByteBuffer in) {
+        ChatMessage message = new ChatMessage();
+        message.setId(in.getLong());
+        message.setSenderUserId(in.getLong());
+        message.setReceiverUserId(in.getLong());
+        message.setMessageType(readString(in));
+        message.setMessageContent(readString(in));
+        message.setStatus(readString(in));
+        LocalDateTime sendTime = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        message.setSendTime(sendTime);
+        message.setCreateTime(sendTime);
+        message.setUpdateTime(sendTime);
+        message.setIsRead(false);
+        message.setIsDelete(false);
+        return message;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 日志段
+     */
+    public static final class Segment {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private final AtomicInteger appended = new AtomicInteger();
+
+        private final AtomicInteger flushed = new AtomicInteger();
+
+        private volatile boolean sealed;
+
+        private volatile boolean deleted;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭日志文件失败: {}", file.getFileName());
+            }
+        }
+
+        private synchronized void delete() {
+            if (deleted) {
+                return;
+            }
+            deleted = true;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("删除日志文件失败: {}", file.getFileName());
+            }
+        }
+    }
+}
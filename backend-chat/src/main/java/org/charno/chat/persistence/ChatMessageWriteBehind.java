@@ -0,0 +1,371 @@
+package org.charno.chat.persistence;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.charno.chat.manager.ChatRecentMessageCache;
+import org.charno.chat.service.IChatMessageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天消息写后持久化
+ * 消息先分配ID并追加到本地内存映射日志，随即确认发送；后台线程按批次写入chat_message并更新会话摘要，
+ * 落库后释放日志段，并通知其他节点失效最近消息缓存中对应的会话。启动时补写上次运行未落库的日志。
+ * 确认后到落库前的消息登记在ChatUnflushedMessages中，其间的已读标记和回执在落库后重新应用。
+ * 确认后因数据约束无法写入的消息通知双方发送失败。
+ * 日志写入失败或待写队列已满时退回同步写库。
+ */
+@Component
+public class ChatMessageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriteBehind.class);
+
+    /**
+     * 写后模式：先写本地日志再批量落库
+     */
+    public static final String MODE_WRITE_BEHIND = "write-behind";
+
+    /**
+     * 同步模式：每条消息直接写库
+     */
+    public static final String MODE_SYNC = "sync";
+
+    @Value("${value.chat.persistence.mode:write-behind}")
+    private String mode;
+
+    @Value("${value.chat.persistence.journal-dir:./data/chat-journal}")
+    private String journalDir;
+
+    @Value("${value.chat.persistence.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    /**
+     * 每条记录写入后是否强制刷盘（关闭时可抵御进程崩溃，开启后可抵御机器掉电）
+     */
+    @Value("${value.chat.persistence.sync-on-append:false}")
+    private boolean syncOnAppend;
+
+    @Value("${value.chat.persistence.batch-size:500}")
+    private int batchSize;
+
+    @Value("${value.chat.persistence.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${value.chat.persistence.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${value.chat.persistence.id-block-size:200}")
+    private int idBlockSize;
+
+    @Value("${value.chat.persistence.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Autowired
+    private IChatMessageService chatMessageService;
+
+    @Autowired
+    private ChatRecentMessageCache recentMessageCache;
+
+    @Autowired
+    private ChatUnflushedMessages unflushedMessages;
+
+    @Autowired
+    private ChatMessageRouter messageRouter;
+
+    private ChatMessageJournal journal;
+
+    private BlockingQueue<Pending> queue;
+
+    private final ArrayDeque<Long> idBlock = new ArrayDeque<>();
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder syncFallbacks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reapplied = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    @PostConstruct
+    public void init() throws Exception {
+        if (!isWriteBehind()) {
+            return;
+        }
+        Path directory = Paths.get(journalDir);
+        journal = new ChatMessageJournal(directory, segmentSizeMb * 1024 * 1024, syncOnAppend);
+        List<ChatMessage> residual = journal.readResidual();
+        if (!residual.isEmpty()) {
+            logger.info("发现 {} 条未落库的聊天消息日志，将在后台补写", residual.size());
+        }
+        residual.forEach(unflushedMessages::track);
+
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(() -> run(residual), "chat-message-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        // 未落库的消息保留在日志中，下次启动时补写
+        journal.close();
+    }
+
+    /**
+     * 持久化一条消息，返回后消息已具有ID
+     *
+     * @return 是否成功（写后模式下表示已写入本地日志）
+     */
+    public boolean persist(ChatMessage message) {
+        if (!isWriteBehind()) {
+            return chatMessageService.save(message);
+        }
+
+        try {
+            message.setId(nextId());
+            ChatMessageJournal.Segment segment = journal.append(message);
+            // 先登记再入队，写入线程取到消息时一定能找到其状态
+            unflushedMessages.track(message);
+            if (!queue.offer(new Pending(message, segment))) {
+                // 队列已满说明数据库写入跟不上，改为同步写入形成背压；消息尚未确认，不会有已读标记
+                rejected.increment();
+                unflushedMessages.remove(message);
+                try {
+                    return insertNow(message);
+                } finally {
+                    journal.acknowledge(segment, 1);
+                }
+            }
+            appended.increment();
+            return true;
+        } catch (Exception e) {
+            logger.warn("写入聊天消息日志失败，改为同步写库: {}", e.getMessage());
+            return insertNow(message);
+        }
+    }
+
+    /**
+     * 写后持久化统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("appended", appended.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("batches", batches.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("syncFallbacks", syncFallbacks.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("reapplied", reapplied.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("pending", queue != null ? queue.size() : 0);
+        stats.put("unflushed", unflushedMessages.size());
+        return stats;
+    }
+
+    private boolean isWriteBehind() {
+        return MODE_WRITE_BEHIND.equalsIgnoreCase(mode);
+    }
+
+    private boolean insertNow(ChatMessage message) {
+        syncFallbacks.increment();
+        if (message.getId() != null) {
+            boolean inserted = chatMessageService.insertBatchIgnoreExisting(List.of(message)) > 0;
+            if (inserted) {
+                recentMessageCache.publishPersisted(List.of(message));
+            }
+            return inserted;
+        }
+        return chatMessageService.save(message);
+    }
+
+    private synchronized Long nextId() {
+        if (idBlock.isEmpty()) {
+            idBlock.addAll(chatMessageService.allocateIds(idBlockSize));
+        }
+        return idBlock.poll();
+    }
+
+    private void run(List<ChatMessage> residual) {
+        // 1. 补写上次运行残留的日志
+        if (!residual.isEmpty()) {
+            for (int from = 0; from < residual.size(); from += batchSize) {
+                List<ChatMessage> batch = residual.subList(from, Math.min(from + batchSize, residual.size()));
+                if (!running || !writeWithRetry(batch)) {
+                    return;
+                }
+                replayed.add(batch.size());
+            }
+            try {
+                journal.deleteResidual();
+                logger.info("聊天消息日志补写完成，共 {} 条", residual.size());
+            } catch (Exception e) {
+                logger.warn("删除已补写的日志文件失败: {}", e.getMessage());
+            }
+        }
+
+        // 2. 批量写入新消息
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List<ChatMessage> messages = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                messages.add(pending.message());
+            }
+            if (!writeWithRetry(messages)) {
+                return;
+            }
+            acknowledge(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 写入一批消息，数据库不可用时退避重试；批量写入因数据问题失败时逐条写入，跳过无法写入的消息。
+     * 按写入时的状态快照落库，落库后把期间新增的已读标记和回执重新应用到数据库
+     *
+     * @return false表示在关闭过程中放弃（消息仍保留在日志中）
+     */
+    private boolean writeWithRetry(List<ChatMessage> messages) {
+        List<ChatMessage> rows = unflushedMessages.snapshot(messages);
+        boolean written = retry(() -> {
+            try {
+                chatMessageService.insertBatchIgnoreExisting(rows);
+                persisted.add(rows.size());
+                recentMessageCache.publishPersisted(rows);
+            } catch (DataIntegrityViolationException e) {
+                writeOneByOne(rows);
+            }
+            batches.increment();
+        });
+        if (!written) {
+            return false;
+        }
+
+        List<ChatMessage> changed = unflushedMessages.release(rows);
+        if (changed.isEmpty()) {
+            return true;
+        }
+        reapplied.add(changed.size());
+        if (!retry(() -> chatMessageService.applyUnflushedState(changed))) {
+            logger.error("关闭前未能重新应用 {} 条消息的已读状态: {}", changed.size(),
+                    changed.stream().map(ChatMessage::getId).toList());
+        }
+        return true;
+    }
+
+    /**
+     * 执行数据库操作，数据库不可用时退避重试
+     *
+     * @return false表示在关闭过程中放弃
+     */
+    private boolean retry(Runnable action) {
+        while (true) {
+            try {
+                action.run();
+                return true;
+            } catch (Exception e) {
+                logger.error("写入聊天消息失败，{}ms后重试: {}", retryBackoffMs, e.getMessage());
+                if (!running) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void writeOneByOne(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            try {
+                chatMessageService.insertBatchIgnoreExisting(List.of(message));
+                persisted.increment();
+                recentMessageCache.publishPersisted(List.of(message));
+            } catch (DataIntegrityViolationException e) {
+                drop(message, e);
+            }
+        }
+    }
+
+    /**
+     * 已确认发送但无法写入数据库的消息：记录完整内容，从最近消息缓存中移除，并通知双方发送失败
+     */
+    private void drop(ChatMessage message, DataIntegrityViolationException e) {
+        dropped.increment();
+        logger.error("聊天消息无法写入数据库，已丢弃: id={}, 发送者={}, 接收者={}, 类型={}, 内容={}, 原因: {}",
+                message.getId(), message.getSenderUserId(), message.getReceiverUserId(),
+                message.getMessageType(), message.getMessageContent(), e.getMostSpecificCause().getMessage());
+        unflushedMessages.remove(message);
+        recentMessageCache.invalidate(message.getSenderUserId(), message.getReceiverUserId());
+
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.MESSAGE_FAILED);
+        frame.put("messageId", message.getId());
+        frame.put("senderId", message.getSenderUserId());
+        frame.put("receiverId", message.getReceiverUserId());
+        frame.put("status", ChatConstants.MessageStatus.FAILED);
+        try {
+            messageRouter.deliver(message.getSenderUserId(), frame);
+            messageRouter.deliver(message.getReceiverUserId(), frame);
+        } catch (Exception ex) {
+            logger.warn("通知消息 {} 发送失败时出错: {}", message.getId(), ex.getMessage());
+        }
+    }
+
+    private void acknowledge(List<Pending> batch) {
+        Map<ChatMessageJournal.Segment, Integer> counts = new IdentityHashMap<>();
+        for (Pending pending : batch) {
+            counts.merge(pending.segment(), 1, Integer::sum);
+        }
+        counts.forEach(journal::acknowledge);
+    }
+
+    private record Pending(ChatMessage message, ChatMessageJournal.Segment segment) {
+    }
+}
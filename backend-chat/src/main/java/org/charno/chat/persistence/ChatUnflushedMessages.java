@@ -0,0 +1,235 @@
+package org.charno.chat.persistence;
+
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 已确认发送、尚未落库的聊天消息
+ * 写后模式下消息写入本地日志即确认，落库前的这段时间里数据库中还没有对应的行。
+ * 已读标记和回执先作用在这里保存的消息上，再更新数据库；写入线程按写入时的快照落库，
+ * 落库后比较快照与当前状态，期间发生变化的消息由写入线程重新应用到数据库，已读状态不会因写入时机丢失。
+ * 聊天记录查询也合并这里的消息，落库前即可查到。
+ * 所有方法由this保护，返回的消息均为副本。
+ */
+@Component
+public class ChatUnflushedMessages {
+
+    private static final Comparator<ChatMessage> NEWEST_FIRST = Comparator
+            .comparing(ChatMessage::getSendTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ChatMessage::getId)
+            .reversed();
+
+    private final Map<Long, ChatMessage> byId = new HashMap<>();
+
+    private final Map<ConversationKey, Map<Long, ChatMessage>> byConversation = new HashMap<>();
+
+    /**
+     * 登记已写入日志、即将确认的消息
+     */
+    public synchronized void track(ChatMessage message) {
+        ChatMessage copy = copy(message);
+        byId.put(copy.getId(), copy);
+        byConversation.computeIfAbsent(ConversationKey.of(copy), k -> new LinkedHashMap<>()).put(copy.getId(), copy);
+    }
+
+    /**
+     * 移除未确认即直接写库或无法写入的消息
+     */
+    public synchronized void remove(ChatMessage message) {
+        ChatMessage removed = byId.remove(message.getId());
+        if (removed != null) {
+            removeFromConversation(removed);
+        }
+    }
+
+    /**
+     * 写入前取得消息当前状态的快照，写入线程按快照落库
+     */
+    public synchronized List<ChatMessage> snapshot(List<ChatMessage> messages) {
+        List<ChatMessage> rows = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            ChatMessage current = byId.get(message.getId());
+            rows.add(copy(current != null ? current : message));
+        }
+        return rows;
+    }
+
+    /**
+     * 落库后释放消息，返回写入快照之后已读状态或状态又发生变化的消息（当前状态）
+     */
+    public synchronized List<ChatMessage> release(List<ChatMessage> rows) {
+        List<ChatMessage> changed = new ArrayList<>();
+        for (ChatMessage row : rows) {
+            ChatMessage current = byId.remove(row.getId());
+            if (current == null) {
+                continue;
+            }
+            removeFromConversation(current);
+            if (!Objects.equals(current.getIsRead(), row.getIsRead())
+                    || !Objects.equals(current.getStatus(), row.getStatus())) {
+                changed.add(current);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 查找尚未落库的消息
+     */
+    public synchronized ChatMessage find(Long id) {
+        ChatMessage message = id != null ? byId.get(id) : null;
+        return message != null ? copy(message) : null;
+    }
+
+    /**
+     * 将指定ID中尚未落库的消息标记为已读
+     *
+     * @return 其中尚未落库的消息
+     */
+    public synchronized List<ChatMessage> markRead(Collection<Long> ids) {
+        List<ChatMessage> matched = new ArrayList<>();
+        for (Long id : ids) {
+            ChatMessage message = byId.get(id);
+            if (message != null) {
+                message.setIsRead(true);
+                matched.add(copy(message));
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 将senderId发给receiverId、尚未落库的消息全部标记为已读
+     *
+     * @return 由未读变为已读的消息数
+     */
+    public synchronized int markConversationRead(Long senderId, Long receiverId) {
+        int changed = 0;
+        for (ChatMessage message : conversation(senderId, receiverId)) {
+            if (senderId.equals(message.getSenderUserId()) && !Boolean.TRUE.equals(message.getIsRead())) {
+                message.setIsRead(true);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 将回执应用到senderId发给receiverId、按(发送时间, ID)不晚于水位的尚未落库消息，
+     * 规则与数据库中的markReadUpTo/markDeliveredUpTo一致
+     *
+     * @return 更新的消息数
+     */
+    public synchronized int applyReceipt(Long senderId, Long receiverId, LocalDateTime upToTime, Long upToId,
+                                         String status) {
+        boolean read = ChatConstants.MessageStatus.READ.equals(status);
+        int changed = 0;
+        for (ChatMessage message : conversation(senderId, receiverId)) {
+            if (!senderId.equals(message.getSenderUserId()) || !notAfter(message, upToTime, upToId)) {
+                continue;
+            }
+            if (read) {
+                if (!Boolean.TRUE.equals(message.getIsRead()) || !status.equals(message.getStatus())) {
+                    message.setIsRead(true);
+                    message.setStatus(status);
+                    changed++;
+                }
+            } else if (ChatConstants.MessageStatus.SENT.equals(message.getStatus())) {
+                message.setStatus(status);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 两个用户之间尚未落库的消息，按(发送时间, ID)倒序
+     *
+     * @param beforeTime 只返回早于(beforeTime, beforeId)的消息，为空时返回全部
+     */
+    public synchronized List<ChatMessage> history(Long userId1, Long userId2, LocalDateTime beforeTime, Long beforeId) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (ChatMessage message : conversation(userId1, userId2)) {
+            if (beforeId == null || isBefore(message, beforeTime, beforeId)) {
+                messages.add(copy(message));
+            }
+        }
+        messages.sort(NEWEST_FIRST);
+        return messages;
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    private Collection<ChatMessage> conversation(Long userId1, Long userId2) {
+        Map<Long, ChatMessage> messages = byConversation.get(ConversationKey.of(userId1, userId2));
+        return messages != null ? messages.values() : List.of();
+    }
+
+    private void removeFromConversation(ChatMessage message) {
+        ConversationKey key = ConversationKey.of(message);
+        Map<Long, ChatMessage> messages = byConversation.get(key);
+        if (messages != null) {
+            messages.remove(message.getId());
+            if (messages.isEmpty()) {
+                byConversation.remove(key);
+            }
+        }
+    }
+
+    private static boolean notAfter(ChatMessage message, LocalDateTime time, Long id) {
+        int compare = compareTime(message.getSendTime(), time);
+        return compare < 0 || (compare == 0 && message.getId() <= id);
+    }
+
+    private static boolean isBefore(ChatMessage message, LocalDateTime time, Long id) {
+        int compare = compareTime(message.getSendTime(), time);
+        return compare < 0 || (compare == 0 && message.getId() < id);
+    }
+
+    private static int compareTime(LocalDateTime a, LocalDateTime b) {
+        return Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()).compare(a, b);
+    }
+
+    private static ChatMessage copy(ChatMessage source) {
+        ChatMessage message = new ChatMessage();
+        message.setId(source.getId());
+        message.setSenderUserId(source.getSenderUserId());
+        message.setReceiverUserId(source.getReceiverUserId());
+        message.setMessageType(source.getMessageType());
+        message.setMessageContent(source.getMessageContent());
+        message.setSendTime(source.getSendTime());
+        message.setStatus(source.getStatus());
+        message.setCreateTime(source.getCreateTime());
+        message.setUpdateTime(source.getUpdateTime());
+        message.setIsDelete(source.getIsDelete());
+        message.setIsRead(source.getIsRead());
+        return message;
+    }
+
+    /**
+     * 规范化的会话键
+     */
+    private record ConversationKey(long low, long high) {
+
+        static ConversationKey of(ChatMessage message) {
+            return of(message.getSenderUserId(), message.getReceiverUserId());
+        }
+
+        static ConversationKey of(Long userId1, Long userId2) {
+            return new ConversationKey(Math.min(userId1, userId2), Math.max(userId1, userId2));
+        }
+    }
+}
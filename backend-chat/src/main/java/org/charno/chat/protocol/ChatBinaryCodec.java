@@ -0,0 +1,235 @@
+package org.charno.chat.protocol;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 二进制子协议编解码
+ * 每帧首字节为帧类型，其后按固定字段顺序编码，不携带字段名：
+ * <pre>
+ * 0x01 CHAT          receiverId, messageType, content
+ * 0x02 NEW_MESSAGE   messageId, senderId, sendTime, messageType, content
+ * 0x03 MESSAGE_SENT  messageId, timestamp
+ * 0x04 TYPING        对方用户ID（客户端发送时为receiverId，服务端下发时为senderId）, isTyping(1字节)
+ * 0x05 PING          timestamp
+ * 0x06 PONG          timestamp
+ * 0x07 RECEIPT       peerId, status(1字节：1送达，2已读), upToId
+ * 0x00 JSON          其余类型的帧，直接携带UTF-8编码的JSON文本
+ * </pre>
+ * 整数为无符号变长编码（每字节7位，高位表示后续还有字节），字符串为变长编码的(字节数+1)加UTF-8字节（0表示null），
+ * 时间为服务端本地时间按UTC换算的毫秒数，缺省值为0，解码后为LocalDateTime。
+ */
+public final class ChatBinaryCodec {
+
+    private static final byte JSON_FRAME = 0x00;
+    private static final byte CHAT = 0x01;
+    private static final byte NEW_MESSAGE = 0x02;
+    private static final byte MESSAGE_SENT = 0x03;
+    private static final byte TYPING = 0x04;
+    private static final byte PING = 0x05;
+    private static final byte PONG = 0x06;
+    private static final byte RECEIPT = 0x07;
+
+    private static final byte RECEIPT_DELIVERED = 1;
+    private static final byte RECEIPT_READ = 2;
+
+    private ChatBinaryCodec() {
+    }
+
+    /**
+     * 将消息帧编码为二进制
+     */
+    public static byte[] encode(JSONObject frame) {
+        String type = frame.getString("type");
+        if (type == null) {
+            return encodeJson(frame);
+        }
+        Writer out = new Writer();
+        switch (type) {
+            case ChatConstants.MessageType.CHAT -> {
+                out.write(CHAT);
+                out.writeVarLong(frame.getLongValue("receiverId"));
+                out.writeString(frame.getString("messageType"));
+                out.writeString(frame.getString("content"));
+            }
+            case ChatConstants.MessageType.NEW_MESSAGE -> {
+                out.write(NEW_MESSAGE);
+                out.writeVarLong(frame.getLongValue("messageId"));
+                out.writeVarLong(frame.getLongValue("senderId"));
+                out.writeVarLong(toEpochMillis(frame.get("sendTime")));
+                out.writeString(frame.getString("messageType"));
+                out.writeString(frame.getString("content"));
+            }
+            case ChatConstants.MessageType.MESSAGE_SENT -> {
+                out.write(MESSAGE_SENT);
+                out.writeVarLong(frame.getLongValue("messageId"));
+                out.writeVarLong(toEpochMillis(frame.get("timestamp")));
+            }
+            case ChatConstants.MessageType.TYPING -> {
+                out.write(TYPING);
+                Long peerId = frame.getLong("senderId");
+                out.writeVarLong(peerId != null ? peerId : frame.getLongValue("receiverId"));
+                out.write(frame.getBooleanValue("isTyping") ? 1 : 0);
+            }
+            case ChatConstants.MessageType.PING, ChatConstants.MessageType.PONG -> {
+                out.write(ChatConstants.MessageType.PING.equals(type) ? PING : PONG);
+                out.writeVarLong(toEpochMillis(frame.get("timestamp")));
+            }
+            case ChatConstants.MessageType.RECEIPT -> {
+                out.write(RECEIPT);
+                out.writeVarLong(frame.getLongValue("peerId"));
+                out.write(ChatConstants.MessageStatus.READ.equals(frame.getString("status")) ? RECEIPT_READ : RECEIPT_DELIVERED);
+                out.writeVarLong(frame.getLongValue("upToId"));
+            }
+            default -> {
+                return encodeJson(frame);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 将二进制帧解码为与JSON协议相同结构的消息
+     */
+    public static JSONObject decode(ByteBuffer in) {
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("空的二进制帧");
+        }
+        byte code = in.get();
+        JSONObject frame = new JSONObject();
+        switch (code) {
+            case JSON_FRAME -> {
+                byte[] json = new byte[in.remaining()];
+                in.get(json);
+                return JSON.parseObject(new String(json, StandardCharsets.UTF_8));
+            }
+            case CHAT -> {
+                frame.put("type", ChatConstants.MessageType.CHAT);
+                frame.put("receiverId", readVarLong(in));
+                frame.put("messageType", readString(in));
+                frame.put("content", readString(in));
+            }
+            case NEW_MESSAGE -> {
+                frame.put("type", ChatConstants.MessageType.NEW_MESSAGE);
+                frame.put("messageId", readVarLong(in));
+                frame.put("senderId", readVarLong(in));
+                frame.put("sendTime", fromEpochMillis(readVarLong(in)));
+                frame.put("messageType", readString(in));
+                frame.put("content", readString(in));
+            }
+            case MESSAGE_SENT -> {
+                frame.put("type", ChatConstants.MessageType.MESSAGE_SENT);
+                frame.put("messageId", readVarLong(in));
+                frame.put("status", "success");
+                frame.put("timestamp", fromEpochMillis(readVarLong(in)));
+            }
+            case TYPING -> {
+                frame.put("type", ChatConstants.MessageType.TYPING);
+                frame.put("receiverId", readVarLong(in));
+                frame.put("isTyping", in.get() != 0);
+            }
+            case PING, PONG -> {
+                frame.put("type", code == PING ? ChatConstants.MessageType.PING : ChatConstants.MessageType.PONG);
+                frame.put("timestamp", fromEpochMillis(readVarLong(in)));
+            }
+            case RECEIPT -> {
+                frame.put("type", ChatConstants.MessageType.RECEIPT);
+                frame.put("peerId", readVarLong(in));
+                frame.put("status", in.get() == RECEIPT_READ
+                        ? ChatConstants.MessageStatus.READ : ChatConstants.MessageStatus.DELIVERED);
+                frame.put("upToId", readVarLong(in));
+            }
+            default -> throw new IllegalArgumentException("未知的二进制帧类型: " + code);
+        }
+        return frame;
+    }
+
+    private static byte[] encodeJson(JSONObject frame) {
+        byte[] json = ChatFrame.toJson(frame).getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[json.length + 1];
+        bytes[0] = JSON_FRAME;
+        System.arraycopy(json, 0, bytes, 1, json.length);
+        return bytes;
+    }
+
+    /**
+     * 帧内时间通常为LocalDateTime；其他节点转发来的帧经过JSON传输，时间为ISO-8601文本
+     */
+    private static long toEpochMillis(Object time) {
+        LocalDateTime dateTime;
+        if (time instanceof LocalDateTime value) {
+            dateTime = value;
+        } else if (time instanceof String value && !value.isEmpty()) {
+            dateTime = LocalDateTime.parse(value);
+        } else {
+            return 0;
+        }
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        if (millis == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000,
+                ZoneOffset.UTC);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数格式错误");
+    }
+
+    private static String readString(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        // 长度加1编码，以区分null和空字符串
+        if (length - 1 > in.remaining()) {
+            throw new IllegalArgumentException("字符串长度超出帧范围");
+        }
+        byte[] utf8 = new byte[(int) length - 1];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        private Writer() {
+            super(64);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            write(utf8, 0, utf8.length);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.charno.chat.protocol;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.filter.ValueFilter;
+import org.charno.chat.constants.ChatConstants;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待发送的消息帧
+ * 按会话协商的子协议编码为JSON文本或二进制，每种编码最多计算一次，同一帧发给多个会话时复用编码结果。
+ * 帧中的时间字段保存为LocalDateTime，只在编码为JSON时格式化为ISO-8601文本，二进制编码直接取毫秒数。
+ */
+public class ChatFrame {
+
+    private static final ValueFilter ISO_DATE_TIME = (object, name, value) ->
+            value instanceof LocalDateTime dateTime ? dateTime.toString() : value;
+
+    private final JSONObject body;
+
+    private volatile TextMessage text;
+
+    private volatile byte[] binary;
+
+    public ChatFrame(JSONObject body) {
+        this.body = body;
+    }
+
+    public JSONObject getBody() {
+        return body;
+    }
+
+    /**
+     * 按会话的子协议生成WebSocket消息
+     */
+    public WebSocketMessage<?> toMessage(WebSocketSession session) {
+        if (isBinary(session)) {
+            byte[] bytes = binary;
+            if (bytes == null) {
+                bytes = ChatBinaryCodec.encode(body);
+                binary = bytes;
+            }
+            // 每个会话使用独立的ByteBuffer，发送过程会移动其读取位置
+            return new BinaryMessage(bytes);
+        }
+        TextMessage message = text;
+        if (message == null) {
+            message = new TextMessage(toJson(body));
+            text = message;
+        }
+        return message;
+    }
+
+    /**
+     * 会话是否协商了二进制子协议
+     */
+    public static boolean isBinary(WebSocketSession session) {
+        return ChatConstants.WebSocket.BINARY_PROTOCOL.equals(session.getAcceptedProtocol());
+    }
+
+    /**
+     * 编码为JSON文本，LocalDateTime按ISO-8601格式（LocalDateTime.toString()）输出
+     */
+    public static String toJson(JSONObject body) {
+        return JSON.toJSONString(body, ISO_DATE_TIME);
+    }
+
+    /**
+     * 直接编码单个会话的消息帧
+     */
+    public static WebSocketMessage<?> encode(WebSocketSession session, JSONObject body) {
+        return new ChatFrame(body).toMessage(session);
+    }
+}
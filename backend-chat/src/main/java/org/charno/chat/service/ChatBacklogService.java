@@ -0,0 +1,305 @@
+package org.charno.chat.service;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.manager.OutboundSession;
+import org.charno.chat.manager.WebSocketSessionManager;
+import org.charno.chat.protocol.ChatFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 离线消息补发
+ * Redis中为每个用户记录已推送到连接上的最大消息ID（送达水位），连接建立后在新连接上按批补发：
+ * 先从最新一条起倒序补发水位之后的消息，补完后再倒序补发水位以内仍未读的消息（部分索引只扫描未读行），
+ * 两段都用消息ID游标读取，不会扫描用户的全部历史消息；超过单次上限时保留最新的消息，更早的由客户端拉取聊天记录。
+ * 每批按会话发送缓冲区大小截断，批内按消息ID升序排列，上一批实际写出后才读取下一批；
+ * 水位之后的消息补完（或达到上限）后推进水位。实时推送的新消息同样在写出后推进水位（先记在内存中，定期写入Redis）。
+ * 消息ID按节点分块分配，多节点时可能略有乱序，补发始终包含未读消息，因此不会因乱序漏发。
+ */
+@Service
+public class ChatBacklogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatBacklogService.class);
+
+    private static final String HIGH_WATER_PREFIX = "reflip:chat:delivered:";
+
+    /**
+     * 仅当新值更大时更新水位，并刷新有效期
+     */
+    private static final DefaultRedisScript<Long> SET_IF_GREATER = new DefaultRedisScript<>(
+            "local current = tonumber(redis.call('get', KEYS[1]) or '0') " +
+            "if tonumber(ARGV[1]) > current then redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "else redis.call('expire', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+
+    /**
+     * 估算单条消息帧的固定开销（字段名、ID、时间等）
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 128;
+
+    @Value("${value.chat.backlog.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 单次连接最多补发的消息数，超出部分由客户端通过聊天记录接口获取
+     */
+    @Value("${value.chat.backlog.max-messages:1000}")
+    private int maxMessages;
+
+    @Value("${value.chat.backlog.high-water-ttl-days:30}")
+    private long highWaterTtlDays;
+
+    @Value("${value.chat.backlog.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    @Autowired
+    private IChatMessageService chatMessageService;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 实时推送产生的待写入水位：用户ID -> 消息ID
+     */
+    private final Map<Long, Long> liveHighWater = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder replayedMessages = new LongAdder();
+    private final LongAdder truncated = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "chat-backlog-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushLiveHighWater, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        flushLiveHighWater();
+    }
+
+    /**
+     * 在新建立的连接上补发离线消息（异步执行）
+     */
+    public void replay(Long userId, WebSocketSession session) {
+        replays.increment();
+        executor.execute(() -> {
+            try {
+                long highWater = loadHighWater(userId);
+                sendBatch(userId, session, highWater, new Cursor(false, null, 0L), 0);
+            } catch (Exception e) {
+                logger.error("补发用户 {} 的离线消息失败", userId, e);
+            }
+        });
+    }
+
+    /**
+     * 记录实时推送的新消息已写出到用户连接
+     */
+    public void onDelivered(Long userId, Long messageId) {
+        if (userId != null && messageId != null) {
+            liveHighWater.merge(userId, messageId, Math::max);
+        }
+    }
+
+    /**
+     * 离线消息补发统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("replays", replays.sum());
+        stats.put("batches", batches.sum());
+        stats.put("replayedMessages", replayedMessages.sum());
+        stats.put("truncated", truncated.sum());
+        stats.put("pendingHighWater", liveHighWater.size());
+        return stats;
+    }
+
+    private void sendBatch(Long userId, WebSocketSession session, long highWater, Cursor cursor, int sentSoFar) throws Exception {
+        if (!session.isOpen() || sessionManager.getSession(userId) == null
+                || !sessionManager.getSession(userId).getId().equals(session.getId())) {
+            return;
+        }
+        int limit = Math.min(batchSize, maxMessages - sentSoFar);
+
+        // 先读水位之后的新消息，读完后用剩余条数读水位以内的未读消息
+        List<ChatMessage> rows = new ArrayList<>(limit);
+        int aboveCount = 0;
+        boolean aboveDone = cursor.unread();
+        if (!cursor.unread()) {
+            rows.addAll(chatMessageService.getBacklogAbove(userId, highWater, cursor.beforeId(), limit));
+            aboveCount = rows.size();
+            aboveDone = aboveCount < limit;
+        }
+        boolean unreadDone = false;
+        if (aboveDone) {
+            int unreadLimit = limit - rows.size();
+            List<ChatMessage> unread = chatMessageService.getUnreadBacklog(userId, highWater,
+                    cursor.unread() ? cursor.beforeId() : null, unreadLimit);
+            rows.addAll(unread);
+            unreadDone = unread.size() < unreadLimit;
+        }
+        // 水位之后最新的一条消息，新消息补完后推进水位到这里
+        long top = cursor.top() == 0 && aboveCount > 0 ? rows.get(0).getId() : cursor.top();
+        if (rows.isEmpty()) {
+            if (top > highWater) {
+                advanceHighWater(userId, top);
+            }
+            return;
+        }
+
+        // 按发送缓冲区的一半截断，为实时消息留出空间；至少发送一条
+        int byteBudget = sessionManager.getBufferSizeLimit() / 2;
+        int count = 0;
+        int bytes = 0;
+        for (ChatMessage row : rows) {
+            int size = estimateSize(row);
+            if (count > 0 && bytes + size > byteBudget) {
+                break;
+            }
+            bytes += size;
+            count++;
+        }
+        JSONArray messages = new JSONArray();
+        for (int i = count - 1; i >= 0; i--) {
+            messages.add(toMessageJson(rows.get(i)));
+        }
+
+        Long lastId = rows.get(count - 1).getId();
+        Cursor next = count < aboveCount || (count == aboveCount && !aboveDone)
+                ? new Cursor(false, lastId, top)
+                : new Cursor(true, count > aboveCount ? lastId : null, top);
+        int sent = sentSoFar + count;
+        boolean more = count < rows.size() || !next.unread() || !unreadDone;
+        boolean capped = more && sent >= maxMessages;
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.BACKLOG);
+        frame.put("messages", messages);
+        frame.put("hasMore", more);
+        batches.increment();
+        replayedMessages.add(count);
+
+        boolean advance = (next.unread() || !more || capped) && top > highWater;
+        // 回调在发送线程上执行，Redis和数据库操作转回补发线程
+        Runnable onSent = () -> executor.execute(() -> {
+            if (advance) {
+                advanceHighWater(userId, top);
+            }
+            if (capped) {
+                truncated.increment();
+                logger.info("用户 {} 离线消息超过 {} 条，更早的消息由客户端拉取聊天记录", userId, maxMessages);
+                return;
+            }
+            if (more) {
+                try {
+                    sendBatch(userId, session, highWater, next, sent);
+                } catch (Exception e) {
+                    logger.error("补发用户 {} 的离线消息失败", userId, e);
+                }
+            }
+        });
+        if (session instanceof OutboundSession outbound) {
+            outbound.sendMessage(ChatFrame.encode(session, frame), onSent);
+        } else {
+            session.sendMessage(ChatFrame.encode(session, frame));
+            onSent.run();
+        }
+    }
+
+    /**
+     * 读取用户的送达水位；首次连接时以当前最新消息为水位，只补发未读消息
+     */
+    private long loadHighWater(Long userId) {
+        String value = stringRedisTemplate.opsForValue().get(key(userId));
+        if (value != null) {
+            return Long.parseLong(value);
+        }
+        long latest = chatMessageService.getMaxReceivedId(userId);
+        advanceHighWater(userId, latest);
+        return latest;
+    }
+
+    private void advanceHighWater(Long userId, long messageId) {
+        try {
+            stringRedisTemplate.execute(SET_IF_GREATER, List.of(key(userId)),
+                    String.valueOf(messageId), String.valueOf(TimeUnit.DAYS.toSeconds(highWaterTtlDays)));
+        } catch (Exception e) {
+            // 水位落后只会导致重复补发，客户端按消息ID去重
+            logger.warn("更新用户 {} 送达水位失败: {}", userId, e.getMessage());
+        }
+    }
+
+    private void flushLiveHighWater() {
+        for (Long userId : liveHighWater.keySet()) {
+            Long messageId = liveHighWater.remove(userId);
+            if (messageId != null) {
+                advanceHighWater(userId, messageId);
+            }
+        }
+    }
+
+    private static int estimateSize(ChatMessage message) {
+        String content = message.getMessageContent();
+        // UTF-8下中文每字符3字节，按上限估算
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? content.length() * 3 : 0);
+    }
+
+    private static JSONObject toMessageJson(ChatMessage message) {
+        JSONObject json = new JSONObject();
+        json.put("messageId", message.getId());
+        json.put("senderId", message.getSenderUserId());
+        json.put("content", message.getMessageContent());
+        json.put("messageType", message.getMessageType());
+        json.put("sendTime", message.getSendTime());
+        json.put("isRead", message.getIsRead());
+        return json;
+    }
+
+    /**
+     * 补发游标
+     *
+     * @param unread   是否已进入水位以内未读消息的补发
+     * @param beforeId 当前阶段上一批最后一条消息ID，为null时从该阶段的起点开始
+     * @param top      水位之后最新的一条消息ID，尚未读取时为0
+     */
+    private record Cursor(boolean unread, Long beforeId, long top) {
+    }
+
+    private static String key(Long userId) {
+        return HIGH_WATER_PREFIX + userId;
+    }
+}
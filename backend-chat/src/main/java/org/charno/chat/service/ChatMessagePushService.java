@@ -3,19 +3,20 @@ package org.charno.chat.service;
 import com.alibaba.fastjson2.JSONObject;
 import org.charno.chat.constants.ChatConstants;
 import org.charno.chat.entity.ChatMessage;
-import org.charno.chat.manager.WebSocketSessionManager;
+import org.charno.chat.manager.ChatBroadcastEngine;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.charno.chat.manager.ChatRecentMessageCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 消息推送服务
- * 用于主动向在线用户推送消息
+ * 用于主动向在线用户推送消息，用户连接在其他节点时经ChatMessageRouter转发
  */
 @Service
 public class ChatMessagePushService {
@@ -23,34 +24,29 @@ public class ChatMessagePushService {
     private static final Logger logger = LoggerFactory.getLogger(ChatMessagePushService.class);
 
     @Autowired
-    private WebSocketSessionManager sessionManager;
+    private ChatMessageRouter messageRouter;
+
+    @Autowired
+    private ChatRecentMessageCache recentMessageCache;
 
     /**
      * 推送聊天消息给指定用户
      */
     public boolean pushMessageToUser(Long userId, ChatMessage message) {
         try {
-            if (!sessionManager.isUserOnline(userId)) {
-                logger.debug("用户 {} 不在线，无法推送消息", userId);
-                return false;
-            }
-
-            WebSocketSession session = sessionManager.getSession(userId);
-            if (session == null || !session.isOpen()) {
-                logger.warn("用户 {} 的WebSocket会话无效", userId);
-                sessionManager.removeSessionByUserId(userId);
-                return false;
-            }
-
+            recentMessageCache.add(message);
             JSONObject messageJson = new JSONObject();
             messageJson.put("type", ChatConstants.MessageType.NEW_MESSAGE);
             messageJson.put("messageId", message.getId());
             messageJson.put("senderId", message.getSenderUserId());
             messageJson.put("content", message.getMessageContent());
             messageJson.put("messageType", message.getMessageType());
-            messageJson.put("sendTime", message.getSendTime().toString());
+            messageJson.put("sendTime", message.getSendTime());
 
-            session.sendMessage(new TextMessage(messageJson.toString()));
+            if (!messageRouter.deliver(userId, messageJson)) {
+                logger.debug("用户 {} 不在线，无法推送消息", userId);
+                return false;
+            }
             logger.info("成功推送消息给用户 {}", userId);
             return true;
 
@@ -65,25 +61,16 @@ public class ChatMessagePushService {
      */
     public boolean pushSystemMessage(Long userId, String content, String messageType) {
         try {
-            if (!sessionManager.isUserOnline(userId)) {
-                logger.debug("用户 {} 不在线，无法推送系统消息", userId);
-                return false;
-            }
-
-            WebSocketSession session = sessionManager.getSession(userId);
-            if (session == null || !session.isOpen()) {
-                logger.warn("用户 {} 的WebSocket会话无效", userId);
-                sessionManager.removeSessionByUserId(userId);
-                return false;
-            }
-
             JSONObject messageJson = new JSONObject();
             messageJson.put("type", ChatConstants.MessageType.SYSTEM_MESSAGE);
             messageJson.put("messageType", messageType != null ? messageType : ChatConstants.ContentType.SYSTEM);
             messageJson.put("content", content);
-            messageJson.put("timestamp", LocalDateTime.now().toString());
+            messageJson.put("timestamp", LocalDateTime.now());
 
-            session.sendMessage(new TextMessage(messageJson.toString()));
+            if (!messageRouter.deliver(userId, messageJson)) {
+                logger.debug("用户 {} 不在线，无法推送系统消息", userId);
+                return false;
+            }
             logger.info("成功推送系统消息给用户 {}", userId);
             return true;
 
@@ -98,26 +85,17 @@ public class ChatMessagePushService {
      */
     public boolean pushNotification(Long userId, String title, String content, String notificationType) {
         try {
-            if (!sessionManager.isUserOnline(userId)) {
-                logger.debug("用户 {} 不在线，无法推送通知", userId);
-                return false;
-            }
-
-            WebSocketSession session = sessionManager.getSession(userId);
-            if (session == null || !session.isOpen()) {
-                logger.warn("用户 {} 的WebSocket会话无效", userId);
-                sessionManager.removeSessionByUserId(userId);
-                return false;
-            }
-
             JSONObject notificationJson = new JSONObject();
             notificationJson.put("type", ChatConstants.MessageType.NOTIFICATION);
             notificationJson.put("notificationType", notificationType != null ? notificationType : ChatConstants.NotificationType.INFO);
             notificationJson.put("title", title);
             notificationJson.put("content", content);
-            notificationJson.put("timestamp", LocalDateTime.now().toString());
+            notificationJson.put("timestamp", LocalDateTime.now());
 
-            session.sendMessage(new TextMessage(notificationJson.toString()));
+            if (!messageRouter.deliver(userId, notificationJson)) {
+                logger.debug("用户 {} 不在线，无法推送通知", userId);
+                return false;
+            }
             logger.info("成功推送通知给用户 {}", userId);
             return true;
 
@@ -128,42 +106,24 @@ public class ChatMessagePushService {
     }
 
     /**
-     * 广播消息给所有在线用户
+     * 广播消息给所有在线用户，不阻塞调用方
+     *
+     * @return 本节点发送完成后的结果（成功/失败数）
      */
-    public void broadcastMessage(String content, String messageType) {
+    public CompletableFuture<ChatBroadcastEngine.BroadcastResult> broadcastMessage(String content, String messageType) {
         try {
             JSONObject broadcastJson = new JSONObject();
             broadcastJson.put("type", ChatConstants.MessageType.BROADCAST);
             broadcastJson.put("messageType", messageType != null ? messageType : ChatConstants.MessageType.BROADCAST);
             broadcastJson.put("content", content);
-            broadcastJson.put("timestamp", LocalDateTime.now().toString());
-
-            String messageText = broadcastJson.toString();
-            TextMessage textMessage = new TextMessage(messageText);
-
-            int successCount = 0;
-            int failCount = 0;
-
-            for (Long userId : sessionManager.getOnlineUsers()) {
-                try {
-                    WebSocketSession session = sessionManager.getSession(userId);
-                    if (session != null && session.isOpen()) {
-                        session.sendMessage(textMessage);
-                        successCount++;
-                    } else {
-                        sessionManager.removeSessionByUserId(userId);
-                        failCount++;
-                    }
-                } catch (Exception e) {
-                    logger.warn("广播消息给用户 {} 失败", userId, e);
-                    failCount++;
-                }
-            }
+            broadcastJson.put("timestamp", LocalDateTime.now());
 
-            logger.info("广播消息完成，成功: {}, 失败: {}", successCount, failCount);
+            // 发布到所有节点，由各节点发送给本节点的在线用户
+            return messageRouter.broadcast(broadcastJson);
 
         } catch (Exception e) {
             logger.error("广播消息失败", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -172,24 +132,13 @@ public class ChatMessagePushService {
      */
     public boolean pushUserStatusChange(Long userId, String status, Object data) {
         try {
-            if (!sessionManager.isUserOnline(userId)) {
-                return false;
-            }
-
-            WebSocketSession session = sessionManager.getSession(userId);
-            if (session == null || !session.isOpen()) {
-                sessionManager.removeSessionByUserId(userId);
-                return false;
-            }
-
             JSONObject statusJson = new JSONObject();
             statusJson.put("type", ChatConstants.MessageType.USER_STATUS);
             statusJson.put("status", status);
             statusJson.put("data", data);
-            statusJson.put("timestamp", LocalDateTime.now().toString());
+            statusJson.put("timestamp", LocalDateTime.now());
 
-            session.sendMessage(new TextMessage(statusJson.toString()));
-            return true;
+            return messageRouter.deliver(userId, statusJson);
 
         } catch (Exception e) {
             logger.error("推送用户状态变化给用户 {} 失败", userId, e);
@@ -0,0 +1,225 @@
+package org.charno.chat.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 送达/已读回执服务
+ * 客户端通过WebSocket发送"某会话中直到消息N（含）的消息已送达/已读"，回执按(读者, 发送者, 状态)合并，
+ * 每个窗口期对每个会话执行一次UPDATE，再把回执推送给消息发送者。
+ * 回执是按(发送时间, ID)比较的累积水位线，消息ID按节点分段分配、不代表先后，不能直接比较ID大小：
+ * 同一窗口内收到的多个水位（多端或乱序到达）先解析出各自的(发送时间, ID)，只应用最晚的一个。
+ * 水位消息暂时查不到（例如仍在其他节点的写后队列中）时保留到下个窗口重试，超过重试次数后放弃。
+ */
+@Service
+public class ChatReceiptService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatReceiptService.class);
+
+    /**
+     * 水位消息的(发送时间, ID)顺序，与聊天记录一致
+     */
+    private static final Comparator<ChatMessage> WATERMARK_ORDER = Comparator
+            .comparing(ChatMessage::getSendTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ChatMessage::getId);
+
+    @Value("${value.chat.receipt.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    /**
+     * 水位消息查不到或应用失败时的最大重试窗口数
+     */
+    @Value("${value.chat.receipt.max-retries:50}")
+    private int maxRetries;
+
+    @Autowired
+    private IChatMessageService chatMessageService;
+
+    @Autowired
+    private ChatMessageRouter messageRouter;
+
+    /**
+     * 待应用的回执：(读者, 发送者, 状态) -> 窗口内收到的水位消息ID
+     */
+    private final Map<ReceiptKey, Watermarks> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder updatedMessages = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-receipt-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * 接收客户端回执
+     *
+     * @param readerId 发送回执的用户（消息接收者）
+     * @param receipt  回执帧：peerId（消息发送者）、status（delivered/read）、upToId
+     * @return 回执是否有效
+     */
+    public boolean submit(Long readerId, JSONObject receipt) {
+        Long senderId = receipt.getLong("peerId");
+        Long upToId = receipt.getLong("upToId");
+        String status = receipt.getString("status");
+        if (readerId == null || senderId == null || upToId == null || upToId <= 0 || readerId.equals(senderId)) {
+            return false;
+        }
+        if (!ChatConstants.MessageStatus.READ.equals(status) && !ChatConstants.MessageStatus.DELIVERED.equals(status)) {
+            return false;
+        }
+        received.increment();
+        pending.merge(new ReceiptKey(readerId, senderId, status), Watermarks.of(upToId), Watermarks::merge);
+        return true;
+    }
+
+    /**
+     * 回执统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("received", received.sum());
+        stats.put("applied", applied.sum());
+        stats.put("updatedMessages", updatedMessages.sum());
+        stats.put("failures", failures.sum());
+        stats.put("deferred", deferred.sum());
+        stats.put("abandoned", abandoned.sum());
+        stats.put("pending", pending.size());
+        return stats;
+    }
+
+    private void flush() {
+        for (ReceiptKey key : pending.keySet()) {
+            Watermarks watermarks = pending.remove(key);
+            if (watermarks == null) {
+                continue;
+            }
+            // 送达只更新仍为已发送状态的消息，与同一窗口内的已读回执先后应用都不会覆盖已读
+            apply(key, watermarks);
+        }
+    }
+
+    private void apply(ReceiptKey key, Watermarks watermarks) {
+        try {
+            Map<Long, Integer> unresolved = new HashMap<>(watermarks.attempts());
+            ChatMessage latest = null;
+            for (ChatMessage message : chatMessageService.findMessages(watermarks.attempts().keySet())) {
+                unresolved.remove(message.getId());
+                if (inConversation(key, message) && (latest == null || WATERMARK_ORDER.compare(message, latest) > 0)) {
+                    latest = message;
+                }
+            }
+            if (latest != null) {
+                int updated = chatMessageService.applyReceipt(key.readerId(), key.senderId(), key.status(), latest);
+                applied.increment();
+                updatedMessages.add(updated);
+                if (updated > 0) {
+                    notifySender(key, latest.getId());
+                }
+            }
+            if (!unresolved.isEmpty()) {
+                // 查不到的水位可能晚于已应用的水位，下个窗口再试
+                deferred.increment();
+                retryLater(key, new Watermarks(unresolved));
+            }
+        } catch (Exception e) {
+            failures.increment();
+            logger.error("应用回执失败: 读者 {}, 发送者 {}, 状态 {}", key.readerId(), key.senderId(), key.status(), e);
+            retryLater(key, watermarks);
+        }
+    }
+
+    /**
+     * 放回待应用集合，与期间收到的新回执合并；超过重试次数的水位放弃
+     */
+    private void retryLater(ReceiptKey key, Watermarks watermarks) {
+        Map<Long, Integer> attempts = new HashMap<>();
+        watermarks.attempts().forEach((upToId, attempt) -> {
+            if (attempt < maxRetries) {
+                attempts.put(upToId, attempt + 1);
+            } else {
+                abandoned.increment();
+                logger.warn("回执水位消息 {} 在 {} 次重试后仍无法应用，已放弃: 读者 {}, 发送者 {}, 状态 {}",
+                        upToId, maxRetries, key.readerId(), key.senderId(), key.status());
+            }
+        });
+        if (!attempts.isEmpty()) {
+            pending.merge(key, new Watermarks(attempts), Watermarks::merge);
+        }
+    }
+
+    /**
+     * 水位消息必须属于回执所在的会话
+     */
+    private static boolean inConversation(ReceiptKey key, ChatMessage message) {
+        return (key.readerId().equals(message.getReceiverUserId()) && key.senderId().equals(message.getSenderUserId()))
+                || (key.readerId().equals(message.getSenderUserId()) && key.senderId().equals(message.getReceiverUserId()));
+    }
+
+    /**
+     * 推送回执给消息发送者，peerId为回执方（发送者视角中的对方）
+     */
+    private void notifySender(ReceiptKey key, Long upToId) {
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.RECEIPT);
+        frame.put("peerId", key.readerId());
+        frame.put("status", key.status());
+        frame.put("upToId", upToId);
+        messageRouter.deliver(key.senderId(), frame);
+    }
+
+    private record ReceiptKey(Long readerId, Long senderId, String status) {
+    }
+
+    /**
+     * 一个会话窗口内待应用的水位：水位消息ID -> 已重试次数
+     */
+    private record Watermarks(Map<Long, Integer> attempts) {
+
+        static Watermarks of(Long upToId) {
+            return new Watermarks(Map.of(upToId, 0));
+        }
+
+        static Watermarks merge(Watermarks a, Watermarks b) {
+            Map<Long, Integer> attempts = new HashMap<>(a.attempts());
+            b.attempts().forEach((upToId, attempt) -> attempts.merge(upToId, attempt, Math::min));
+            return new Watermarks(attempts);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.charno.common.service.IBaseService;
 import org.charno.chat.entity.ChatMessage;
 import org.charno.chat.dto.ChatListDTO;
+import org.charno.chat.dto.ChatSearchResultDTO;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -26,11 +28,48 @@ public interface IChatMessageService extends IBaseService<ChatMessage> {
      */
     List<ChatMessage> getChatHistory(Long userId1, Long userId2);
     
+    /**
+     * 按游标获取两个用户之间的聊天记录（按时间倒序）
+     *
+     * @param beforeMessageId 上一页最后一条消息ID，为空时从最新消息开始
+     * @param limit           返回的最大消息数
+     */
+    List<ChatMessage> getChatHistoryBefore(Long userId1, Long userId2, Long beforeMessageId, int limit);
+    
     /**
      * 分页获取两个用户之间的聊天记录
      */
     Page<ChatMessage> getChatHistoryPage(Page<ChatMessage> page, Long userId1, Long userId2);
     
+    /**
+     * 应用回执：将senderId发给readerId、按(发送时间, ID)不晚于水位消息的消息更新为已送达或已读
+     *
+     * @param status    ChatConstants.MessageStatus.DELIVERED 或 READ
+     * @param watermark 水位消息，由findMessages解析得到
+     * @return 更新的消息数
+     */
+    int applyReceipt(Long readerId, Long senderId, String status, ChatMessage watermark);
+    
+    /**
+     * 按ID批量查找消息，包括本节点已确认、尚未落库的消息；不存在的ID不返回
+     */
+    List<ChatMessage> findMessages(Collection<Long> ids);
+    
+    /**
+     * 获取用户待补发的新消息：ID大于highWater的消息，按ID倒序，从beforeId之前开始（为null时从最新一条开始）
+     */
+    List<ChatMessage> getBacklogAbove(Long receiverId, Long highWater, Long beforeId, int limit);
+    
+    /**
+     * 获取用户水位以内仍未读的消息：ID不超过highWater的未读消息，按ID倒序，从beforeId之前开始（为null时从水位开始）
+     */
+    List<ChatMessage> getUnreadBacklog(Long receiverId, Long highWater, Long beforeId, int limit);
+    
+    /**
+     * 获取用户收到的最新消息ID，没有消息时返回0
+     */
+    Long getMaxReceivedId(Long receiverId);
+    
     /**
      * 获取用户的所有未读消息
      */
@@ -61,4 +100,36 @@ public interface IChatMessageService extends IBaseService<ChatMessage> {
      * 返回与当前用户有过聊天记录的所有用户信息
      */
     List<ChatListDTO> getChatList(Long currentUserId);
+    
+    /**
+     * 分页获取用户的聊天列表，按最后消息时间倒序
+     */
+    List<ChatListDTO> getChatList(Long currentUserId, long current, long size);
+    
+    /**
+     * 批量写入已预分配ID的消息并更新会话摘要，ID已存在的消息忽略（用于日志补写）
+     *
+     * @return 实际新写入的消息数量
+     */
+    int insertBatchIgnoreExisting(List<ChatMessage> messages);
+    
+    /**
+     * 写后持久化落库后，把写入期间新增的已读标记和回执状态重新应用到已写入的消息
+     */
+    void applyUnflushedState(List<ChatMessage> messages);
+    
+    /**
+     * 预分配消息ID
+     */
+    List<Long> allocateIds(int count);
+    
+    /**
+     * 在当前用户参与的消息中全文检索，按相关度排序并高亮命中词
+     * 含中日韩文字的关键词按子串匹配，结果按消息ID倒序
+     *
+     * @param peerId 限定对方用户，为空时检索全部会话
+     * @param cursor 上一页返回的nextCursor，为空时从第一页开始
+     * @param limit  返回的最大条数
+     */
+    ChatSearchResultDTO searchMessages(Long userId, String keyword, Long peerId, String cursor, int limit);
 } 
\ No newline at end of file
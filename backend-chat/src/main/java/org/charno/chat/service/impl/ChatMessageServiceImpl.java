@@ -6,16 +6,32 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatConversation;
 import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.mapper.ChatConversationMapper;
 import org.charno.chat.mapper.ChatMessageMapper;
 import org.charno.chat.service.IChatMessageService;
 import org.charno.chat.dto.ChatListDTO;
+import org.charno.chat.dto.ChatSearchHitDTO;
+import org.charno.chat.dto.ChatSearchResultDTO;
+import org.charno.chat.manager.ChatRecentMessageCache;
 import org.charno.chat.manager.WebSocketSessionManager;
+import org.charno.chat.persistence.ChatUnflushedMessages;
 import org.charno.system.service.ISysUserService;
 import org.charno.common.entity.SysUser;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.time.LocalDateTime;
 
@@ -25,12 +41,57 @@ import java.time.LocalDateTime;
 @Service
 public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatMessage> implements IChatMessageService {
 
+    /**
+     * 会话摘要中消息预览的最大长度
+     */
+    private static final int PREVIEW_LENGTH = 200;
+
+    /**
+     * 游标分页单次返回的最大消息数
+     */
+    private static final int MAX_HISTORY_LIMIT = 100;
+
+    /**
+     * 消息搜索单次返回的最大条数
+     */
+    private static final int MAX_SEARCH_LIMIT = 50;
+
+    /**
+     * 搜索关键词最大长度
+     */
+    private static final int MAX_SEARCH_KEYWORD_LENGTH = 100;
+
+    /**
+     * 子串检索时关键词最多拆分的片段数
+     */
+    private static final int MAX_SEARCH_TERMS = 5;
+
+    /**
+     * 子串检索高亮片段的长度，以及首个命中位置之前保留的字符数
+     */
+    private static final int HIGHLIGHT_LENGTH = 60;
+    private static final int HIGHLIGHT_CONTEXT = 15;
+
+    /**
+     * 单条多行INSERT语句的最大行数（每行11个参数，PostgreSQL单条语句最多32767个参数）
+     */
+    private static final int MAX_INSERT_ROWS = 1000;
+
     @Autowired
     private WebSocketSessionManager sessionManager;
     
     @Autowired
     private ISysUserService sysUserService;
 
+    @Autowired
+    private ChatConversationMapper conversationMapper;
+
+    @Autowired
+    private ChatRecentMessageCache recentMessageCache;
+
+    @Autowired
+    private ChatUnflushedMessages unflushedMessages;
+
     @Override
     public Page<ChatMessage> selectPageWithCondition(Page<ChatMessage> page, ChatMessage condition) {
         LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
@@ -89,14 +150,46 @@ public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatM
             return List.of();
         }
         
-        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.and(wrapper -> wrapper
-            .and(w -> w.eq(ChatMessage::getSenderUserId, userId1).eq(ChatMessage::getReceiverUserId, userId2))
-            .or(w -> w.eq(ChatMessage::getSenderUserId, userId2).eq(ChatMessage::getReceiverUserId, userId1))
-        );
-        queryWrapper.orderByDesc(ChatMessage::getSendTime);
+        return this.list(conversationQuery(userId1, userId2));
+    }
+
+    @Override
+    public List<ChatMessage> getChatHistoryBefore(Long userId1, Long userId2, Long beforeMessageId, int limit) {
+        if (userId1 == null || userId2 == null || limit <= 0) {
+            return List.of();
+        }
         
-        return this.list(queryWrapper);
+        limit = Math.min(limit, MAX_HISTORY_LIMIT);
+        boolean firstPage = beforeMessageId == null && limit <= recentMessageCache.getCapacity();
+        long cacheVersion = 0;
+        if (firstPage) {
+            // 首页优先从最近消息缓存读取；回源前记录失效版本，查询期间会话被失效时不填充缓存
+            List<ChatMessage> cached = recentMessageCache.latest(userId1, userId2, limit);
+            if (cached != null) {
+                return cached;
+            }
+            cacheVersion = recentMessageCache.version(userId1, userId2);
+        }
+        
+        LambdaQueryWrapper<ChatMessage> queryWrapper = conversationQuery(userId1, userId2);
+        ChatMessage cursor = null;
+        if (beforeMessageId != null) {
+            // 游标为上一页最后一条消息，按(send_time, id)比较，时间相同的消息不会重复或遗漏；游标消息可能尚未落库
+            cursor = findMessage(beforeMessageId);
+            if (cursor == null) {
+                return List.of();
+            }
+            queryWrapper.apply("(send_time, id) < ({0}, {1})", cursor.getSendTime(), cursor.getId());
+        }
+        queryWrapper.last("LIMIT " + limit);
+        
+        // 合并写后模式下已确认、尚未落库的消息
+        List<ChatMessage> messages = mergeUnflushed(this.list(queryWrapper), unflushedMessages.history(userId1, userId2,
+            cursor != null ? cursor.getSendTime() : null, cursor != null ? cursor.getId() : null), limit);
+        if (firstPage) {
+            recentMessageCache.seed(userId1, userId2, messages, limit, cacheVersion);
+        }
+        return messages;
     }
 
     @Override
@@ -105,14 +198,46 @@ public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatM
             return page;
         }
         
+        return this.page(page, conversationQuery(userId1, userId2));
+    }
+
+    /**
+     * 按ID查找消息，优先查找尚未落库的消息
+     */
+    private ChatMessage findMessage(Long id) {
+        ChatMessage message = unflushedMessages.find(id);
+        return message != null ? message : baseMapper.selectById(id);
+    }
+
+    /**
+     * 把尚未落库的消息合并进按(send_time, id)倒序的查询结果，同一消息以未落库副本的状态为准
+     */
+    private List<ChatMessage> mergeUnflushed(List<ChatMessage> persisted, List<ChatMessage> unflushed, int limit) {
+        if (unflushed.isEmpty()) {
+            return persisted;
+        }
+        Map<Long, ChatMessage> merged = new LinkedHashMap<>();
+        unflushed.forEach(message -> merged.put(message.getId(), message));
+        persisted.forEach(message -> merged.putIfAbsent(message.getId(), message));
+        return merged.values().stream()
+            .sorted(Comparator.comparing(ChatMessage::getSendTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(ChatMessage::getId)
+                .reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 两个用户之间消息的查询条件，按时间倒序
+     * 使用规范化的会话键(LEAST, GREATEST)代替两组发送者/接收者条件的OR，可直接命中idx_chat_message_conversation
+     */
+    private LambdaQueryWrapper<ChatMessage> conversationQuery(Long userId1, Long userId2) {
         LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.and(wrapper -> wrapper
-            .and(w -> w.eq(ChatMessage::getSenderUserId, userId1).eq(ChatMessage::getReceiverUserId, userId2))
-            .or(w -> w.eq(ChatMessage::getSenderUserId, userId2).eq(ChatMessage::getReceiverUserId, userId1))
-        );
-        queryWrapper.orderByDesc(ChatMessage::getSendTime);
-        
-        return this.page(page, queryWrapper);
+        queryWrapper.apply("LEAST(sender_user_id, receiver_user_id) = {0}", Math.min(userId1, userId2))
+                   .apply("GREATEST(sender_user_id, receiver_user_id) = {0}", Math.max(userId1, userId2))
+                   .orderByDesc(ChatMessage::getSendTime)
+                   .orderByDesc(ChatMessage::getId);
+        return queryWrapper;
     }
 
     @Override
@@ -130,43 +255,418 @@ public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatM
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean save(ChatMessage entity) {
+        if (!super.save(entity)) {
+            return false;
+        }
+        updateConversations(List.of(entity));
+        recentMessageCache.add(entity);
+        recentMessageCache.publishPersisted(List.of(entity));
+        return true;
+    }
+
+    @Override
+    public boolean updateById(ChatMessage entity) {
+        boolean updated = super.updateById(entity);
+        if (updated) {
+            recentMessageCache.invalidateAll();
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean removed = super.removeById(id);
+        if (removed) {
+            recentMessageCache.invalidateAll();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<?> list) {
+        boolean removed = super.removeByIds(list);
+        if (removed) {
+            recentMessageCache.invalidateAll();
+        }
+        return removed;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int insertBatchIgnoreExisting(List<ChatMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+
+        // 只对本次新写入的消息更新会话摘要，补写时不会重复累加未读数
+        Set<Long> insertedIds = new HashSet<>();
+        for (int from = 0; from < messages.size(); from += MAX_INSERT_ROWS) {
+            insertedIds.addAll(baseMapper.insertIgnoreExisting(
+                messages.subList(from, Math.min(from + MAX_INSERT_ROWS, messages.size()))));
+        }
+        List<ChatMessage> inserted = new ArrayList<>(insertedIds.size());
+        for (ChatMessage message : messages) {
+            if (insertedIds.contains(message.getId())) {
+                inserted.add(message);
+            }
+        }
+        updateConversations(inserted);
+        return inserted.size();
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void applyUnflushedState(List<ChatMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        
+        List<Long> readIds = new ArrayList<>();
+        List<Long> readStatusIds = new ArrayList<>();
+        List<Long> deliveredIds = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            if (Boolean.TRUE.equals(message.getIsRead())) {
+                readIds.add(message.getId());
+            }
+            if (ChatConstants.MessageStatus.READ.equals(message.getStatus())) {
+                readStatusIds.add(message.getId());
+            } else if (ChatConstants.MessageStatus.DELIVERED.equals(message.getStatus())) {
+                deliveredIds.add(message.getId());
+            }
+        }
+        
+        if (!readIds.isEmpty()) {
+            decrementUnread(baseMapper.markUnreadAsRead(readIds));
+        }
+        if (!readStatusIds.isEmpty()) {
+            this.update(new LambdaUpdateWrapper<ChatMessage>()
+                .in(ChatMessage::getId, readStatusIds)
+                .ne(ChatMessage::getStatus, ChatConstants.MessageStatus.READ)
+                .set(ChatMessage::getStatus, ChatConstants.MessageStatus.READ));
+        }
+        if (!deliveredIds.isEmpty()) {
+            // 与markDeliveredUpTo一致，送达不覆盖已读
+            this.update(new LambdaUpdateWrapper<ChatMessage>()
+                .in(ChatMessage::getId, deliveredIds)
+                .eq(ChatMessage::getStatus, ChatConstants.MessageStatus.SENT)
+                .set(ChatMessage::getStatus, ChatConstants.MessageStatus.DELIVERED));
+        }
+        messages.stream()
+            .map(message -> List.of(Math.min(message.getSenderUserId(), message.getReceiverUserId()),
+                Math.max(message.getSenderUserId(), message.getReceiverUserId())))
+            .distinct()
+            .forEach(key -> recentMessageCache.invalidate(key.get(0), key.get(1)));
+    }
+
+    @Override
+    public List<Long> allocateIds(int count) {
+        return baseMapper.allocateIds(count);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markAsRead(Long messageId) {
         if (messageId == null) {
             return false;
         }
         
-        LambdaUpdateWrapper<ChatMessage> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.eq(ChatMessage::getId, messageId)
-                    .set(ChatMessage::getIsRead, true);
-        
-        return this.update(updateWrapper);
+        return markAsReadBatch(List.of(messageId));
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markAsReadBatch(List<Long> messageIds) {
         if (messageIds == null || messageIds.isEmpty()) {
             return false;
         }
         
-        LambdaUpdateWrapper<ChatMessage> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.in(ChatMessage::getId, messageIds)
-                    .set(ChatMessage::getIsRead, true);
+        // 先标记尚未落库的消息，再更新数据库；写入线程落库时按快照写入，落库后会重新应用这里的标记
+        List<ChatMessage> unflushed = unflushedMessages.markRead(messageIds);
+        unflushed.forEach(message -> recentMessageCache.invalidate(message.getSenderUserId(), message.getReceiverUserId()));
         
-        return this.update(updateWrapper);
+        // 只更新仍为未读的消息，并按会话扣减未读数
+        List<ChatMessage> changed = baseMapper.markUnreadAsRead(messageIds);
+        if (changed.isEmpty()) {
+            // 消息已是已读状态时仍视为成功
+            return !unflushed.isEmpty()
+                || this.count(new LambdaQueryWrapper<ChatMessage>().in(ChatMessage::getId, messageIds)) > 0;
+        }
+        decrementUnread(changed);
+        return true;
+    }
+
+    /**
+     * 按会话扣减由未读变为已读的消息数
+     */
+    private void decrementUnread(List<ChatMessage> changed) {
+        // 接收者 -> 发送者 -> 已读数量，按ID顺序更新会话行
+        Map<Long, Map<Long, Long>> readCounts = changed.stream()
+            .collect(Collectors.groupingBy(
+                ChatMessage::getReceiverUserId,
+                TreeMap::new,
+                Collectors.groupingBy(ChatMessage::getSenderUserId, TreeMap::new, Collectors.counting())));
+        readCounts.forEach((receiverId, bySender) -> bySender.forEach((senderId, count) -> {
+            conversationMapper.decrementUnread(receiverId, senderId, Math.toIntExact(count));
+            recentMessageCache.invalidate(senderId, receiverId);
+        }));
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markChatAsRead(Long senderId, Long receiverId) {
         if (senderId == null || receiverId == null) {
             return false;
         }
         
+        int unflushed = unflushedMessages.markConversationRead(senderId, receiverId);
+        
         LambdaUpdateWrapper<ChatMessage> updateWrapper = new LambdaUpdateWrapper<>();
         updateWrapper.eq(ChatMessage::getSenderUserId, senderId)
                     .eq(ChatMessage::getReceiverUserId, receiverId)
                     .set(ChatMessage::getIsRead, true);
         
-        return this.update(updateWrapper);
+        boolean updated = this.update(updateWrapper) || unflushed > 0;
+        if (updated) {
+            conversationMapper.recountUnread(receiverId, senderId);
+            recentMessageCache.invalidate(senderId, receiverId);
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int applyReceipt(Long readerId, Long senderId, String status, ChatMessage watermark) {
+        if (readerId == null || senderId == null || watermark == null || watermark.getSendTime() == null) {
+            return 0;
+        }
+        if (!ChatConstants.MessageStatus.READ.equals(status) && !ChatConstants.MessageStatus.DELIVERED.equals(status)) {
+            return 0;
+        }
+        // 水位消息可能仍在写后队列中，按其(发送时间, ID)依次更新尚未落库和已落库的消息
+        Long upToId = watermark.getId();
+        LocalDateTime upToTime = watermark.getSendTime();
+        boolean read = ChatConstants.MessageStatus.READ.equals(status);
+        int updated = unflushedMessages.applyReceipt(senderId, readerId, upToTime, upToId, status);
+        
+        if (read) {
+            int persisted = baseMapper.markReadUpTo(senderId, readerId, upToTime, upToId, ChatConstants.MessageStatus.READ);
+            if (persisted > 0) {
+                conversationMapper.recountUnread(readerId, senderId);
+            }
+            updated += persisted;
+        } else {
+            updated += baseMapper.markDeliveredUpTo(senderId, readerId, upToTime, upToId,
+                ChatConstants.MessageStatus.SENT, ChatConstants.MessageStatus.DELIVERED);
+        }
+        if (updated > 0) {
+            recentMessageCache.updateStatus(senderId, readerId, upToId, status, read);
+        }
+        return updated;
+    }
+
+    @Override
+    public List<ChatMessage> findMessages(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        
+        List<ChatMessage> messages = new ArrayList<>(ids.size());
+        List<Long> persistedIds = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ChatMessage message = unflushedMessages.find(id);
+            if (message != null) {
+                messages.add(message);
+            } else {
+                persistedIds.add(id);
+            }
+        }
+        if (!persistedIds.isEmpty()) {
+            messages.addAll(this.listByIds(persistedIds));
+        }
+        return messages;
+    }
+
+    @Override
+    public List<ChatMessage> getBacklogAbove(Long receiverId, Long highWater, Long beforeId, int limit) {
+        if (receiverId == null || limit <= 0) {
+            return List.of();
+        }
+        
+        // 命中idx_chat_message_receiver_id，从最新一条向水位倒序读取
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatMessage::getReceiverUserId, receiverId)
+                   .gt(ChatMessage::getId, highWater != null ? highWater : 0L)
+                   .lt(beforeId != null, ChatMessage::getId, beforeId)
+                   .orderByDesc(ChatMessage::getId)
+                   .last("LIMIT " + limit);
+        
+        return this.list(queryWrapper);
+    }
+
+    @Override
+    public List<ChatMessage> getUnreadBacklog(Long receiverId, Long highWater, Long beforeId, int limit) {
+        if (receiverId == null || limit <= 0) {
+            return List.of();
+        }
+        
+        // 命中部分索引idx_chat_message_receiver_unread，只扫描未读消息
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatMessage::getReceiverUserId, receiverId)
+                   .eq(ChatMessage::getIsRead, false)
+                   .le(ChatMessage::getId, highWater != null ? highWater : 0L)
+                   .lt(beforeId != null, ChatMessage::getId, beforeId)
+                   .orderByDesc(ChatMessage::getId)
+                   .last("LIMIT " + limit);
+        
+        return this.list(queryWrapper);
+    }
+
+    @Override
+    public Long getMaxReceivedId(Long receiverId) {
+        if (receiverId == null) {
+            return 0L;
+        }
+        
+        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(ChatMessage::getId)
+                   .eq(ChatMessage::getReceiverUserId, receiverId)
+                   .orderByDesc(ChatMessage::getId)
+                   .last("LIMIT 1");
+        
+        ChatMessage latest = this.getOne(queryWrapper, false);
+        return latest != null ? latest.getId() : 0L;
+    }
+
+    @Override
+    public ChatSearchResultDTO searchMessages(Long userId, String keyword, Long peerId, String cursor, int limit) {
+        if (userId == null || keyword == null || keyword.isBlank() || limit <= 0) {
+            return new ChatSearchResultDTO(new ArrayList<>(), null);
+        }
+        String query = keyword.strip();
+        if (query.length() > MAX_SEARCH_KEYWORD_LENGTH) {
+            query = query.substring(0, MAX_SEARCH_KEYWORD_LENGTH);
+        }
+        limit = Math.min(limit, MAX_SEARCH_LIMIT);
+        
+        // 游标格式：相关度_消息ID
+        Float cursorRank = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            int separator = cursor.lastIndexOf('_');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("无效的搜索游标: " + cursor);
+            }
+            try {
+                cursorRank = Float.parseFloat(cursor.substring(0, separator));
+                cursorId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的搜索游标: " + cursor);
+            }
+        }
+        
+        List<ChatSearchHitDTO> hits;
+        if (containsCjk(query)) {
+            // simple分词不能切分中日韩文字，改为子串匹配，按消息ID倒序，相关度固定为0
+            List<String> terms = splitSearchTerms(query);
+            List<String> patterns = terms.stream().map(term -> "%" + escapeLike(term) + "%").toList();
+            hits = baseMapper.searchMessagesBySubstring(userId, patterns, peerId, cursorId, limit);
+            for (ChatSearchHitDTO hit : hits) {
+                hit.setHighlight(highlightTerms(hit.getMessageContent(), terms));
+            }
+        } else {
+            hits = baseMapper.searchMessages(userId, query, peerId, cursorRank, cursorId, limit);
+        }
+        String nextCursor = null;
+        if (hits.size() == limit) {
+            ChatSearchHitDTO last = hits.get(hits.size() - 1);
+            nextCursor = last.getRank() + "_" + last.getMessageId();
+        }
+        return new ChatSearchResultDTO(hits, nextCursor);
+    }
+
+    /**
+     * 是否包含中日韩文字
+     */
+    static boolean containsCjk(String text) {
+        return text.codePoints().anyMatch(codePoint -> {
+            Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+            return script == Character.UnicodeScript.HAN
+                    || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA
+                    || script == Character.UnicodeScript.HANGUL;
+        });
+    }
+
+    /**
+     * 按空白拆分子串检索的片段，去掉引号并去重
+     */
+    static List<String> splitSearchTerms(String query) {
+        List<String> terms = Arrays.stream(query.replace("\"", " ").strip().split("\\s+"))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .limit(MAX_SEARCH_TERMS)
+                .collect(Collectors.toList());
+        return terms.isEmpty() ? List.of(query) : terms;
+    }
+
+    /**
+     * 转义LIKE通配符（PostgreSQL默认转义字符为反斜杠）
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * 截取首个命中位置附近的片段，命中的片段以mark标签包裹（不区分大小写），与全文检索的ts_headline格式一致
+     */
+    static String highlightTerms(String content, List<String> terms) {
+        if (content == null) {
+            return null;
+        }
+        int first = -1;
+        for (int i = 0; i < content.length() && first < 0; i++) {
+            if (matchAt(content, i, terms) > 0) {
+                first = i;
+            }
+        }
+        int start = Math.max(0, first - HIGHLIGHT_CONTEXT);
+        int end = Math.min(content.length(), start + HIGHLIGHT_LENGTH);
+        // 不在代理对中间截断
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        if (end < content.length() && Character.isLowSurrogate(content.charAt(end))) {
+            end++;
+        }
+
+        StringBuilder highlight = new StringBuilder(end - start + 16);
+        int i = start;
+        while (i < end) {
+            int length = matchAt(content, i, terms);
+            if (length > 0) {
+                highlight.append("<mark>").append(content, i, i + length).append("</mark>");
+                i += length;
+            } else {
+                highlight.append(content.charAt(i));
+                i++;
+            }
+        }
+        return highlight.toString();
+    }
+
+    /**
+     * 在offset处命中的最长片段长度，未命中返回0
+     */
+    private static int matchAt(String content, int offset, List<String> terms) {
+        int longest = 0;
+        for (String term : terms) {
+            if (term.length() > longest && content.regionMatches(true, offset, term, 0, term.length())) {
+                longest = term.length();
+            }
+        }
+        return longest;
     }
 
     @Override
@@ -184,83 +684,109 @@ public class ChatMessageServiceImpl extends ServiceImpl<ChatMessageMapper, ChatM
 
     @Override
     public List<ChatListDTO> getChatList(Long currentUserId) {
-        if (currentUserId == null) {
-            return List.of();
-        }
+        return getChatList(currentUserId, 1, -1);
+    }
 
-        // 1. 获取所有与当前用户相关的聊天消息，按对方用户分组
-        LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.and(wrapper -> wrapper
-            .eq(ChatMessage::getSenderUserId, currentUserId)
-            .or(w -> w.eq(ChatMessage::getReceiverUserId, currentUserId))
-        );
-        queryWrapper.orderByDesc(ChatMessage::getSendTime);
-        
-        List<ChatMessage> allMessages = this.list(queryWrapper);
-        if (allMessages.isEmpty()) {
+    @Override
+    public List<ChatListDTO> getChatList(Long currentUserId, long current, long size) {
+        if (currentUserId == null) {
             return List.of();
         }
 
-        // 2. 按对方用户ID分组，获取每个聊天的最新消息
-        Map<Long, ChatMessage> latestMessageMap = allMessages.stream()
-            .collect(Collectors.toMap(
-                message -> message.getSenderUserId().equals(currentUserId) 
-                    ? message.getReceiverUserId() 
-                    : message.getSenderUserId(),
-                message -> message,
-                (existing, replacement) -> 
-                    existing.getSendTime().isAfter(replacement.getSendTime()) ? existing : replacement
-            ));
-
-        // 3. 获取所有对方用户的ID列表
-        List<Long> otherUserIds = new ArrayList<>(latestMessageMap.keySet());
-        if (otherUserIds.isEmpty()) {
+        // 1. 从会话摘要表按最后消息时间倒序分页读取（不统计总数）
+        LambdaQueryWrapper<ChatConversation> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatConversation::getOwnerUserId, currentUserId)
+                   .orderByDesc(ChatConversation::getLastMessageTime)
+                   .orderByDesc(ChatConversation::getId);
+        List<ChatConversation> conversations = conversationMapper
+            .selectPage(new Page<>(current, size, false), queryWrapper)
+            .getRecords();
+        if (conversations.isEmpty()) {
             return List.of();
         }
 
-        // 4. 批量获取用户信息
-        List<SysUser> users = sysUserService.listByIds(otherUserIds);
-        Map<Long, SysUser> userMap = users.stream()
+        // 2. 批量获取对方用户信息
+        List<Long> otherUserIds = conversations.stream()
+            .map(ChatConversation::getPartnerUserId)
+            .collect(Collectors.toList());
+        Map<Long, SysUser> userMap = sysUserService.listByIds(otherUserIds).stream()
             .collect(Collectors.toMap(SysUser::getId, user -> user));
 
-        // 5. 构建聊天列表
-        List<ChatListDTO> chatList = new ArrayList<>();
-        for (Map.Entry<Long, ChatMessage> entry : latestMessageMap.entrySet()) {
-            Long otherUserId = entry.getKey();
-            ChatMessage latestMessage = entry.getValue();
-            SysUser otherUser = userMap.get(otherUserId);
-            
+        // 3. 批量查询在线状态
+        Set<Long> onlineUserIds = sessionManager.filterOnline(otherUserIds);
+
+        // 4. 构建聊天列表（已按最后消息时间排序）
+        List<ChatListDTO> chatList = new ArrayList<>(conversations.size());
+        for (ChatConversation conversation : conversations) {
+            SysUser otherUser = userMap.get(conversation.getPartnerUserId());
             if (otherUser == null) {
                 continue; // 用户不存在，跳过
             }
 
-            // 计算未读消息数量
-            LambdaQueryWrapper<ChatMessage> unreadQuery = new LambdaQueryWrapper<>();
-            unreadQuery.eq(ChatMessage::getSenderUserId, otherUserId)
-                      .eq(ChatMessage::getReceiverUserId, currentUserId)
-                      .eq(ChatMessage::getIsRead, false);
-            int unreadCount = Math.toIntExact(this.count(unreadQuery));
-
-            // 检查用户是否在线
-            boolean isOnline = sessionManager.isUserOnline(otherUserId);
-
-            // 创建聊天列表项
-            ChatListDTO chatItem = new ChatListDTO(
-                otherUserId,
+            chatList.add(new ChatListDTO(
+                otherUser.getId(),
                 otherUser.getNickname() != null ? otherUser.getNickname() : otherUser.getUsername(),
                 otherUser.getAvatar(),
-                latestMessage.getMessageContent(),
-                latestMessage.getSendTime(),
-                unreadCount,
-                isOnline
-            );
-            
-            chatList.add(chatItem);
+                conversation.getLastMessagePreview(),
+                conversation.getLastMessageTime(),
+                conversation.getUnreadCount(),
+                onlineUserIds.contains(otherUser.getId())
+            ));
         }
 
-        // 6. 按最后消息时间倒序排列
-        chatList.sort((a, b) -> b.getLastMessageTime().compareTo(a.getLastMessageTime()));
-
         return chatList;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 新消息写入后更新双方的会话摘要
+     * 同一会话的多条消息合并为一次更新；按用户ID顺序更新各行，避免双方同时发消息时互相等待行锁
+     */
+    private void updateConversations(List<ChatMessage> messages) {
+        Map<Long, Map<Long, ChatConversation>> conversations = new TreeMap<>();
+        for (ChatMessage message : messages) {
+            Long senderId = message.getSenderUserId();
+            Long receiverId = message.getReceiverUserId();
+            if (senderId == null || receiverId == null) {
+                continue;
+            }
+            mergeConversation(conversations, senderId, receiverId, message, 0);
+            mergeConversation(conversations, receiverId, senderId, message,
+                Boolean.FALSE.equals(message.getIsRead()) ? 1 : 0);
+        }
+        conversations.values().forEach(byPartner -> byPartner.values().forEach(conversationMapper::upsertOnMessage));
+    }
+
+    private void mergeConversation(Map<Long, Map<Long, ChatConversation>> conversations, Long ownerId, Long partnerId,
+                                   ChatMessage message, int unreadIncrement) {
+        Map<Long, ChatConversation> byPartner = conversations.computeIfAbsent(ownerId, k -> new TreeMap<>());
+        ChatConversation existing = byPartner.get(partnerId);
+        if (existing == null) {
+            byPartner.put(partnerId, buildConversation(ownerId, partnerId, message, unreadIncrement));
+            return;
+        }
+        existing.setUnreadCount(existing.getUnreadCount() + unreadIncrement);
+        if (message.getId() > existing.getLastMessageId()) {
+            existing.setLastMessageId(message.getId());
+            existing.setLastMessagePreview(preview(message.getMessageContent()));
+            existing.setLastMessageTime(message.getSendTime() != null ? message.getSendTime() : LocalDateTime.now());
+        }
+    }
+
+    private ChatConversation buildConversation(Long ownerId, Long partnerId, ChatMessage message, int unreadIncrement) {
+        ChatConversation conversation = new ChatConversation();
+        conversation.setOwnerUserId(ownerId);
+        conversation.setPartnerUserId(partnerId);
+        conversation.setLastMessageId(message.getId());
+        conversation.setLastMessagePreview(preview(message.getMessageContent()));
+        conversation.setLastMessageTime(message.getSendTime() != null ? message.getSendTime() : LocalDateTime.now());
+        conversation.setUnreadCount(unreadIncrement);
+        return conversation;
+    }
+
+    private String preview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, PREVIEW_LENGTH);
+    }
+}
@@ -0,0 +1,218 @@
+package org.charno.chat.manager;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.service.ChatBacklogService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 两个聊天节点共用一个嵌入式Redis的在线状态与跨节点路由集成测试
+ */
+class ChatPresenceRoutingIntegrationTest {
+
+    private static final String PRESENCE_PREFIX = "reflip:chat:presence:";
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @AfterEach
+    void stopNodes() throws Exception {
+        for (Node node : nodes) {
+            node.stop();
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    void messageIsForwardedToUserConnectedOnOtherNode() throws Exception {
+        Node nodeA = start("node-a");
+        Node nodeB = start("node-b");
+        WebSocketSession session = nodeB.connect(42L);
+
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.TYPING);
+        frame.put("senderId", 7L);
+        frame.put("isTyping", true);
+        assertTrue(deliverWhenSubscribed(nodeA, 42L, frame));
+
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, timeout(5000)).sendMessage(sent.capture());
+        JSONObject received = JSON.parseObject(sent.getValue().getPayload());
+        assertEquals(ChatConstants.MessageType.TYPING, received.getString("type"));
+        assertEquals(7L, received.getLong("senderId"));
+        assertEquals(1L, nodeB.router.getStats().get("remoteReceived"));
+    }
+
+    @Test
+    void heartbeatDoesNotReclaimUserReconnectedOnOtherNode() throws Exception {
+        Node nodeA = start("node-a");
+        Node nodeB = start("node-b");
+        nodeA.connect(7L);
+        // 用户重连到B，A上的旧连接尚未关闭
+        WebSocketSession session = nodeB.connect(7L);
+        assertEquals("node-b", redisTemplate.opsForValue().get(PRESENCE_PREFIX + 7));
+
+        nodeA.renewAll();
+        assertEquals("node-b", redisTemplate.opsForValue().get(PRESENCE_PREFIX + 7));
+
+        // A关闭旧连接时也不能删除B的记录
+        nodeA.registry.unregister(7L);
+        assertEquals("node-b", nodeA.registry.getNode(7L));
+
+        Node nodeC = start("node-c");
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.NOTIFICATION);
+        assertTrue(deliverWhenSubscribed(nodeC, 7L, frame));
+        verify(session, timeout(5000)).sendMessage(any());
+    }
+
+    @Test
+    void heartbeatRestoresExpiredRecordAndRenewsOwnOnes() {
+        Node nodeA = start("node-a");
+        nodeA.connect(8L);
+        nodeA.connect(9L);
+        redisTemplate.delete(PRESENCE_PREFIX + 8);
+        redisTemplate.expire(PRESENCE_PREFIX + 9, Duration.ofSeconds(5));
+
+        nodeA.renewAll();
+        assertEquals("node-a", redisTemplate.opsForValue().get(PRESENCE_PREFIX + 8));
+        Long ttl = redisTemplate.getExpire(PRESENCE_PREFIX + 9);
+        assertTrue(ttl != null && ttl > 60, "TTL应被续期: " + ttl);
+    }
+
+    @Test
+    void userOfflineOnAllNodesIsUndeliverable() {
+        Node nodeA = start("node-a");
+        start("node-b");
+        assertFalse(nodeA.router.deliver(99L, new JSONObject()));
+        assertNull(nodeA.registry.getNode(99L));
+    }
+
+    /**
+     * 监听容器异步订阅频道，订阅完成前发布的消息没有接收者
+     */
+    private static boolean deliverWhenSubscribed(Node from, Long userId, JSONObject frame) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (from.router.deliver(userId, frame)) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private Node start(String nodeId) {
+        Node node = new Node(nodeId);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * 一个聊天节点：独立的在线状态注册表、路由与Redis订阅，本地会话由模拟的会话管理器提供
+     */
+    private static final class Node {
+
+        private final ChatPresenceRegistry registry = new ChatPresenceRegistry();
+
+        private final ChatMessageRouter router = new ChatMessageRouter();
+
+        private final WebSocketSessionManager sessionManager = mock(WebSocketSessionManager.class);
+
+        private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+
+        private Node(String nodeId) {
+            ReflectionTestUtils.setField(registry, "configuredNodeId", nodeId);
+            ReflectionTestUtils.setField(registry, "ttlSeconds", 90L);
+            ReflectionTestUtils.setField(registry, "heartbeatSeconds", 3600L);
+            ReflectionTestUtils.setField(registry, "stringRedisTemplate", redisTemplate);
+            registry.init();
+
+            container.setConnectionFactory(connectionFactory);
+            container.afterPropertiesSet();
+            container.start();
+
+            ReflectionTestUtils.setField(router, "sessionManager", sessionManager);
+            ReflectionTestUtils.setField(router, "presenceRegistry", registry);
+            ReflectionTestUtils.setField(router, "broadcastEngine", mock(ChatBroadcastEngine.class));
+            ReflectionTestUtils.setField(router, "backlogService", mock(ChatBacklogService.class));
+            ReflectionTestUtils.setField(router, "stringRedisTemplate", redisTemplate);
+            ReflectionTestUtils.setField(router, "listenerContainer", container);
+            router.init();
+        }
+
+        private WebSocketSession connect(Long userId) {
+            WebSocketSession session = mock(WebSocketSession.class);
+            when(session.isOpen()).thenReturn(true);
+            when(sessionManager.getSession(userId)).thenReturn(session);
+            registry.register(userId);
+            return session;
+        }
+
+        private void renewAll() {
+            ReflectionTestUtils.invokeMethod(registry, "renewAll");
+        }
+
+        private void stop() throws Exception {
+            registry.destroy();
+            container.destroy();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.charno.chat.manager;
+
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 最近消息缓存回源填充测试
+ */
+class ChatRecentMessageCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private ChatRecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        ChatPresenceRegistry presenceRegistry = mock(ChatPresenceRegistry.class);
+        when(presenceRegistry.getNodeId()).thenReturn("node-a");
+        cache = new ChatRecentMessageCache();
+        ReflectionTestUtils.setField(cache, "presenceRegistry", presenceRegistry);
+        ReflectionTestUtils.setField(cache, "capacity", 50);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+    }
+
+    @Test
+    void seedWithCurrentVersionIsCached() {
+        long version = cache.version(100L, 200L);
+        cache.seed(100L, 200L, List.of(message(2L, 1), message(1L, 0)), 20, version);
+
+        List<ChatMessage> cached = cache.latest(200L, 100L, 20);
+        assertNotNull(cached);
+        assertEquals(List.of(2L, 1L), cached.stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void seedIsSkippedWhenInvalidatedDuringQuery() {
+        long version = cache.version(100L, 200L);
+        // 查询期间其他节点落库新消息并发布失效通知
+        cache.onMessage(invalidation("node-b", 100L, 200L), null);
+        cache.seed(100L, 200L, List.of(message(1L, 0)), 20, version);
+
+        assertNull(cache.latest(100L, 200L, 20));
+        assertEquals(1L, cache.getStats().get("staleSeeds"));
+    }
+
+    @Test
+    void seedIsSkippedAfterInvalidateAll() {
+        long version = cache.version(100L, 200L);
+        cache.onMessage(new DefaultMessage("c".getBytes(StandardCharsets.UTF_8),
+                "{\"origin\":\"node-b\"}".getBytes(StandardCharsets.UTF_8)), null);
+        cache.seed(100L, 200L, List.of(message(1L, 0)), 20, version);
+
+        assertNull(cache.latest(100L, 200L, 20));
+    }
+
+    @Test
+    void invalidationOfOwnNodeIsIgnored() {
+        long version = cache.version(100L, 200L);
+        cache.onMessage(invalidation("node-a", 100L, 200L), null);
+        cache.seed(100L, 200L, List.of(message(1L, 0)), 20, version);
+
+        assertNotNull(cache.latest(100L, 200L, 20));
+    }
+
+    private static DefaultMessage invalidation(String origin, long low, long high) {
+        String body = "{\"origin\":\"" + origin + "\",\"low\":" + low + ",\"high\":" + high + "}";
+        return new DefaultMessage("c".getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ChatMessage message(Long id, int second) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setSenderUserId(100L);
+        message.setReceiverUserId(200L);
+        message.setMessageContent("m" + id);
+        message.setStatus(ChatConstants.MessageStatus.SENT);
+        message.setSendTime(T0.plusSeconds(second));
+        return message;
+    }
+}
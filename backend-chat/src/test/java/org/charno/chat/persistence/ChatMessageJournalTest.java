@@ -0,0 +1,244 @@
+package org.charno.chat.persistence;
+
+import org.charno.chat.entity.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 聊天消息本地日志测试
+ */
+class ChatMessageJournalTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void residualMessagesRoundTrip() throws IOException {
+        ChatMessage text = message(1L, "你好，world");
+        ChatMessage empty = message(2L, "");
+        ChatMessage nullContent = message(3L, null);
+        nullContent.setStatus(null);
+        nullContent.setSendTime(LocalDateTime.of(2025, 1, 2, 3, 4, 5, 123_456_789));
+
+        ChatMessageJournal journal = new ChatMessageJournal(directory, SEGMENT_SIZE, false);
+        assertTrue(journal.readResidual().isEmpty());
+        journal.append(text);
+        journal.append(empty);
+        journal.append(nullContent);
+        journal.close();
+
+        List<ChatMessage> residual = new ChatMessageJournal(directory, SEGMENT_SIZE, false).readResidual();
+        assertEquals(3, residual.size());
+        assertSameMessage(text, residual.get(0));
+        assertSameMessage(empty, residual.get(1));
+        assertSameMessage(nullContent, residual.get(2));
+        assertEquals("", residual.get(1).getMessageContent());
+        assertNull(residual.get(2).getMessageContent());
+        assertNull(residual.get(2).getStatus());
+        assertFalse(residual.get(0).getIsRead());
+        assertFalse(residual.get(0).getIsDelete());
+        assertEquals(text.getSendTime(), residual.get(0).getCreateTime());
+    }
+
+    @Test
+    void tornTailRecordIsIgnored() throws IOException {
+        Path file = writeThreeMessages();
+        // 长度字段最后写入，进程在写长度前崩溃时该位置仍为0
+        long third = recordOffset(file, 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(third);
+            raf.writeInt(0);
+        }
+
+        List<ChatMessage> residual = new ChatMessageJournal(directory, SEGMENT_SIZE, false).readResidual();
+        assertEquals(2, residual.size());
+        assertEquals(1L, residual.get(0).getId());
+        assertEquals(2L, residual.get(1).getId());
+    }
+
+    @Test
+    void recordLongerThanSegmentIsIgnored() throws IOException {
+        Path file = writeThreeMessages();
+        long third = recordOffset(file, 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(third);
+            raf.writeInt(SEGMENT_SIZE);
+        }
+
+        List<ChatMessage> residual = new ChatMessageJournal(directory, SEGMENT_SIZE, false).readResidual();
+        assertEquals(2, residual.size());
+    }
+
+    @Test
+    void corruptRecordStopsReadingAtChecksumMismatch() throws IOException {
+        Path file = writeThreeMessages();
+        long second = recordOffset(file, 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // 篡改第二条记录消息数据的第一个字节
+            raf.seek(second + 8);
+            int b = raf.read();
+            raf.seek(second + 8);
+            raf.write(b ^ 0xFF);
+        }
+
+        List<ChatMessage> residual = new ChatMessageJournal(directory, SEGMENT_SIZE, false).readResidual();
+        assertEquals(1, residual.size());
+        assertEquals(1L, residual.get(0).getId());
+    }
+
+    @Test
+    void sealedSegmentIsDeletedOnceFullyAcknowledged() throws IOException {
+        int segmentSize = 512;
+        ChatMessageJournal journal = new ChatMessageJournal(directory, segmentSize, false);
+        journal.readResidual();
+
+        ChatMessageJournal.Segment first = journal.append(message(1L, "a"));
+        List<ChatMessageJournal.Segment> firstSegment = new ArrayList<>();
+        firstSegment.add(first);
+        ChatMessageJournal.Segment current = first;
+        long id = 2;
+        while (current == first) {
+            current = journal.append(message(id++, "a"));
+            if (current == first) {
+                firstSegment.add(current);
+            }
+        }
+        assertNotSame(first, current);
+        assertEquals(2, segmentFiles().size());
+
+        // 封存段未全部确认时保留文件
+        journal.acknowledge(first, firstSegment.size() - 1);
+        assertEquals(2, segmentFiles().size());
+
+        journal.acknowledge(first, 1);
+        assertEquals(1, segmentFiles().size());
+
+        // 当前段全部确认后仍保留，继续追加
+        journal.acknowledge(current, 1);
+        assertEquals(1, segmentFiles().size());
+        assertSame(current, journal.append(message(id, "a")));
+        journal.close();
+
+        List<ChatMessage> residual = new ChatMessageJournal(directory, segmentSize, false).readResidual();
+        assertEquals(2, residual.size());
+        assertEquals(id - 1, residual.get(0).getId());
+        assertEquals(id, residual.get(1).getId());
+    }
+
+    @Test
+    void acknowledgedSegmentIsDeletedWhenRolled() throws IOException {
+        int segmentSize = 512;
+        ChatMessageJournal journal = new ChatMessageJournal(directory, segmentSize, false);
+        journal.readResidual();
+
+        ChatMessageJournal.Segment first = journal.append(message(1L, "a"));
+        int appended = 1;
+        long id = 2;
+        ChatMessageJournal.Segment current = first;
+        // 填满第一段但不触发换段：每条确认后再追加
+        journal.acknowledge(first, 1);
+        while (true) {
+            current = journal.append(message(id++, "a"));
+            if (current != first) {
+                break;
+            }
+            appended++;
+            journal.acknowledge(first, 1);
+        }
+        assertTrue(appended > 1);
+        // 换段时第一段已全部确认，直接删除
+        assertEquals(1, segmentFiles().size());
+        journal.close();
+    }
+
+    @Test
+    void residualFilesAreDeletedAfterReplay() throws IOException {
+        writeThreeMessages();
+        ChatMessageJournal journal = new ChatMessageJournal(directory, SEGMENT_SIZE, false);
+        assertEquals(3, journal.readResidual().size());
+        journal.deleteResidual();
+        assertTrue(segmentFiles().isEmpty());
+
+        // 新段编号接在残留段之后
+        journal.append(message(4L, "d"));
+        journal.close();
+        List<ChatMessage> residual = new ChatMessageJournal(directory, SEGMENT_SIZE, false).readResidual();
+        assertEquals(1, residual.size());
+        assertEquals(4L, residual.get(0).getId());
+    }
+
+    private Path writeThreeMessages() throws IOException {
+        ChatMessageJournal journal = new ChatMessageJournal(directory, SEGMENT_SIZE, false);
+        journal.readResidual();
+        journal.append(message(1L, "first"));
+        journal.append(message(2L, "second"));
+        journal.append(message(3L, "third"));
+        journal.close();
+        List<Path> files = segmentFiles();
+        assertEquals(1, files.size());
+        return files.get(0);
+    }
+
+    /**
+     * 按记录头中的长度跳过前面的记录，返回第index条记录的起始位置
+     */
+    private static long recordOffset(Path file, int index) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long offset = 0;
+            for (int i = 0; i < index; i++) {
+                raf.seek(offset);
+                offset += 8 + raf.readInt();
+            }
+            return offset;
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "chat-journal-*.log")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static ChatMessage message(Long id, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setSenderUserId(100L);
+        message.setReceiverUserId(200L);
+        message.setMessageType("text");
+        message.setMessageContent(content);
+        message.setStatus("sent");
+        message.setSendTime(LocalDateTime.of(2025, 6, 1, 12, 30, 15, 250_000_000));
+        return message;
+    }
+
+    private static void assertSameMessage(ChatMessage expected, ChatMessage actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getSenderUserId(), actual.getSenderUserId());
+        assertEquals(expected.getReceiverUserId(), actual.getReceiverUserId());
+        assertEquals(expected.getMessageType(), actual.getMessageType());
+        assertEquals(expected.getMessageContent(), actual.getMessageContent());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getSendTime(), actual.getSendTime());
+    }
+}
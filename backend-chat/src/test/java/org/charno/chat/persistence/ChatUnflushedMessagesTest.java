@@ -0,0 +1,116 @@
+package org.charno.chat.persistence;
+
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 尚未落库消息登记测试
+ */
+class ChatUnflushedMessagesTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private final ChatUnflushedMessages unflushed = new ChatUnflushedMessages();
+
+    @Test
+    void readMarkAfterSnapshotIsReturnedOnRelease() {
+        ChatMessage message = message(1L, 100L, 200L, T0);
+        unflushed.track(message);
+
+        List<ChatMessage> rows = unflushed.snapshot(List.of(message));
+        assertEquals(1, unflushed.markRead(List.of(1L)).size());
+
+        List<ChatMessage> changed = unflushed.release(rows);
+        assertEquals(1, changed.size());
+        assertTrue(changed.get(0).getIsRead());
+        assertFalse(rows.get(0).getIsRead());
+        assertNull(unflushed.find(1L));
+        assertEquals(0, unflushed.size());
+    }
+
+    @Test
+    void readMarkBeforeSnapshotIsWrittenWithTheRow() {
+        ChatMessage message = message(1L, 100L, 200L, T0);
+        unflushed.track(message);
+        unflushed.markConversationRead(100L, 200L);
+
+        List<ChatMessage> rows = unflushed.snapshot(List.of(message));
+        assertTrue(rows.get(0).getIsRead());
+        assertTrue(unflushed.release(rows).isEmpty());
+        // 调用方持有的原对象不受影响
+        assertFalse(message.getIsRead());
+    }
+
+    @Test
+    void receiptFollowsSendTimeOrderAndDirection() {
+        // ID与发送时间顺序不一致
+        unflushed.track(message(30L, 100L, 200L, T0));
+        unflushed.track(message(10L, 100L, 200L, T0.plusSeconds(1)));
+        unflushed.track(message(20L, 100L, 200L, T0.plusSeconds(2)));
+        unflushed.track(message(40L, 200L, 100L, T0));
+
+        assertEquals(2, unflushed.applyReceipt(100L, 200L, T0.plusSeconds(1), 10L,
+                ChatConstants.MessageStatus.DELIVERED));
+        assertEquals(ChatConstants.MessageStatus.DELIVERED, unflushed.find(30L).getStatus());
+        assertEquals(ChatConstants.MessageStatus.DELIVERED, unflushed.find(10L).getStatus());
+        assertEquals(ChatConstants.MessageStatus.SENT, unflushed.find(20L).getStatus());
+        assertEquals(ChatConstants.MessageStatus.SENT, unflushed.find(40L).getStatus());
+
+        assertEquals(3, unflushed.applyReceipt(100L, 200L, T0.plusSeconds(2), 20L, ChatConstants.MessageStatus.READ));
+        assertTrue(unflushed.find(20L).getIsRead());
+        // 已读后的送达回执不会覆盖已读
+        assertEquals(0, unflushed.applyReceipt(100L, 200L, T0.plusSeconds(2), 20L,
+                ChatConstants.MessageStatus.DELIVERED));
+        assertEquals(ChatConstants.MessageStatus.READ, unflushed.find(30L).getStatus());
+        assertFalse(unflushed.find(40L).getIsRead());
+    }
+
+    @Test
+    void historyIsNewestFirstAndRespectsCursor() {
+        unflushed.track(message(30L, 100L, 200L, T0));
+        unflushed.track(message(10L, 200L, 100L, T0.plusSeconds(1)));
+        unflushed.track(message(20L, 100L, 200L, T0.plusSeconds(1)));
+        unflushed.track(message(50L, 100L, 300L, T0.plusSeconds(3)));
+
+        List<ChatMessage> all = unflushed.history(200L, 100L, null, null);
+        assertEquals(List.of(20L, 10L, 30L), all.stream().map(ChatMessage::getId).toList());
+
+        List<ChatMessage> before = unflushed.history(100L, 200L, T0.plusSeconds(1), 20L);
+        assertEquals(List.of(10L, 30L), before.stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void removedMessageIsNotReleased() {
+        ChatMessage message = message(1L, 100L, 200L, T0);
+        unflushed.track(message);
+        List<ChatMessage> rows = unflushed.snapshot(List.of(message));
+        unflushed.markRead(List.of(1L));
+        unflushed.remove(message);
+
+        assertTrue(unflushed.release(rows).isEmpty());
+        assertTrue(unflushed.history(100L, 200L, null, null).isEmpty());
+    }
+
+    private static ChatMessage message(Long id, Long senderId, Long receiverId, LocalDateTime sendTime) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setSenderUserId(senderId);
+        message.setReceiverUserId(receiverId);
+        message.setMessageType(ChatConstants.ContentType.TEXT);
+        message.setMessageContent("m" + id);
+        message.setStatus(ChatConstants.MessageStatus.SENT);
+        message.setSendTime(sendTime);
+        message.setIsRead(false);
+        message.setIsDelete(false);
+        return message;
+    }
+}
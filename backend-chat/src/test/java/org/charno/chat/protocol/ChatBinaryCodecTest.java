@@ -0,0 +1,225 @@
+package org.charno.chat.protocol;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 二进制子协议编解码测试
+ */
+class ChatBinaryCodecTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2025, 6, 1, 12, 30, 15, 250_000_000);
+
+    private static final long[] VARINT_BOUNDARIES = {
+            0L, 1L, 127L, 128L, 16_383L, 16_384L, 2_097_151L, 2_097_152L,
+            Integer.MAX_VALUE, 1L << 35, 1L << 56, Long.MAX_VALUE, -1L, Long.MIN_VALUE
+    };
+
+    @Test
+    void chatFrameRoundTrip() {
+        JSONObject frame = frame(ChatConstants.MessageType.CHAT);
+        frame.put("receiverId", 42L);
+        frame.put("messageType", "text");
+        frame.put("content", "你好，world");
+
+        JSONObject decoded = roundTrip(frame);
+        assertEquals(ChatConstants.MessageType.CHAT, decoded.getString("type"));
+        assertEquals(42L, decoded.getLong("receiverId"));
+        assertEquals("text", decoded.getString("messageType"));
+        assertEquals("你好，world", decoded.getString("content"));
+    }
+
+    @Test
+    void nullAndEmptyStringsAreDistinct() {
+        JSONObject empty = frame(ChatConstants.MessageType.CHAT);
+        empty.put("receiverId", 1L);
+        empty.put("messageType", "");
+        empty.put("content", "");
+        JSONObject decodedEmpty = roundTrip(empty);
+        assertEquals("", decodedEmpty.getString("messageType"));
+        assertEquals("", decodedEmpty.getString("content"));
+
+        JSONObject absent = frame(ChatConstants.MessageType.CHAT);
+        absent.put("receiverId", 1L);
+        JSONObject decodedAbsent = roundTrip(absent);
+        assertTrue(decodedAbsent.containsKey("content"));
+        assertNull(decodedAbsent.getString("messageType"));
+        assertNull(decodedAbsent.getString("content"));
+    }
+
+    @Test
+    void newMessageFrameRoundTrip() {
+        JSONObject frame = frame(ChatConstants.MessageType.NEW_MESSAGE);
+        frame.put("messageId", 9_000_000_001L);
+        frame.put("senderId", 7L);
+        frame.put("sendTime", TIME);
+        frame.put("messageType", "image");
+        frame.put("content", "https://example.com/a.png");
+
+        JSONObject decoded = roundTrip(frame);
+        assertEquals(ChatConstants.MessageType.NEW_MESSAGE, decoded.getString("type"));
+        assertEquals(9_000_000_001L, decoded.getLong("messageId"));
+        assertEquals(7L, decoded.getLong("senderId"));
+        assertEquals(TIME, decoded.get("sendTime"));
+        assertEquals("image", decoded.getString("messageType"));
+        assertEquals("https://example.com/a.png", decoded.getString("content"));
+    }
+
+    @Test
+    void timeForwardedAsIsoTextIsEncoded() {
+        // 其他节点转发来的帧经过JSON传输，时间为ISO-8601文本
+        JSONObject frame = frame(ChatConstants.MessageType.NEW_MESSAGE);
+        frame.put("messageId", 1L);
+        frame.put("senderId", 2L);
+        frame.put("sendTime", TIME.toString());
+        assertEquals(TIME, roundTrip(frame).get("sendTime"));
+
+        JSONObject missing = frame(ChatConstants.MessageType.NEW_MESSAGE);
+        missing.put("messageId", 1L);
+        missing.put("senderId", 2L);
+        assertNull(roundTrip(missing).get("sendTime"));
+    }
+
+    @Test
+    void messageSentFrameRoundTrip() {
+        JSONObject frame = frame(ChatConstants.MessageType.MESSAGE_SENT);
+        frame.put("messageId", 128L);
+        frame.put("status", "success");
+        frame.put("timestamp", TIME);
+
+        JSONObject decoded = roundTrip(frame);
+        assertEquals(ChatConstants.MessageType.MESSAGE_SENT, decoded.getString("type"));
+        assertEquals(128L, decoded.getLong("messageId"));
+        assertEquals("success", decoded.getString("status"));
+        assertEquals(TIME, decoded.get("timestamp"));
+    }
+
+    @Test
+    void typingFrameRoundTrip() {
+        // 服务端下发时携带senderId，客户端发送时携带receiverId，解码统一为receiverId
+        JSONObject outbound = frame(ChatConstants.MessageType.TYPING);
+        outbound.put("senderId", 5L);
+        outbound.put("isTyping", true);
+        JSONObject decodedOutbound = roundTrip(outbound);
+        assertEquals(5L, decodedOutbound.getLong("receiverId"));
+        assertTrue(decodedOutbound.getBooleanValue("isTyping"));
+
+        JSONObject inbound = frame(ChatConstants.MessageType.TYPING);
+        inbound.put("receiverId", 6L);
+        inbound.put("isTyping", false);
+        JSONObject decodedInbound = roundTrip(inbound);
+        assertEquals(6L, decodedInbound.getLong("receiverId"));
+        assertFalse(decodedInbound.getBooleanValue("isTyping"));
+    }
+
+    @Test
+    void pingAndPongFramesRoundTrip() {
+        for (String type : new String[]{ChatConstants.MessageType.PING, ChatConstants.MessageType.PONG}) {
+            JSONObject frame = frame(type);
+            frame.put("timestamp", TIME);
+            JSONObject decoded = roundTrip(frame);
+            assertEquals(type, decoded.getString("type"));
+            assertEquals(TIME, decoded.get("timestamp"));
+        }
+    }
+
+    @Test
+    void receiptFrameRoundTrip() {
+        for (String status : new String[]{ChatConstants.MessageStatus.DELIVERED, ChatConstants.MessageStatus.READ}) {
+            JSONObject frame = frame(ChatConstants.MessageType.RECEIPT);
+            frame.put("peerId", 3L);
+            frame.put("status", status);
+            frame.put("upToId", 16_384L);
+            JSONObject decoded = roundTrip(frame);
+            assertEquals(ChatConstants.MessageType.RECEIPT, decoded.getString("type"));
+            assertEquals(3L, decoded.getLong("peerId"));
+            assertEquals(status, decoded.getString("status"));
+            assertEquals(16_384L, decoded.getLong("upToId"));
+        }
+    }
+
+    @Test
+    void varintBoundariesRoundTrip() {
+        for (long value : VARINT_BOUNDARIES) {
+            JSONObject frame = frame(ChatConstants.MessageType.RECEIPT);
+            frame.put("peerId", value);
+            frame.put("status", ChatConstants.MessageStatus.READ);
+            frame.put("upToId", value);
+            JSONObject decoded = roundTrip(frame);
+            assertEquals(value, decoded.getLongValue("peerId"), "peerId " + value);
+            assertEquals(value, decoded.getLongValue("upToId"), "upToId " + value);
+        }
+    }
+
+    @Test
+    void varintUsesSevenBitsPerByte() {
+        assertEquals(1 + 1 + 1 + 1, encodedReceiptSize(127L));
+        assertEquals(1 + 2 + 1 + 2, encodedReceiptSize(128L));
+        assertEquals(1 + 10 + 1 + 10, encodedReceiptSize(-1L));
+    }
+
+    @Test
+    void otherFrameTypesUseJsonFallback() {
+        JSONObject frame = frame(ChatConstants.MessageType.ERROR);
+        frame.put("message", "失败");
+        frame.put("timestamp", TIME);
+
+        byte[] bytes = ChatBinaryCodec.encode(frame);
+        assertEquals(0x00, bytes[0]);
+        JSONObject json = JSON.parseObject(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8));
+        assertEquals(TIME.toString(), json.getString("timestamp"));
+
+        JSONObject decoded = ChatBinaryCodec.decode(ByteBuffer.wrap(bytes));
+        assertEquals(ChatConstants.MessageType.ERROR, decoded.getString("type"));
+        assertEquals("失败", decoded.getString("message"));
+        assertEquals(TIME.toString(), decoded.getString("timestamp"));
+    }
+
+    @Test
+    void frameWithoutTypeUsesJsonFallback() {
+        JSONObject frame = new JSONObject();
+        frame.put("value", 1);
+        byte[] bytes = ChatBinaryCodec.encode(frame);
+        assertEquals(0x00, bytes[0]);
+        assertEquals(1, ChatBinaryCodec.decode(ByteBuffer.wrap(bytes)).getIntValue("value"));
+    }
+
+    @Test
+    void malformedFramesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ChatBinaryCodec.decode(ByteBuffer.allocate(0)));
+        assertThrows(IllegalArgumentException.class, () -> ChatBinaryCodec.decode(ByteBuffer.wrap(new byte[]{0x7F})));
+        // CHAT帧：receiverId=1，messageType声明长度超出帧范围
+        assertThrows(IllegalArgumentException.class,
+                () -> ChatBinaryCodec.decode(ByteBuffer.wrap(new byte[]{0x01, 0x01, 0x10, 'a'})));
+    }
+
+    private static int encodedReceiptSize(long value) {
+        JSONObject frame = frame(ChatConstants.MessageType.RECEIPT);
+        frame.put("peerId", value);
+        frame.put("status", ChatConstants.MessageStatus.READ);
+        frame.put("upToId", value);
+        return ChatBinaryCodec.encode(frame).length;
+    }
+
+    private static JSONObject frame(String type) {
+        JSONObject frame = new JSONObject();
+        frame.put("type", type);
+        return frame;
+    }
+
+    private static JSONObject roundTrip(JSONObject frame) {
+        return ChatBinaryCodec.decode(ByteBuffer.wrap(ChatBinaryCodec.encode(frame)));
+    }
+}
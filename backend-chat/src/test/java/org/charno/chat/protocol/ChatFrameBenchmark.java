@@ -0,0 +1,90 @@
+package org.charno.chat.protocol;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 消息帧编码耗时对比：JSON文本与二进制子协议
+ * 不是单元测试，不随构建运行。简单的预热加计时循环，只用于比较同一台机器上两种编码的相对开销：
+ * <pre>
+ * mvn -q -pl backend-chat test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp backend-chat/target/classes:backend-chat/target/test-classes:$(cat backend-chat/target/cp.txt) \
+ *     org.charno.chat.protocol.ChatFrameBenchmark
+ * </pre>
+ */
+public class ChatFrameBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int ROUNDS = 5;
+
+    private static final int ITERATIONS = 200_000;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runJson();
+            runBinaryEncode();
+            runBinaryDecode();
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            report("json encode", runJson());
+            report("binary encode", runBinaryEncode());
+            report("binary decode", runBinaryDecode());
+        }
+        JSONObject frame = newMessageFrame(1);
+        System.out.printf("frame size: json %d bytes, binary %d bytes%n",
+                ChatFrame.toJson(frame).getBytes(StandardCharsets.UTF_8).length,
+                ChatBinaryCodec.encode(frame).length);
+        // 输出累计值，防止JIT消除编码调用
+        System.out.println("checksum: " + sink);
+    }
+
+    private static long runJson() {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += ChatFrame.toJson(newMessageFrame(i)).length();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runBinaryEncode() {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += ChatBinaryCodec.encode(newMessageFrame(i)).length;
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runBinaryDecode() {
+        byte[] bytes = ChatBinaryCodec.encode(newMessageFrame(1));
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += ChatBinaryCodec.decode(ByteBuffer.wrap(bytes)).size();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 与ChatWebSocketHandler推送给接收者的帧结构相同
+     */
+    private static JSONObject newMessageFrame(long messageId) {
+        JSONObject frame = new JSONObject();
+        frame.put("type", ChatConstants.MessageType.NEW_MESSAGE);
+        frame.put("messageId", 1_000_000L + messageId);
+        frame.put("senderId", 10_001L);
+        frame.put("content", "你好，这个沙发还在吗？周末可以来看看吗");
+        frame.put("messageType", "text");
+        frame.put("sendTime", LocalDateTime.now());
+        return frame;
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("%-14s %8.1f ns/op%n", name, (double) nanos / ITERATIONS);
+    }
+}
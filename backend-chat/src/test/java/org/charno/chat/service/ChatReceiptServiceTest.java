@@ -0,0 +1,167 @@
+package org.charno.chat.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.charno.chat.constants.ChatConstants;
+import org.charno.chat.entity.ChatMessage;
+import org.charno.chat.manager.ChatMessageRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 回执合并与重试测试
+ */
+class ChatReceiptServiceTest {
+
+    private static final Long READER = 200L;
+    private static final Long SENDER = 100L;
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private final IChatMessageService chatMessageService = mock(IChatMessageService.class);
+    private final ChatMessageRouter messageRouter = mock(ChatMessageRouter.class);
+    private final Map<Long, ChatMessage> messages = new HashMap<>();
+
+    private ChatReceiptService receiptService;
+
+    @BeforeEach
+    void setUp() {
+        receiptService = new ChatReceiptService();
+        ReflectionTestUtils.setField(receiptService, "chatMessageService", chatMessageService);
+        ReflectionTestUtils.setField(receiptService, "messageRouter", messageRouter);
+        ReflectionTestUtils.setField(receiptService, "maxRetries", 2);
+        when(chatMessageService.findMessages(anyCollection())).thenAnswer(invocation -> {
+            List<ChatMessage> found = new ArrayList<>();
+            for (Object id : invocation.<Collection<?>>getArgument(0)) {
+                if (messages.containsKey(id)) {
+                    found.add(messages.get(id));
+                }
+            }
+            return found;
+        });
+        when(chatMessageService.applyReceipt(anyLong(), anyLong(), anyString(), any(ChatMessage.class))).thenReturn(1);
+    }
+
+    @Test
+    void laterWatermarkWinsRegardlessOfArrivalOrder() {
+        // ID较小的消息发送得更晚
+        messages.put(100L, message(100L, T0));
+        messages.put(50L, message(50L, T0.plusSeconds(5)));
+        messages.put(70L, message(70L, T0.plusSeconds(1)));
+
+        assertTrue(receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 100L)));
+        assertTrue(receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 50L)));
+        assertTrue(receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 70L)));
+        flush();
+
+        ArgumentCaptor<ChatMessage> watermark = ArgumentCaptor.forClass(ChatMessage.class);
+        verify(chatMessageService, times(1)).applyReceipt(eq(READER), eq(SENDER),
+                eq(ChatConstants.MessageStatus.READ), watermark.capture());
+        assertEquals(50L, watermark.getValue().getId());
+
+        ArgumentCaptor<JSONObject> frame = ArgumentCaptor.forClass(JSONObject.class);
+        verify(messageRouter).deliver(eq(SENDER), frame.capture());
+        assertEquals(50L, frame.getValue().getLong("upToId"));
+        assertEquals(READER, frame.getValue().getLong("peerId"));
+    }
+
+    @Test
+    void unresolvedWatermarkIsRetriedUntilItAppears() {
+        receiptService.submit(READER, receipt(ChatConstants.MessageStatus.DELIVERED, 9L));
+        flush();
+        verify(chatMessageService, never()).applyReceipt(anyLong(), anyLong(), anyString(), any(ChatMessage.class));
+        assertEquals(1, receiptService.getStats().get("pending"));
+
+        // 水位消息在其他节点落库后可以解析
+        messages.put(9L, message(9L, T0));
+        flush();
+        verify(chatMessageService).applyReceipt(eq(READER), eq(SENDER),
+                eq(ChatConstants.MessageStatus.DELIVERED), any(ChatMessage.class));
+        assertEquals(0, receiptService.getStats().get("pending"));
+    }
+
+    @Test
+    void unresolvedWatermarkIsAbandonedAfterMaxRetries() {
+        receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 9L));
+        for (int i = 0; i < 3; i++) {
+            flush();
+        }
+        assertEquals(0, receiptService.getStats().get("pending"));
+        assertEquals(1L, receiptService.getStats().get("abandoned"));
+    }
+
+    @Test
+    void resolvedWatermarkIsAppliedWhileLaterOneIsStillPending() {
+        messages.put(1L, message(1L, T0));
+        receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 1L));
+        receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 2L));
+        flush();
+
+        verify(chatMessageService).applyReceipt(eq(READER), eq(SENDER), eq(ChatConstants.MessageStatus.READ),
+                eq(messages.get(1L)));
+        assertEquals(1, receiptService.getStats().get("pending"));
+    }
+
+    @Test
+    void watermarkFromAnotherConversationIsIgnored() {
+        ChatMessage foreign = message(5L, T0);
+        foreign.setSenderUserId(300L);
+        messages.put(5L, foreign);
+        receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 5L));
+        flush();
+
+        verify(chatMessageService, never()).applyReceipt(anyLong(), anyLong(), anyString(), any(ChatMessage.class));
+        assertEquals(0, receiptService.getStats().get("pending"));
+    }
+
+    @Test
+    void invalidReceiptIsRejected() {
+        assertFalse(receiptService.submit(READER, receipt("unknown", 1L)));
+        assertFalse(receiptService.submit(SENDER, receipt(ChatConstants.MessageStatus.READ, 1L)));
+        assertFalse(receiptService.submit(READER, receipt(ChatConstants.MessageStatus.READ, 0L)));
+    }
+
+    private void flush() {
+        ReflectionTestUtils.invokeMethod(receiptService, "flush");
+    }
+
+    private static JSONObject receipt(String status, Long upToId) {
+        JSONObject receipt = new JSONObject();
+        receipt.put("type", ChatConstants.MessageType.RECEIPT);
+        receipt.put("peerId", SENDER);
+        receipt.put("status", status);
+        receipt.put("upToId", upToId);
+        return receipt;
+    }
+
+    private static ChatMessage message(Long id, LocalDateTime sendTime) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setSenderUserId(SENDER);
+        message.setReceiverUserId(READER);
+        message.setSendTime(sendTime);
+        message.setStatus(ChatConstants.MessageStatus.SENT);
+        return message;
+    }
+}
@@ -0,0 +1,91 @@
+package org.charno.chat.service.impl;
+
+import org.charno.chat.dto.ChatSearchHitDTO;
+import org.charno.chat.dto.ChatSearchResultDTO;
+import org.charno.chat.mapper.ChatMessageMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天消息检索测试：中日韩关键词改用子串匹配
+ */
+class ChatMessageSearchTest {
+
+    private final ChatMessageMapper mapper = mock(ChatMessageMapper.class);
+
+    private ChatMessageServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatMessageServiceImpl();
+        ReflectionTestUtils.setField(service, "baseMapper", mapper);
+    }
+
+    @Test
+    void cjkKeywordUsesEscapedSubstringPatterns() {
+        ChatSearchHitDTO hit = new ChatSearchHitDTO();
+        hit.setMessageId(42L);
+        hit.setMessageContent("这个沙发还在吗？100%全新");
+        hit.setRank(0f);
+        when(mapper.searchMessagesBySubstring(anyLong(), anyList(), any(), any(), anyInt())).thenReturn(List.of(hit));
+
+        ChatSearchResultDTO result = service.searchMessages(1L, " 沙发  100% ", null, null, 1);
+
+        verify(mapper).searchMessagesBySubstring(eq(1L), eq(List.of("%沙发%", "%100\\%%")), isNull(), isNull(), eq(1));
+        verify(mapper, never()).searchMessages(anyLong(), anyString(), any(), any(), any(), anyInt());
+        assertEquals("这个<mark>沙发</mark>还在吗？<mark>100%</mark>全新", hit.getHighlight());
+        assertEquals("0.0_42", result.getNextCursor());
+    }
+
+    @Test
+    void substringCursorPagesById() {
+        service.searchMessages(1L, "沙发", 7L, "0.0_42", 20);
+        verify(mapper).searchMessagesBySubstring(eq(1L), eq(List.of("%沙发%")), eq(7L), eq(42L), eq(20));
+    }
+
+    @Test
+    void latinKeywordUsesFullTextSearch() {
+        service.searchMessages(1L, "sofa pickup", null, null, 20);
+        verify(mapper).searchMessages(eq(1L), eq("sofa pickup"), isNull(), isNull(), isNull(), eq(20));
+        verify(mapper, never()).searchMessagesBySubstring(anyLong(), anyList(), any(), any(), anyInt());
+    }
+
+    @Test
+    void cjkDetectionCoversHanKanaAndHangul() {
+        assertTrue(ChatMessageServiceImpl.containsCjk("二手沙发"));
+        assertTrue(ChatMessageServiceImpl.containsCjk("ソファ"));
+        assertTrue(ChatMessageServiceImpl.containsCjk("소파"));
+        assertFalse(ChatMessageServiceImpl.containsCjk("sofa, 100%"));
+    }
+
+    @Test
+    void termsAreSplitOnWhitespaceWithoutQuotes() {
+        assertEquals(List.of("沙发", "还在"), ChatMessageServiceImpl.splitSearchTerms("\"沙发 还在\" 沙发"));
+    }
+
+    @Test
+    void highlightKeepsWindowAroundFirstMatch() {
+        String content = "前".repeat(40) + "Sofa" + "后".repeat(80);
+        String highlight = ChatMessageServiceImpl.highlightTerms(content, List.of("sofa"));
+        assertTrue(highlight.startsWith("前".repeat(15) + "<mark>Sofa</mark>"));
+        assertEquals(60 + "<mark></mark>".length(), highlight.length());
+    }
+}
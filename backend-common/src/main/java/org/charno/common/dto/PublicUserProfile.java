@@ -0,0 +1,32 @@
+package org.charno.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户公开资料 DTO
+ * 仅包含可对访客公开的字段，用于商品卖家信息和用户主页
+ * 
+ * @author charno
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicUserProfile {
+    
+    /**
+     * 用户ID
+     */
+    private Long id;
+    
+    /**
+     * 昵称
+     */
+    private String nickname;
+    
+    /**
+     * 头像地址
+     */
+    private String avatar;
+}
@@ -13,8 +13,44 @@ public class LoginUser implements Serializable {
     private SysUser user;
     private String token;
 
+    /**
+     * 登录时的角色ID，权限校验据此直接查找角色权限快照
+     */
+    private Integer roleId;
+
     public LoginUser(SysUser user, String token) {
         this.user = user;
         this.token = token;
+        this.roleId = user != null ? user.getRoleId() : null;
+    }
+
+    /**
+     * 会话中保存的投影：只保留鉴权和展示所需字段（不含密码、第三方账号标识、时间戳），
+     * 与CompactRedisSerializer写入Redis的字段一致，本地缓存和Redis中的登录用户形状相同
+     */
+    public LoginUser toSession() {
+        SysUser source = user != null ? user : new SysUser();
+        SysUser projected = new SysUser();
+        projected.setId(source.getId());
+        projected.setRoleId(getRoleId());
+        projected.setUsername(source.getUsername());
+        projected.setNickname(source.getNickname());
+        projected.setAvatar(source.getAvatar());
+        projected.setEmail(source.getEmail());
+        projected.setPhoneNumber(source.getPhoneNumber());
+        projected.setSex(source.getSex());
+        projected.setClientRole(source.getClientRole());
+
+        LoginUser session = new LoginUser(projected, token);
+        session.setRoleId(getRoleId());
+        return session;
+    }
+
+    public Integer getRoleId() {
+        // 兼容未记录roleId的旧会话
+        if (roleId == null && user != null) {
+            return user.getRoleId();
+        }
+        return roleId;
     }
 }
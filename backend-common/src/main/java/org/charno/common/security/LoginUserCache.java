@@ -0,0 +1,129 @@
+package org.charno.common.security;
+
+import org.charno.common.utils.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录用户本地缓存
+ * 位于Redis之前的进程内近端缓存，按token缓存LoginUser，减少每次请求的Redis GET；超出容量时淘汰最久未访问的token
+ * 通过Redis发布订阅在各节点间同步失效（退出登录时）
+ */
+@Component
+public class LoginUserCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginUserCache.class);
+
+    /**
+     * 失效广播频道，消息体为token
+     */
+    public static final String INVALIDATE_CHANNEL = "reflip:login_token:invalidate";
+
+    @Value("${value.login-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${value.login-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private LruCache<String, LoginUser> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>(maxSize, ttlSeconds * 1000);
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 获取缓存的登录用户，未命中或已过期返回null
+     */
+    public LoginUser get(String token) {
+        LoginUser loginUser = token != null ? cache.get(token) : null;
+        if (loginUser == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return loginUser;
+    }
+
+    /**
+     * 放入缓存，超出容量时淘汰最久未访问的一项
+     */
+    public void put(String token, LoginUser loginUser) {
+        if (token == null || loginUser == null) {
+            return;
+        }
+        cache.put(token, loginUser);
+    }
+
+    /**
+     * 仅失效本节点缓存
+     */
+    public void invalidateLocal(String token) {
+        if (token != null && cache.remove(token)) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 失效本节点缓存并通知其他节点
+     */
+    public void invalidate(String token) {
+        invalidateLocal(token);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, token);
+        } catch (Exception e) {
+            // 其他节点最迟在本地TTL到期后失效
+            logger.warn("广播登录缓存失效消息失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", cache.evictions());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
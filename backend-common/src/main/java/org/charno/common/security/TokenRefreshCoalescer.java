@@ -0,0 +1,182 @@
+package org.charno.common.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌续期合并器
+ * 只有当令牌剩余有效期低于阈值时才续期，续期请求由后台线程按批次通过管道发送，
+ * 使Redis写入量与活跃用户数相关，而不是与请求数相关
+ */
+@Component
+public class TokenRefreshCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefreshCoalescer.class);
+
+    /**
+     * 立即续期模式：每次请求都发送EXPIRE
+     */
+    public static final String MODE_IMMEDIATE = "immediate";
+
+    /**
+     * 合并续期模式
+     */
+    public static final String MODE_COALESCED = "coalesced";
+
+    @Value("${value.token-refresh.mode:coalesced}")
+    private String mode;
+
+    /**
+     * 剩余有效期低于该值（分钟）时才续期
+     */
+    @Value("${value.token-refresh.threshold-minutes:1380}")
+    private long thresholdMinutes;
+
+    @Value("${value.token-refresh.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${value.token-refresh.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Redis键 -> 最近一次续期（或写入）时间
+     */
+    private final Map<String, Long> lastRefreshTime = new ConcurrentHashMap<>();
+
+    /**
+     * 等待续期的Redis键
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flusher;
+
+    private volatile long expireMinutes;
+
+    @PostConstruct
+    public void init() {
+        if (!isCoalesced()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-refresh-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flushSafely();
+        }
+    }
+
+    public boolean isCoalesced() {
+        return MODE_COALESCED.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 记录键刚被写入或续期为完整有效期
+     */
+    public void markRefreshed(String key, long expireMinutes) {
+        this.expireMinutes = expireMinutes;
+        lastRefreshTime.put(key, System.currentTimeMillis());
+    }
+
+    /**
+     * 键被删除后不再续期
+     */
+    public void forget(String key) {
+        lastRefreshTime.remove(key);
+        pendingKeys.remove(key);
+    }
+
+    /**
+     * 请求续期，剩余有效期仍高于阈值时直接忽略
+     */
+    public void requestRefresh(String key, long expireMinutes) {
+        this.expireMinutes = expireMinutes;
+        Long last = lastRefreshTime.get(key);
+        if (last != null) {
+            long remaining = TimeUnit.MINUTES.toMillis(expireMinutes) - (System.currentTimeMillis() - last);
+            if (remaining > TimeUnit.MINUTES.toMillis(thresholdMinutes)) {
+                return;
+            }
+        }
+        pendingKeys.add(key);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("批量续期令牌失败", e);
+        }
+    }
+
+    private void flush() {
+        if (!pendingKeys.isEmpty()) {
+            List<String> batch = new ArrayList<>(batchSize);
+            Iterator<String> iterator = pendingKeys.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() >= batchSize) {
+                    expireAll(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                expireAll(batch);
+            }
+        }
+
+        // 清理已超过有效期的记录，避免无限增长
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(expireMinutes);
+        lastRefreshTime.values().removeIf(time -> time < expireBefore);
+    }
+
+    private void expireAll(List<String> keys) {
+        long seconds = TimeUnit.MINUTES.toSeconds(expireMinutes);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            expireAll(connection, keys, seconds);
+            return null;
+        });
+
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            lastRefreshTime.put(key, now);
+        }
+        logger.debug("批量续期令牌 {} 个", keys.size());
+    }
+
+    private void expireAll(RedisConnection connection, List<String> keys, long seconds) {
+        for (String key : keys) {
+            connection.keyCommands().expire(key.getBytes(StandardCharsets.UTF_8), seconds);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.charno.common.utils;
+
+import org.charno.common.entity.SysUser;
+import org.charno.common.security.LoginUser;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑Redis值序列化器
+ * 登录会话（LoginUser）写为带版本号的二进制格式，只保留鉴权和展示所需字段（与LoginUser.toSession()一致，不含密码、第三方账号标识、时间戳）；
+ * 字符串（如商品锁的持有者ID）写为原始UTF-8；其他类型及旧的JSON数据仍由JSON序列化器处理。
+ * 二进制数据以UTF-8中不可能出现的字节开头，因此与JSON数据可以无歧义地区分。
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * LoginUser标记
+     */
+    private static final byte TAG_LOGIN_USER = (byte) 0xF5;
+
+    /**
+     * 字符串标记
+     */
+    private static final byte TAG_STRING = (byte) 0xF6;
+
+    /**
+     * LoginUser格式版本
+     */
+    private static final byte LOGIN_USER_VERSION = 1;
+
+    private final RedisSerializer<Object> fallback;
+
+    public CompactRedisSerializer() {
+        this(new GenericJackson2JsonRedisSerializer());
+    }
+
+    public CompactRedisSerializer(RedisSerializer<Object> fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof LoginUser loginUser) {
+            return serializeLoginUser(loginUser);
+        }
+        if (value instanceof String text) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = new byte[utf8.length + 1];
+            bytes[0] = TAG_STRING;
+            System.arraycopy(utf8, 0, bytes, 1, utf8.length);
+            return bytes;
+        }
+        return fallback.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == TAG_LOGIN_USER) {
+            return deserializeLoginUser(bytes);
+        }
+        if (bytes[0] == TAG_STRING) {
+            return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        }
+        return fallback.deserialize(bytes);
+    }
+
+    private byte[] serializeLoginUser(LoginUser loginUser) {
+        SysUser user = loginUser.getUser() != null ? loginUser.getUser() : new SysUser();
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(TAG_LOGIN_USER);
+            out.writeByte(LOGIN_USER_VERSION);
+            writeLong(out, user.getId());
+            writeInt(out, loginUser.getRoleId());
+            writeString(out, loginUser.getToken());
+            writeString(out, user.getUsername());
+            writeString(out, user.getNickname());
+            writeString(out, user.getAvatar());
+            writeString(out, user.getEmail());
+            writeString(out, user.getPhoneNumber());
+            writeString(out, user.getSex());
+            writeString(out, user.getClientRole());
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("登录用户序列化失败", e);
+        }
+    }
+
+    private LoginUser deserializeLoginUser(byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            byte version = in.readByte();
+            if (version != LOGIN_USER_VERSION) {
+                throw new SerializationException("不支持的登录用户格式版本: " + version);
+            }
+            SysUser user = new SysUser();
+            user.setId(readLong(in));
+            Integer roleId = readInt(in);
+            String token = readString(in);
+            user.setRoleId(roleId);
+            user.setUsername(readString(in));
+            user.setNickname(readString(in));
+            user.setAvatar(readString(in));
+            user.setEmail(readString(in));
+            user.setPhoneNumber(readString(in));
+            user.setSex(readString(in));
+            user.setClientRole(readString(in));
+
+            LoginUser loginUser = new LoginUser(user, token);
+            loginUser.setRoleId(roleId);
+            return loginUser;
+        } catch (IOException e) {
+            throw new SerializationException("登录用户反序列化失败", e);
+        }
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
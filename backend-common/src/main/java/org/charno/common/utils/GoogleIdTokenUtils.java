@@ -0,0 +1,165 @@
+package org.charno.common.utils;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.http.javanet.DefaultConnectionFactory;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.charno.common.config.GoogleOAuth2Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Google ID Token 验证工具类
+ * 每种客户端类型（web/ios）持有一个长期存在的验证器，共享同一份Google公钥缓存。
+ * 公钥按响应的Cache-Control有效期缓存，并由后台线程在过期前刷新，登录请求无需等待证书下载。
+ * 公钥地址可配置，便于离线测试时指向本地证书服务。
+ *
+ * @author charno
+ */
+@Component
+public class GoogleIdTokenUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleIdTokenUtils.class);
+
+    /**
+     * 距公钥过期不足该时间时后台刷新（须大于GooglePublicKeysManager自身的5分钟刷新余量）
+     */
+    private static final long REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Value("${google.oauth2.public-certs-url:" + GoogleOAuthConstants.DEFAULT_PUBLIC_CERTS_ENCODED_URL + "}")
+    private String publicCertsUrl;
+
+    @Autowired
+    private GoogleOAuth2Config googleConfig;
+
+    private GooglePublicKeysManager publicKeysManager;
+
+    private GoogleIdTokenVerifier webVerifier;
+
+    private GoogleIdTokenVerifier iosVerifier;
+
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder keyFetches = new LongAdder();
+    private final LongAdder keyFetchFailures = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder verificationFailures = new LongAdder();
+
+    private volatile long lastKeyFetchTime;
+
+    @PostConstruct
+    public void init() {
+        // 统计所有证书请求（包括验证时的按需刷新）
+        DefaultConnectionFactory connectionFactory = new DefaultConnectionFactory() {
+            @Override
+            public HttpURLConnection openConnection(URL url) throws IOException {
+                keyFetches.increment();
+                lastKeyFetchTime = System.currentTimeMillis();
+                return super.openConnection(url);
+            }
+        };
+        NetHttpTransport transport = new NetHttpTransport.Builder()
+                .setConnectionFactory(connectionFactory)
+                .build();
+
+        initVerifiers(new GooglePublicKeysManager.Builder(transport, GsonFactory.getDefaultInstance())
+                .setPublicCertsEncodedUrl(publicCertsUrl)
+                .build());
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "google-certs-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 启动后立即预取，之后每分钟检查一次是否临近过期
+        refresher.scheduleWithFixedDelay(this::refreshIfNeeded, 0, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * 验证ID Token
+     *
+     * @param idToken    Google ID Token
+     * @param clientType 客户端类型（ios/web）
+     * @return 验证通过返回解析后的令牌，否则返回null
+     */
+    public GoogleIdToken verify(String idToken, String clientType) throws Exception {
+        verifications.increment();
+        GoogleIdToken token = getVerifier(clientType).verify(idToken);
+        if (token == null) {
+            verificationFailures.increment();
+        }
+        return token;
+    }
+
+    /**
+     * 公钥获取与验证统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("publicCertsUrl", publicCertsUrl);
+        stats.put("keyFetches", keyFetches.sum());
+        stats.put("keyFetchFailures", keyFetchFailures.sum());
+        stats.put("lastKeyFetchTime", lastKeyFetchTime);
+        stats.put("keysExpireAt", publicKeysManager.getExpirationTimeMilliseconds());
+        stats.put("verifications", verifications.sum());
+        stats.put("verificationFailures", verificationFailures.sum());
+        return stats;
+    }
+
+    /**
+     * 基于给定的公钥管理器创建web/ios验证器，测试中可传入本地公钥
+     */
+    void initVerifiers(GooglePublicKeysManager keysManager) {
+        publicKeysManager = keysManager;
+        webVerifier = new GoogleIdTokenVerifier.Builder(keysManager)
+                .setAudience(Collections.singletonList(googleConfig.getWebClientId()))
+                .build();
+        iosVerifier = new GoogleIdTokenVerifier.Builder(keysManager)
+                .setAudience(Collections.singletonList(googleConfig.getIosClientId()))
+                .build();
+    }
+
+    private GoogleIdTokenVerifier getVerifier(String clientType) {
+        return clientType != null && "ios".equalsIgnoreCase(clientType) ? iosVerifier : webVerifier;
+    }
+
+    private void refreshIfNeeded() {
+        long expiresAt = publicKeysManager.getExpirationTimeMilliseconds();
+        if (expiresAt - System.currentTimeMillis() > REFRESH_AHEAD_MILLIS) {
+            return;
+        }
+        try {
+            publicKeysManager.refresh();
+            logger.debug("Google公钥已刷新，过期时间: {}", publicKeysManager.getExpirationTimeMilliseconds());
+        } catch (Exception e) {
+            keyFetchFailures.increment();
+            logger.warn("刷新Google公钥失败: {}", e.getMessage());
+        }
+    }
+}
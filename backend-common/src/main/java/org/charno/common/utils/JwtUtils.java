@@ -1,30 +1,58 @@
 package org.charno.common.utils;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import jakarta.annotation.PostConstruct;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtUtils {
 
+    /**
+     * 请求/握手属性名：已验证的JWT声明，供后续处理复用
+     */
+    public static final String CLAIMS_ATTRIBUTE = "jwtClaims";
+
     @Value("${value.jwt-secret-key}")
     private String secretKey;
 
+    @Value("${value.jwt-verified-cache-size:10000}")
+    private int verifiedCacheSize;
+
     private static final long EXPIRATION_TIME = 30 * 60 * 1000; // 30分钟
 
     private SecretKey key;
 
+    /**
+     * 线程安全的解析器，启动时构建一次
+     */
+    private JwtParser parser;
+
+    /**
+     * 最近验证通过的JWT -> 声明（只读副本），避免同一令牌重复做HMAC校验
+     */
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(secretKey.getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
     }
 
     public String generateToken() {
@@ -40,24 +68,65 @@ public class JwtUtils {
                 .compact();
     }
 
+    /**
+     * 验证JWT并返回声明，验证失败或已过期返回null
+     * 每次返回独立的声明对象，调用方修改不会影响缓存或其他请求；
+     * 调用方可将结果放入请求/握手属性（CLAIMS_ATTRIBUTE），避免重复验证
+     */
+    public Claims verify(String jwt) {
+        if (jwt == null || jwt.isEmpty()) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        VerifiedToken verified = verifiedTokens.get(jwt);
+        if (verified != null) {
+            if (verified.expireAt > now) {
+                return new DefaultClaims(verified.claims);
+            }
+            verifiedTokens.remove(jwt, verified);
+        }
+
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(jwt).getBody();
+        } catch (Exception e) {
+            return null;
+        }
+
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            if (verifiedTokens.size() >= verifiedCacheSize) {
+                evict(now);
+            }
+            verifiedTokens.put(jwt, new VerifiedToken(
+                    Collections.unmodifiableMap(new LinkedHashMap<>(claims)), expiration.getTime()));
+        }
+        return claims;
+    }
+
     public String getTokenFromJwt(String jwt) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(jwt)
-                .getBody();
+        Claims claims = verify(jwt);
+        if (claims == null) {
+            // 保持原有行为：无效令牌抛出异常
+            return parser.parseClaimsJws(jwt).getBody().getSubject();
+        }
         return claims.getSubject();
     }
 
     public boolean validateToken(String jwt) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(jwt);
-            return true;
-        } catch (Exception e) {
-            return false;
+        return verify(jwt) != null;
+    }
+
+    private void evict(long now) {
+        verifiedTokens.values().removeIf(v -> v.expireAt <= now);
+        Iterator<String> iterator = verifiedTokens.keySet().iterator();
+        while (verifiedTokens.size() >= verifiedCacheSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
         }
     }
+
+    private record VerifiedToken(Map<String, Object> claims, long expireAt) {
+    }
 }
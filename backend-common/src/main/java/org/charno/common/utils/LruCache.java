@@ -0,0 +1,85 @@
+package org.charno.common.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带过期时间的LRU本地缓存
+ * 基于按访问顺序排列的LinkedHashMap，超出容量时淘汰最久未访问的一项，写入不扫描整个缓存；
+ * 过期项在读取时移除，未被读取的过期项随访问顺序最先被淘汰。
+ * 所有方法由this保护
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private long evictions;
+
+    public LruCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取未过期的值，未命中或已过期返回null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 放入缓存，有效期为构造时指定的TTL
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 移除指定键
+     *
+     * @return 是否存在该键
+     */
+    public synchronized boolean remove(K key) {
+        return entries.remove(key) != null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 因超出容量被淘汰的条目数
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    private record Entry<V>(V value, long expireAt) {
+    }
+}
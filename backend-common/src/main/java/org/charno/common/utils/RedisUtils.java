@@ -1,5 +1,8 @@
 package org.charno.common.utils;
 
+import org.charno.common.security.LoginUser;
+import org.charno.common.security.LoginUserCache;
+import org.charno.common.security.TokenRefreshCoalescer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
@@ -12,26 +15,56 @@ public class RedisUtils {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private LoginUserCache loginUserCache;
+
+    @Autowired
+    private TokenRefreshCoalescer tokenRefreshCoalescer;
+
     private static final String TOKEN_PREFIX = "reflip:login_token:";
     private static final long TOKEN_EXPIRE = 60 * 24 * 1; // 30分钟过期
 
     public void setLoginUser(String token, Object loginUser) {
         String key = TOKEN_PREFIX + token;
-        redisTemplate.opsForValue().set(key, loginUser, TOKEN_EXPIRE, TimeUnit.MINUTES);
+        // 本地缓存与Redis保存同一投影，命中哪一层得到的登录用户都相同
+        Object session = loginUser instanceof LoginUser user ? user.toSession() : loginUser;
+        redisTemplate.opsForValue().set(key, session, TOKEN_EXPIRE, TimeUnit.MINUTES);
+        tokenRefreshCoalescer.markRefreshed(key, TOKEN_EXPIRE);
+        if (session instanceof LoginUser user) {
+            loginUserCache.put(token, user);
+        }
     }
 
     public Object getLoginUser(String token) {
+        // 优先读取本地缓存
+        LoginUser cached = loginUserCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+
         String key = TOKEN_PREFIX + token;
-        return redisTemplate.opsForValue().get(key);
+        Object loginUser = redisTemplate.opsForValue().get(key);
+        if (loginUser instanceof LoginUser user) {
+            loginUserCache.put(token, user);
+        }
+        return loginUser;
     }
 
     public void deleteLoginUser(String token) {
         String key = TOKEN_PREFIX + token;
         redisTemplate.delete(key);
+        tokenRefreshCoalescer.forget(key);
+        // 失效本地缓存并通知其他节点
+        loginUserCache.invalidate(token);
     }
 
     public void refreshToken(String token) {
         String key = TOKEN_PREFIX + token;
+        if (tokenRefreshCoalescer.isCoalesced()) {
+            // 由后台线程合并续期
+            tokenRefreshCoalescer.requestRefresh(key, TOKEN_EXPIRE);
+            return;
+        }
         redisTemplate.expire(key, TOKEN_EXPIRE, TimeUnit.MINUTES);
     }
 }
@@ -37,6 +37,14 @@ public class SecurityUtils {
         return loginUser != null && loginUser.getUser() != null ? loginUser.getUser().getId() : null;
     }
 
+    /**
+     * 获取当前登录用户角色ID
+     */
+    public static Integer getRoleId() {
+        LoginUser loginUser = getLoginUser();
+        return loginUser != null ? loginUser.getRoleId() : null;
+    }
+
     /**
      * 获取当前登录用户名
      */
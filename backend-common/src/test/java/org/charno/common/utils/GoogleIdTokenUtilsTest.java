@@ -0,0 +1,100 @@
+package org.charno.common.utils;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import org.charno.common.config.GoogleOAuth2Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Google ID Token验证测试：令牌由本地密钥签名，公钥管理器返回对应的本地公钥，不访问网络
+ */
+class GoogleIdTokenUtilsTest {
+
+    private static final String WEB_CLIENT_ID = "web-client.apps.googleusercontent.com";
+    private static final String IOS_CLIENT_ID = "ios-client.apps.googleusercontent.com";
+
+    private KeyPair keyPair;
+
+    private GoogleIdTokenUtils googleIdTokenUtils;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        GooglePublicKeysManager keysManager = mock(GooglePublicKeysManager.class);
+        when(keysManager.getPublicKeys()).thenReturn(List.of(keyPair.getPublic()));
+        when(keysManager.getJsonFactory()).thenReturn(GsonFactory.getDefaultInstance());
+        GoogleOAuth2Config googleConfig = new GoogleOAuth2Config();
+        ReflectionTestUtils.setField(googleConfig, "webClientId", WEB_CLIENT_ID);
+        ReflectionTestUtils.setField(googleConfig, "iosClientId", IOS_CLIENT_ID);
+
+        googleIdTokenUtils = new GoogleIdTokenUtils();
+        ReflectionTestUtils.setField(googleIdTokenUtils, "googleConfig", googleConfig);
+        googleIdTokenUtils.initVerifiers(keysManager);
+    }
+
+    @Test
+    void tokenSignedWithKnownKeyIsAccepted() throws Exception {
+        GoogleIdToken token = googleIdTokenUtils.verify(sign(keyPair.getPrivate(), WEB_CLIENT_ID, 3600), "web");
+
+        assertNotNull(token);
+        assertEquals("109876543210987654321", token.getPayload().getSubject());
+        assertEquals("user@example.com", token.getPayload().getEmail());
+    }
+
+    @Test
+    void audienceIsCheckedPerClientType() throws Exception {
+        assertNotNull(googleIdTokenUtils.verify(sign(keyPair.getPrivate(), IOS_CLIENT_ID, 3600), "ios"));
+        assertNull(googleIdTokenUtils.verify(sign(keyPair.getPrivate(), IOS_CLIENT_ID, 3600), "web"));
+    }
+
+    @Test
+    void tokenSignedWithUnknownKeyIsRejected() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        PrivateKey otherKey = generator.generateKeyPair().getPrivate();
+
+        assertNull(googleIdTokenUtils.verify(sign(otherKey, WEB_CLIENT_ID, 3600), "web"));
+        assertEquals(1L, googleIdTokenUtils.getStats().get("verificationFailures"));
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws Exception {
+        assertNull(googleIdTokenUtils.verify(sign(keyPair.getPrivate(), WEB_CLIENT_ID, -3600), "web"));
+    }
+
+    private static String sign(PrivateKey privateKey, String audience, long expiresInSeconds) throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setType("JWT");
+        header.setKeyId("local-test-key");
+
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(audience);
+        payload.setSubject("109876543210987654321");
+        payload.setEmail("user@example.com");
+        payload.setEmailVerified(true);
+        payload.setIssuedAtTimeSeconds(Math.min(now, now + expiresInSeconds - 60));
+        payload.setExpirationTimeSeconds(now + expiresInSeconds);
+        return JsonWebSignature.signUsingRsaSha256(privateKey, GsonFactory.getDefaultInstance(), header, payload);
+    }
+}
@@ -0,0 +1,53 @@
+package org.charno.common.utils;
+
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * JWT验证与已验证缓存测试
+ */
+class JwtUtilsTest {
+
+    private JwtUtils jwtUtils;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "secretKey", "test-secret-key-test-secret-key-0123456789");
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 16);
+        jwtUtils.init();
+    }
+
+    @Test
+    void cachedClaimsAreNotSharedBetweenCallers() {
+        String jwt = jwtUtils.generateToken();
+        Claims first = jwtUtils.verify(jwt);
+        String subject = first.getSubject();
+        first.setSubject("tampered");
+        first.put("extra", 1);
+
+        Claims second = jwtUtils.verify(jwt);
+        Claims third = jwtUtils.verify(jwt);
+        assertNotSame(second, third);
+        assertEquals(subject, second.getSubject());
+        assertFalse(second.containsKey("extra"));
+
+        second.setSubject("tampered");
+        assertEquals(subject, third.getSubject());
+        assertEquals(subject, jwtUtils.getTokenFromJwt(jwt));
+    }
+
+    @Test
+    void invalidTokenIsRejected() {
+        String jwt = jwtUtils.generateToken();
+        assertNull(jwtUtils.verify(jwt.substring(0, jwt.length() - 2) + "xx"));
+        assertNull(jwtUtils.verify(""));
+    }
+}
@@ -0,0 +1,87 @@
+package org.charno.common.utils;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+
+/**
+ * JWT验证耗时对比：每次新建解析器、复用解析器与JwtUtils.verify（命中已验证缓存）
+ * 不是单元测试，不随构建运行。简单的预热加计时循环，只用于比较同一台机器上的相对开销：
+ * <pre>
+ * mvn -q -pl backend-common test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp backend-common/target/classes:backend-common/target/test-classes:$(cat backend-common/target/cp.txt) \
+ *     org.charno.common.utils.JwtVerifyBenchmark
+ * </pre>
+ */
+public class JwtVerifyBenchmark {
+
+    private static final String SECRET_KEY = "benchmark-secret-key-benchmark-secret-key-0123456789";
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int ROUNDS = 5;
+
+    private static final int ITERATIONS = 20_000;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        JwtUtils jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "secretKey", SECRET_KEY);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 10_000);
+        jwtUtils.init();
+        SecretKey key = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+        JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+        String jwt = jwtUtils.generateToken();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRebuild(key, jwt);
+            runParse(parser, jwt);
+            runVerify(jwtUtils, jwt);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            report("rebuild+parse", runRebuild(key, jwt));
+            report("parse", runParse(parser, jwt));
+            report("verify", runVerify(jwtUtils, jwt));
+        }
+        // 输出累计值，防止JIT消除验证调用
+        System.out.println("checksum: " + sink);
+    }
+
+    /**
+     * 优化前的做法：每次验证都新建解析器并验签
+     */
+    private static long runRebuild(SecretKey key, String jwt) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += Jwts.parserBuilder()
+                    .setSigningKey(key)
+                    .build()
+                    .parseClaimsJws(jwt).getBody().getSubject().length();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runParse(JwtParser parser, String jwt) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += parser.parseClaimsJws(jwt).getBody().getSubject().length();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runVerify(JwtUtils jwtUtils, String jwt) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jwtUtils.verify(jwt).getSubject().length();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("%-14s %8.1f ns/op%n", name, (double) nanos / ITERATIONS);
+    }
+}
@@ -0,0 +1,60 @@
+package org.charno.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LRU本地缓存测试
+ */
+class LruCacheTest {
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        LruCache<String, Integer> cache = new LruCache<>(2, 60_000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // 访问a后b成为最久未访问的一项
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    void updatingExistingKeyDoesNotEvict() {
+        LruCache<String, Integer> cache = new LruCache<>(2, 60_000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("a", 10);
+
+        assertEquals(10, cache.get("a"));
+        assertEquals(2, cache.get("b"));
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    void expiredEntryIsRemovedOnRead() {
+        LruCache<String, Integer> cache = new LruCache<>(2, -1);
+        cache.put("a", 1);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void removeReportsWhetherKeyExisted() {
+        LruCache<String, Integer> cache = new LruCache<>(2, 60_000);
+        cache.put("a", 1);
+
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+    }
+}
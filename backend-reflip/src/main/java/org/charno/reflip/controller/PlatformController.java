@@ -2,9 +2,13 @@ package org.charno.reflip.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.charno.common.annotation.RequireRoles;
 import org.charno.common.core.R;
 import org.charno.reflip.dto.AuditReturnRequestDto;
 import org.charno.reflip.service.IPlatformService;
+import org.charno.reflip.support.ProductSearchCache;
+
+import java.util.Map;
 
 /**
  * 平台管理控制器
@@ -17,6 +21,9 @@ public class PlatformController {
     @Autowired
     private IPlatformService platformService;
     
+    @Autowired
+    private ProductSearchCache productSearchCache;
+    
     /**
      * 审批退货申请
      * @param auditRequest 审批请求数据
@@ -82,4 +89,13 @@ public class PlatformController {
             return R.fail("系统错误: " + e.getMessage());
         }
     }
+    
+    /**
+     * 访客商品搜索结果缓存统计（命中率、失效次数等）
+     */
+    @GetMapping("/metrics/search-cache")
+    @RequireRoles("super_admin")
+    public R<Map<String, Object>> getSearchCacheStats() {
+        return R.ok(productSearchCache.getStats());
+    }
 } 
\ No newline at end of file
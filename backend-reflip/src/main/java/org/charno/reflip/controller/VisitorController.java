@@ -5,7 +5,7 @@ import org.springframework.web.bind.annotation.*;
 import org.charno.reflip.entity.RfProduct;
 import org.charno.reflip.service.IVisitorService;
 import org.charno.system.service.ISysUserService;
-import org.charno.common.entity.SysUser;
+import org.charno.common.dto.PublicUserProfile;
 import org.charno.common.core.R;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 
@@ -32,6 +32,9 @@ public class VisitorController {
      * @param minPrice 最低价格
      * @param maxPrice 最高价格
      * @param sortBy 排序方式 (recommended, price_asc, price_desc, distance, condition)
+     * @param latitude 用户所在纬度（distance排序需要）
+     * @param longitude 用户所在经度（distance排序需要）
+     * @param radiusKm 搜索半径，单位公里（可选）
      * @param page 页码 (默认1)
      * @param size 每页大小 (默认10)
      * @return 搜索结果
@@ -44,11 +47,14 @@ public class VisitorController {
             @RequestParam(required = false) Double minPrice,
             @RequestParam(required = false) Double maxPrice,
             @RequestParam(defaultValue = "recommended") String sortBy,
+            @RequestParam(required = false) Double latitude,
+            @RequestParam(required = false) Double longitude,
+            @RequestParam(required = false) Double radiusKm,
             @RequestParam(defaultValue = "1") Integer page,
             @RequestParam(defaultValue = "10") Integer size) {
         try {
             Page<RfProduct> result = visitorService.searchProducts(
-                keyword, type, category, minPrice, maxPrice, sortBy, page, size
+                keyword, type, category, minPrice, maxPrice, sortBy, latitude, longitude, radiusKm, page, size
             );
             return R.ok(result, "Products retrieved successfully");
         } catch (Exception e) {
@@ -98,9 +104,9 @@ public class VisitorController {
      * @return 用户公开信息
      */
     @GetMapping("/user/{userId}")
-    public R<SysUser> getUserInfo(@PathVariable Long userId) {
+    public R<PublicUserProfile> getUserInfo(@PathVariable Long userId) {
         try {
-            SysUser user = sysUserService.getPublicUserInfo(userId);
+            PublicUserProfile user = sysUserService.getPublicProfile(userId);
             if (user != null) {
                 return R.ok(user, "User information retrieved successfully");
             } else {
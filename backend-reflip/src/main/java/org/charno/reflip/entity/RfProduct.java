@@ -7,7 +7,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import lombok.Data;
-import org.charno.common.entity.SysUser;
+import org.charno.common.dto.PublicUserProfile;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -25,7 +25,11 @@ public class RfProduct {
     
     // 用户信息（不存储在数据库中，仅用于返回结果）
     @TableField(exist = false)
-    private SysUser userInfo;
+    private PublicUserProfile userInfo;
+
+    // 与搜索位置的距离（米），仅按位置搜索时返回
+    @TableField(exist = false)
+    private Double distance;
     
     private String name;
     
@@ -1,7 +1,12 @@
 package org.charno.reflip.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.charno.reflip.entity.RfProduct;
 
 /**
@@ -9,4 +14,40 @@ import org.charno.reflip.entity.RfProduct;
  */
 @Mapper
 public interface RfProductMapper extends BaseMapper<RfProduct> {
+
+    /**
+     * 商品实体对应的列，不包含检索用的search_tsv
+     */
+    String PRODUCT_COLUMNS = "id, user_id, name, category_id, type, category, price, stock, description, " +
+            "image_url_json, is_auction, warehouse_id, warehouse_stock_id, address, is_self_pickup, status, " +
+            "create_time, update_time, is_delete";
+
+    /**
+     * 按条件分页查询商品，条件中可以使用全文检索、三元组和earthdistance运算符
+     * 传入latitude/longitude时返回与该位置的大圆距离（米）；orderByDistance为true时按距离由近到远排序（命中位置索引的KNN扫描），
+     * 否则传入rankKeyword时按相关度排序（全文检索得分加名称相似度）。使用这两种排序时条件中不应再包含排序。
+     * 调用方需关闭page的自动计数，查询条件需自行包含is_delete
+     */
+    @Select("<script>" +
+            "SELECT " + PRODUCT_COLUMNS +
+            "<if test='latitude != null and longitude != null'>" +
+            ", earth_distance(ll_to_earth(latitude, longitude), ll_to_earth(#{latitude}, #{longitude})) AS distance" +
+            "</if>" +
+            " FROM rf_product ${ew.customSqlSegment}" +
+            "<choose>" +
+            "<when test='orderByDistance and latitude != null and longitude != null'>" +
+            " ORDER BY ll_to_earth(latitude, longitude) &lt;-&gt; ll_to_earth(#{latitude}, #{longitude}), id" +
+            "</when>" +
+            "<when test='rankKeyword != null'>" +
+            " ORDER BY ts_rank_cd(search_tsv, websearch_to_tsquery('english', #{rankKeyword})) " +
+            "+ word_similarity(#{rankKeyword}, name) DESC, create_time DESC, id DESC" +
+            "</when>" +
+            "</choose>" +
+            "</script>")
+    Page<RfProduct> selectSearchPage(Page<RfProduct> page,
+                                     @Param(Constants.WRAPPER) Wrapper<RfProduct> wrapper,
+                                     @Param("rankKeyword") String rankKeyword,
+                                     @Param("latitude") Double latitude,
+                                     @Param("longitude") Double longitude,
+                                     @Param("orderByDistance") boolean orderByDistance);
 } 
\ No newline at end of file
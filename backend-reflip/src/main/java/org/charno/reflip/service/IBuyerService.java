@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.charno.reflip.entity.RfProductSellRecord;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 买家业务接口
@@ -27,6 +28,14 @@ public interface IBuyerService {
      */
     boolean isProductLocked(Long productId);
 
+    /**
+     * 获取当前被锁定的全部商品及其锁过期时间
+     * 一次Redis查询，用于搜索时在分页前排除锁定商品，过期时间决定搜索结果缓存的有效期
+     * 
+     * @return 锁定中的商品ID -> 锁过期时间（毫秒时间戳）
+     */
+    Map<Long, Long> getLockedProducts();
+
     /**
      * 解锁商品
      * 提前释放商品锁定
@@ -19,12 +19,16 @@ public interface IVisitorService {
      * @param minPrice 最低价格
      * @param maxPrice 最高价格
      * @param sortBy 排序方式
+     * @param latitude 用户所在纬度，与经度同时提供时按位置搜索并返回距离
+     * @param longitude 用户所在经度
+     * @param radiusKm 搜索半径（公里），为空时不限距离
      * @param page 页码
      * @param size 每页大小
      * @return 分页搜索结果
      */
     Page<RfProduct> searchProducts(String keyword, String type, String category, 
                                  Double minPrice, Double maxPrice, String sortBy, 
+                                 Double latitude, Double longitude, Double radiusKm,
                                  Integer page, Integer size);
 
     /**
@@ -3,6 +3,8 @@ package org.charno.reflip.service.impl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.charno.reflip.entity.RfProduct;
@@ -21,6 +23,7 @@ import org.charno.reflip.service.IWarehouseService;
 import org.charno.reflip.service.IRfProductReturnRecordService;
 import org.charno.reflip.service.IRfBalanceDetailService;
 import org.charno.reflip.service.BalanceService;
+import org.charno.reflip.support.ProductSearchCache;
 import org.charno.common.utils.SecurityUtils;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -38,7 +41,10 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.List;
 
@@ -56,6 +62,12 @@ public class BuyerServiceImpl implements IBuyerService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ProductSearchCache productSearchCache;
+
     @Autowired
     private IRfProductSellRecordService rfProductSellRecordService;
 
@@ -93,6 +105,12 @@ public class BuyerServiceImpl implements IBuyerService {
     private static final String PRODUCT_LOCK_PREFIX = "reflip:product_lock:";
     private static final long LOCK_EXPIRE_TIME = 60; // 2分钟，单位：秒
 
+    /**
+     * 锁定商品索引：有序集合，成员为商品ID，分数为锁过期时间（毫秒时间戳）
+     * 分数已过期的成员视为未锁定，在下次加锁时清理，因此无需监听键过期事件
+     */
+    private static final String PRODUCT_LOCK_INDEX_KEY = "reflip:product_lock_index";
+
     @Override
     public boolean lockProduct(Long productId) {
         if (productId == null) {
@@ -120,7 +138,13 @@ public class BuyerServiceImpl implements IBuyerService {
                 LOCK_EXPIRE_TIME,
                 TimeUnit.SECONDS);
 
-        return lockResult != null && lockResult;
+        boolean locked = lockResult != null && lockResult;
+        if (locked) {
+            indexLock(productId);
+            // 搜索结果缓存的是排除锁定商品后的分页，锁变化时失效
+            productSearchCache.onProductChanged(productId, "LOCKED");
+        }
+        return locked;
     }
 
     @Override
@@ -133,6 +157,36 @@ public class BuyerServiceImpl implements IBuyerService {
         return redisTemplate.hasKey(lockKey);
     }
 
+    @Override
+    public Map<Long, Long> getLockedProducts() {
+        Set<ZSetOperations.TypedTuple<String>> members = stringRedisTemplate.opsForZSet().rangeByScoreWithScores(
+                PRODUCT_LOCK_INDEX_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Long> locks = new HashMap<>(members.size() * 2);
+        for (ZSetOperations.TypedTuple<String> member : members) {
+            if (member.getValue() != null && member.getScore() != null) {
+                locks.put(Long.valueOf(member.getValue()), member.getScore().longValue());
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * 将锁加入索引并清理已过期的成员；索引仅用于搜索过滤，失败时不影响加锁结果
+     */
+    private void indexLock(Long productId) {
+        long now = System.currentTimeMillis();
+        try {
+            stringRedisTemplate.opsForZSet().add(PRODUCT_LOCK_INDEX_KEY, productId.toString(),
+                    now + TimeUnit.SECONDS.toMillis(LOCK_EXPIRE_TIME));
+            stringRedisTemplate.opsForZSet().removeRangeByScore(PRODUCT_LOCK_INDEX_KEY, 0, now);
+        } catch (Exception e) {
+            log.warn("更新商品锁索引失败: productId={}, {}", productId, e.getMessage());
+        }
+    }
+
     @Override
     public boolean unlockProduct(Long productId) {
         if (productId == null) {
@@ -151,6 +205,13 @@ public class BuyerServiceImpl implements IBuyerService {
         // 只有锁定者本人才能解锁
         if (lockValue != null && lockValue.toString().equals(userId.toString())) {
             redisTemplate.delete(lockKey);
+            try {
+                stringRedisTemplate.opsForZSet().remove(PRODUCT_LOCK_INDEX_KEY, productId.toString());
+            } catch (Exception e) {
+                // 索引成员会在锁过期时间后自动视为未锁定
+                log.warn("移除商品锁索引失败: productId={}, {}", productId, e.getMessage());
+            }
+            productSearchCache.onProductChanged(productId, "UNLOCKED");
             return true;
         }
 
@@ -239,6 +300,7 @@ public class BuyerServiceImpl implements IBuyerService {
             if (!productUpdated) {
                 throw new RuntimeException("Failed to update product status");
             }
+            productSearchCache.onProductChanged(productId, "SOLD");
 
             // 2. 创建销售记录
             RfProductSellRecord sellRecord = new RfProductSellRecord();
@@ -322,6 +384,7 @@ public class BuyerServiceImpl implements IBuyerService {
             if (!productUpdated) {
                 throw new RuntimeException("Failed to update product status");
             }
+            productSearchCache.onProductChanged(productId, "SOLD");
 
             // 3. 创建销售记录
             RfProductSellRecord sellRecord = new RfProductSellRecord();
@@ -11,6 +11,7 @@ import org.charno.reflip.service.IRfProductSellRecordService;
 import org.charno.reflip.service.IRfProductReturnRecordService;
 import org.charno.reflip.service.IRfProductReturnToSellerService;
 import org.charno.reflip.service.IWarehouseService;
+import org.charno.reflip.support.ProductSearchCache;
 import org.charno.reflip.entity.RfInternalLogisticsTask;
 import org.charno.reflip.entity.RfProductAuctionLogistics;
 import org.charno.reflip.entity.RfProduct;
@@ -47,6 +48,9 @@ public class CourierServiceImpl implements CourierService {
     @Autowired
     private IWarehouseService warehouseService;
     
+    @Autowired
+    private ProductSearchCache productSearchCache;
+    
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -219,6 +223,7 @@ public class CourierServiceImpl implements CourierService {
                 if (product != null) {
                     product.setStatus("LISTED");
                     rfProductService.updateById(product);
+                    productSearchCache.onProductChanged(product.getId(), "LISTED");
 
                     // 商品入库
                     boolean warehouseInResult = warehouseService.warehouseIn(task.getProductId(), "PICKUP_SERVICE");
@@ -366,6 +371,7 @@ public class CourierServiceImpl implements CourierService {
                     if (!productUpdated) {
                         return false;
                     }
+                    productSearchCache.onProductChanged(product.getId(), "LISTED");
                 }
             }
 
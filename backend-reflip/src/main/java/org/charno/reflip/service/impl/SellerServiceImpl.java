@@ -1,6 +1,7 @@
 package org.charno.reflip.service.impl;
 
 import org.charno.system.mapper.SysUserStripeAccountMapper;
+import org.charno.reflip.support.ProductSearchCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -81,6 +82,9 @@ public class SellerServiceImpl implements ISellerService {
     @Autowired
     private IRfProductReturnToSellerService rfProductReturnToSellerService;
 
+    @Autowired
+    private ProductSearchCache productSearchCache;
+
     @Value("${stripe.secret-key}")
     private String stripeSecretKey;
 
@@ -366,6 +370,7 @@ public class SellerServiceImpl implements ISellerService {
         if (!success) {
             throw new RuntimeException("保存商品失败");
         }
+        productSearchCache.onProductChanged(rfProduct.getId(), "LISTED");
 
         log.info("自提商品上架成功 - 商品ID: {} | 用户ID: {} | 商品名称: {}", 
             rfProduct.getId(), userId, rfProduct.getName());
@@ -1052,6 +1057,7 @@ public class SellerServiceImpl implements ISellerService {
             if (!productUpdated) {
                 throw new RuntimeException("Failed to update product status");
             }
+            productSearchCache.onProductChanged(productId, "RETURNED_TO_SELLER");
 
             // 创建商品退回卖家记录
             RfProductReturnToSeller returnToSellerRecord = createReturnToSellerRecord(product, returnAddress);
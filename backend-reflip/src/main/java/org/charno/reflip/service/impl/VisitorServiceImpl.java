@@ -1,20 +1,30 @@
 package org.charno.reflip.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.charno.reflip.entity.RfProduct;
+import org.charno.reflip.mapper.RfProductMapper;
 import org.charno.reflip.service.IVisitorService;
 import org.charno.reflip.service.IBuyerService;
 import org.charno.reflip.service.IRfProductService;
+import org.charno.reflip.support.ProductSearchCache;
 import org.charno.system.service.ISysUserService;
-import org.charno.common.entity.SysUser;
+import org.charno.common.dto.PublicUserProfile;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +33,10 @@ import java.util.stream.Collectors;
 @Service
 public class VisitorServiceImpl implements IVisitorService {
 
+    private static final Logger log = LoggerFactory.getLogger(VisitorServiceImpl.class);
+
+    private static final String SEARCH_ENGINE_FULLTEXT = "fulltext";
+
     @Autowired
     private IRfProductService rfProductService;
     
@@ -31,11 +45,39 @@ public class VisitorServiceImpl implements IVisitorService {
     
     @Autowired
     private IBuyerService buyerService;
+    
+    @Autowired
+    private RfProductMapper rfProductMapper;
+    
+    @Autowired
+    private ProductSearchCache productSearchCache;
+    
+    /**
+     * 商品搜索引擎：fulltext（PostgreSQL全文检索，需执行sql/create_rf_product_search.sql）或 like
+     */
+    @Value("${value.product-search.engine:fulltext}")
+    private String searchEngine;
 
     @Override
     public Page<RfProduct> searchProducts(String keyword, String type, String category,
                                         Double minPrice, Double maxPrice, String sortBy,
+                                        Double latitude, Double longitude, Double radiusKm,
                                         Integer page, Integer size) {
+        // 位置搜索的参数组合过于分散且结果包含距离，不缓存
+        boolean cacheable = latitude == null || longitude == null;
+        ProductSearchCache.SearchKey cacheKey = null;
+        long cacheGeneration = 0;
+        if (cacheable) {
+            // 全文检索不区分大小写，LIKE区分大小写，只有前者可以合并大小写不同的关键词
+            boolean foldCase = SEARCH_ENGINE_FULLTEXT.equalsIgnoreCase(searchEngine);
+            cacheKey = productSearchCache.key(keyword, foldCase, type, category, minPrice, maxPrice, sortBy, page, size);
+            ProductSearchCache.Entry cached = productSearchCache.get(cacheKey);
+            if (cached != null) {
+                return hydrate(cached, page, size);
+            }
+            cacheGeneration = productSearchCache.currentGeneration();
+        }
+        
         // 创建分页对象
         Page<RfProduct> pageInfo = new Page<>(page, size);
         
@@ -45,8 +87,14 @@ public class VisitorServiceImpl implements IVisitorService {
         // 只查询已上架且未删除的商品
         queryWrapper.eq("status", "LISTED");
         
-        // 关键词搜索 - 在商品名称和描述中搜索
-        if (StringUtils.hasText(keyword)) {
+        // 关键词搜索
+        boolean fullText = StringUtils.hasText(keyword) && SEARCH_ENGINE_FULLTEXT.equalsIgnoreCase(searchEngine);
+        if (fullText) {
+            // 加权全文检索（名称、类别、描述），名称三元组相似度兜底拼写错误
+            queryWrapper.eq("is_delete", false)
+                       .apply("(search_tsv @@ websearch_to_tsquery('english', {0}) OR {0} <% name)", keyword.strip());
+        } else if (StringUtils.hasText(keyword)) {
+            // 在商品名称和描述中模糊搜索
             queryWrapper.and(wrapper -> wrapper
                 .like("name", keyword)
                 .or()
@@ -72,39 +120,159 @@ public class VisitorServiceImpl implements IVisitorService {
             queryWrapper.le("price", BigDecimal.valueOf(maxPrice));
         }
         
-        // 排序处理
-        applySorting(queryWrapper, sortBy);
-        
-        // 执行分页查询
-        Page<RfProduct> result = rfProductService.page(pageInfo, queryWrapper);
-        
-        // 过滤被锁定的商品，但保持原有的total值以维持正确的分页逻辑
-        List<RfProduct> filteredProducts = result.getRecords().stream()
-            .filter(product -> !buyerService.isProductLocked(product.getId()))
-            .collect(Collectors.toList());
-        
-        // 更新结果 - 只更新records，保持原有的total、pages等分页信息
-        result.setRecords(filteredProducts);
-        // 注意：不修改total值，保持分页逻辑正确
-        
-        // 为每个商品填充用户信息
-        for (RfProduct product : result.getRecords()) {
-            if (product.getUserId() != null) {
-                SysUser userInfo = sysUserService.getById(product.getUserId());
-                if (userInfo != null) {
-                    // 清空敏感信息
-                    userInfo.setPassword(null);
-                    userInfo.setWechatOpenId(null);
-                    userInfo.setGoogleSub(null);
-                    userInfo.setAppleSub(null);
-                    product.setUserInfo(userInfo);
-                }
+        // 位置筛选：按距离排序或指定半径时只保留有坐标的商品，其余排序方式下没有坐标的商品照常返回（距离为空）；
+        // 指定半径时先用球面外接框命中位置索引，再按大圆距离精确过滤
+        boolean nearby = latitude != null && longitude != null;
+        if (nearby) {
+            validateCoordinates(latitude, longitude);
+            queryWrapper.eq("is_delete", false);
+            boolean withinRadius = radiusKm != null && radiusKm > 0;
+            if (withinRadius || "distance".equalsIgnoreCase(sortBy)) {
+                queryWrapper.isNotNull("latitude");
+            }
+            if (withinRadius) {
+                double radiusMeters = radiusKm * 1000;
+                queryWrapper.apply("earth_box(ll_to_earth({0}, {1}), {2}) @> ll_to_earth(latitude, longitude)",
+                                   latitude, longitude, radiusMeters)
+                           .apply("earth_distance(ll_to_earth({0}, {1}), ll_to_earth(latitude, longitude)) <= {2}",
+                                   latitude, longitude, radiusMeters);
             }
         }
         
+        // 在分页前排除被锁定的商品，保证每页条数和总数准确；锁变化时搜索结果缓存失效
+        // 锁定集合在失效代数之后读取，读取后发生的锁变化会使本次结果不被缓存
+        Map<Long, Long> lockedProducts = getLockedProducts();
+        if (lockedProducts != null && !lockedProducts.isEmpty()) {
+            queryWrapper.notIn("id", lockedProducts.keySet());
+        }
+        
+        Page<RfProduct> result;
+        if (fullText || nearby) {
+            result = searchWithExpressions(pageInfo, queryWrapper, fullText ? keyword.strip() : null,
+                                           nearby ? latitude : null, nearby ? longitude : null, sortBy);
+        } else {
+            // 排序处理
+            applySorting(queryWrapper, sortBy);
+            
+            // 执行分页查询
+            result = rfProductService.page(pageInfo, queryWrapper);
+        }
+        
+        // 锁定集合不可用时结果未排除锁定商品，不缓存
+        if (cacheable && lockedProducts != null) {
+            List<Long> productIds = result.getRecords().stream()
+                .map(RfProduct::getId)
+                .collect(Collectors.toList());
+            long validUntil = lockedProducts.values().stream()
+                .mapToLong(Long::longValue)
+                .min()
+                .orElse(Long.MAX_VALUE);
+            productSearchCache.put(cacheKey, productIds, result.getTotal(), cacheGeneration, validUntil);
+        }
+        
+        fillSellerProfiles(result.getRecords());
+        return result;
+    }
+
+    /**
+     * 由缓存的商品ID列表组装分页结果：按ID批量加载商品，保持原有顺序，跳过已不在售的商品
+     */
+    private Page<RfProduct> hydrate(ProductSearchCache.Entry cached, Integer page, Integer size) {
+        List<RfProduct> records = new ArrayList<>(cached.productIds().size());
+        if (!cached.productIds().isEmpty()) {
+            Map<Long, RfProduct> products = rfProductService.listByIds(cached.productIds()).stream()
+                .collect(Collectors.toMap(RfProduct::getId, Function.identity()));
+            for (Long productId : cached.productIds()) {
+                RfProduct product = products.get(productId);
+                if (product != null && "LISTED".equals(product.getStatus())) {
+                    records.add(product);
+                }
+            }
+        }
+        Page<RfProduct> result = new Page<>(page, size, cached.total());
+        result.setRecords(records);
+        fillSellerProfiles(records);
         return result;
     }
 
+    /**
+     * 批量填充卖家公开资料
+     */
+    private void fillSellerProfiles(List<RfProduct> products) {
+        Set<Long> sellerIds = products.stream()
+            .map(RfProduct::getUserId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        if (sellerIds.isEmpty()) {
+            return;
+        }
+        Map<Long, PublicUserProfile> profiles = sysUserService.getPublicProfiles(sellerIds);
+        for (RfProduct product : products) {
+            product.setUserInfo(profiles.get(product.getUserId()));
+        }
+    }
+
+    /**
+     * 获取锁定中的商品及锁过期时间；锁索引不可用时返回null，搜索不过滤锁定商品，购买时仍由商品锁本身保证互斥
+     */
+    private Map<Long, Long> getLockedProducts() {
+        try {
+            return buyerService.getLockedProducts();
+        } catch (Exception e) {
+            log.warn("获取锁定商品失败，搜索结果不排除锁定商品: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 全文检索/位置搜索分页查询
+     * 分页插件无法解析全文检索、三元组和earthdistance运算符，总数单独查询（不含排序）；
+     * 有位置时按距离排序，有关键词且为推荐排序时按相关度排序，其余排序方式不变
+     */
+    private Page<RfProduct> searchWithExpressions(Page<RfProduct> pageInfo, QueryWrapper<RfProduct> queryWrapper,
+                                                  String keyword, Double latitude, Double longitude, String sortBy) {
+        pageInfo.setSearchCount(false);
+        pageInfo.setTotal(rfProductMapper.selectCount(queryWrapper));
+        if (pageInfo.getTotal() == 0) {
+            return pageInfo;
+        }
+        
+        boolean orderByDistance = latitude != null && "distance".equalsIgnoreCase(sortBy);
+        String rankKeyword = null;
+        if (!orderByDistance) {
+            if (keyword != null && isRelevanceSort(sortBy)) {
+                rankKeyword = keyword;
+            } else {
+                applySorting(queryWrapper, sortBy);
+            }
+        }
+        return rfProductMapper.selectSearchPage(pageInfo, queryWrapper, rankKeyword, latitude, longitude, orderByDistance);
+    }
+
+    private void validateCoordinates(Double latitude, Double longitude) {
+        if (latitude < -90 || latitude > 90) {
+            throw new IllegalArgumentException("Latitude must be between -90 and 90");
+        }
+        if (longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Longitude must be between -180 and 180");
+        }
+    }
+
+    /**
+     * 是否为推荐排序（与applySorting的默认分支一致）
+     */
+    private boolean isRelevanceSort(String sortBy) {
+        switch (sortBy.toLowerCase()) {
+            case "price_asc":
+            case "price_desc":
+            case "distance":
+            case "condition":
+                return false;
+            default:
+                return true;
+        }
+    }
+
     /**
      * 应用排序规则
      */
@@ -117,7 +285,7 @@ public class VisitorServiceImpl implements IVisitorService {
                 queryWrapper.orderByDesc("price");
                 break;
             case "distance":
-                // TODO: 实现距离排序，需要用户位置信息
+                // 未提供用户位置时无法按距离排序，按创建时间排序
                 queryWrapper.orderByDesc("create_time");
                 break;
             case "condition":
@@ -164,17 +332,9 @@ public class VisitorServiceImpl implements IVisitorService {
         
         RfProduct product = rfProductService.getOne(queryWrapper);
         
-        // 填充用户信息
+        // 填充卖家公开资料
         if (product != null && product.getUserId() != null) {
-            SysUser userInfo = sysUserService.getById(product.getUserId());
-            if (userInfo != null) {
-                // 清空敏感信息
-                userInfo.setPassword(null);
-                userInfo.setWechatOpenId(null);
-                userInfo.setGoogleSub(null);
-                userInfo.setAppleSub(null);
-                product.setUserInfo(userInfo);
-            }
+            product.setUserInfo(sysUserService.getPublicProfile(product.getUserId()));
         }
         
         return product;
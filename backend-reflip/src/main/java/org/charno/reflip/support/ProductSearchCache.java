@@ -0,0 +1,205 @@
+package org.charno.reflip.support;
+
+import org.charno.common.utils.TransactionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 访客商品搜索结果缓存
+ * 按规范化的搜索参数缓存每页的商品ID列表（已在分页前排除锁定中的商品）和总数，
+ * 商品内容和卖家资料在命中后另行加载。
+ * 商品上架、售出、退回卖家以及加锁、解锁时清空全部结果（任何一页都可能受影响），并通过Redis发布订阅通知其他节点；
+ * 锁到期自动释放没有通知，结果的有效期不超过查询时最早到期的锁；其余变化（如价格修改）最迟在TTL到期后生效
+ */
+@Component
+public class ProductSearchCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchCache.class);
+
+    /**
+     * 失效广播频道
+     */
+    private static final String INVALIDATE_CHANNEL = "reflip:product_search:invalidate";
+
+    @Value("${value.product-search.cache.max-size:2000}")
+    private int maxSize;
+
+    @Value("${value.product-search.cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final Map<SearchKey, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 每次失效递增，失效前开始的查询结果不再写入缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 构造规范化的缓存键：关键词去除首尾空白、合并连续空白，无效的价格条件视为未设置
+     *
+     * @param foldCase 搜索是否不区分大小写，是时关键词转为小写，使大小写不同的关键词共用结果
+     */
+    public SearchKey key(String keyword, boolean foldCase, String type, String category, Double minPrice,
+                         Double maxPrice, String sortBy, Integer page, Integer size) {
+        String normalizedKeyword = keyword == null ? null : keyword.strip().replaceAll("\\s+", " ");
+        if (normalizedKeyword != null && foldCase) {
+            normalizedKeyword = normalizedKeyword.toLowerCase(Locale.ROOT);
+        }
+        return new SearchKey(
+                normalizedKeyword == null || normalizedKeyword.isEmpty() ? null : normalizedKeyword,
+                type == null || type.isBlank() ? null : type,
+                category == null || category.isBlank() ? null : category,
+                minPrice != null && minPrice > 0 ? minPrice : null,
+                maxPrice != null && maxPrice > 0 ? maxPrice : null,
+                sortBy == null ? null : sortBy.toLowerCase(Locale.ROOT),
+                page, size);
+    }
+
+    /**
+     * 当前失效代数，查询前获取，写入缓存时传回
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * 获取缓存的搜索结果，未命中或已过期返回null
+     */
+    public Entry get(SearchKey key) {
+        Entry entry = cache.get(key);
+        if (entry == null || entry.expireAt < System.currentTimeMillis() || entry.generation != generation.get()) {
+            if (entry != null) {
+                cache.remove(key, entry);
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * 写入搜索结果；查询期间发生过失效时丢弃
+     *
+     * @param validUntil 结果最晚有效到该时间（毫秒时间戳），即查询时排除的锁中最早的到期时间
+     */
+    public void put(SearchKey key, List<Long> productIds, long total, long queryGeneration, long validUntil) {
+        if (queryGeneration != generation.get()) {
+            return;
+        }
+        long expireAt = Math.min(System.currentTimeMillis() + ttlSeconds * 1000, validUntil);
+        if (expireAt <= System.currentTimeMillis()) {
+            return;
+        }
+        if (cache.size() >= maxSize && !cache.containsKey(key)) {
+            evict();
+        }
+        cache.put(key, new Entry(List.copyOf(productIds), total, expireAt, queryGeneration));
+    }
+
+    /**
+     * 商品状态变化（上架、售出、退回卖家）或商品锁变化，事务提交后失效全部结果并通知其他节点
+     */
+    public void onProductChanged(Long productId, String reason) {
+        TransactionUtils.runAfterCommit(() -> {
+            logger.debug("商品变化，清空搜索结果缓存 - 商品ID: {} | 原因: {}", productId, reason);
+            invalidateLocal();
+            try {
+                stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, String.valueOf(productId));
+            } catch (Exception e) {
+                // 其他节点最迟在本地TTL到期后失效
+                logger.warn("广播搜索结果缓存失效消息失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidateLocal();
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private void invalidateLocal() {
+        generation.incrementAndGet();
+        cache.clear();
+        invalidations.increment();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        long current = generation.get();
+        cache.entrySet().removeIf(e -> e.getValue().expireAt < now || e.getValue().generation != current);
+        Iterator<SearchKey> iterator = cache.keySet().iterator();
+        while (cache.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 规范化的搜索参数
+     */
+    public record SearchKey(String keyword, String type, String category, Double minPrice, Double maxPrice,
+                            String sortBy, Integer page, Integer size) {
+    }
+
+    /**
+     * 一页搜索结果：商品ID（按结果顺序，已排除锁定中的商品）和总数
+     */
+    public record Entry(List<Long> productIds, long total, long expireAt, long generation) {
+    }
+}
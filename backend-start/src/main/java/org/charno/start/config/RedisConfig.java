@@ -1,25 +1,33 @@
 package org.charno.start.config;
 
+import org.charno.common.utils.CompactRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                       @Value("${value.redis.value-format:compact}") String valueFormat) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(connectionFactory);
 
         // 使用StringRedisSerializer来序列化和反序列化redis的key值
         redisTemplate.setKeySerializer(new StringRedisSerializer());
 
-        // 使用GenericJackson2JsonRedisSerializer来序列化和反序列化redis的value值
-        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        // value值：compact模式下登录会话和字符串使用紧凑二进制格式，其余类型及已有JSON数据仍按JSON处理
+        RedisSerializer<Object> jsonSerializer = new GenericJackson2JsonRedisSerializer();
+        redisTemplate.setValueSerializer("json".equalsIgnoreCase(valueFormat)
+                ? jsonSerializer
+                : new CompactRedisSerializer(jsonSerializer));
 
         // Hash的key也采用StringRedisSerializer的序列化方式
         redisTemplate.setHashKeySerializer(new StringRedisSerializer());
@@ -28,4 +36,14 @@ public class RedisConfig {
         redisTemplate.afterPropertiesSet();
         return redisTemplate;
     }
+
+    /**
+     * Redis消息监听容器，各组件自行注册频道（如登录缓存失效广播）
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
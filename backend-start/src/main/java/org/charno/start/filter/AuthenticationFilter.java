@@ -1,5 +1,6 @@
 package org.charno.start.filter;
 
+import io.jsonwebtoken.Claims;
 import org.charno.common.utils.JwtUtils;
 import org.charno.common.utils.RedisUtils;
 import org.charno.common.security.LoginUser;
@@ -72,11 +73,13 @@ public class AuthenticationFilter extends OncePerRequestFilter {
             actualToken = authHeader; // 直接使用token（兼容旧格式）
         }
 
-        // 验证token
-        if (!jwtUtils.validateToken(actualToken)) {
+        // 验证token，声明存入请求属性供后续复用
+        Claims claims = jwtUtils.verify(actualToken);
+        if (claims == null) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return;
         }
+        request.setAttribute(JwtUtils.CLAIMS_ATTRIBUTE, claims);
 
         // 获取用户信息
         LoginUser loginUser = (LoginUser) redisUtils.getLoginUser(actualToken);
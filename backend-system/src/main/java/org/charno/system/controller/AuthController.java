@@ -5,12 +5,14 @@ import org.charno.common.core.R;
 import org.charno.common.core.ResultCode;
 import org.charno.common.entity.SysMenu;
 import org.charno.common.entity.SysRole;
+import org.charno.common.entity.SysUser;
 import org.charno.common.security.LoginUser;
 import org.charno.common.utils.SecurityUtils;
 import org.charno.system.mapper.SysRoleMapper;
 import org.charno.system.service.IAuthService;
 import org.charno.system.service.IGoogleAuthService;
 import org.charno.system.service.ISysRoleMenuService;
+import org.charno.system.service.ISysUserService;
 
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +34,9 @@ public class AuthController {
     @Autowired
     private SysRoleMapper roleMapper;
 
+    @Autowired
+    private ISysUserService sysUserService;
+
     @GetMapping("/menus")
     public R<?> getMenus() {
         LoginUser loginUser = SecurityUtils.getLoginUser();
@@ -87,19 +92,26 @@ public class AuthController {
             return R.fail(ResultCode.UNAUTHORIZED);
         }
 
-        Integer roleId = loginUser.getUser().getRoleId();
+        // 会话中只保存投影，用户信息（创建时间、最后登录时间等）从数据库读取完整记录
+        SysUser user = sysUserService.getById(loginUser.getUser().getId());
+        if (user == null) {
+            user = loginUser.getUser();
+        }
+        user.setPassword(null);
+
+        Integer roleId = user.getRoleId();
         if (roleId != null) {
             // 查询角色信息
             SysRole role = roleMapper.selectById(roleId);
             if (role != null) {
                 JSONObject userInfo = new JSONObject();
-                userInfo.put("user", loginUser.getUser());
+                userInfo.put("user", user);
                 userInfo.put("role", role);
                 return R.ok(userInfo);
             }
         }
 
-        return R.ok(loginUser.getUser());
+        return R.ok(user);
     }
 
     /**
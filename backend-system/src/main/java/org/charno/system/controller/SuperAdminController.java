@@ -3,6 +3,10 @@ package org.charno.system.controller;
 import org.charno.common.annotation.RequirePermissions;
 import org.charno.common.annotation.RequireRoles;
 import org.charno.common.core.R;
+import org.charno.common.security.LoginUserCache;
+import org.charno.common.utils.GoogleIdTokenUtils;
+import org.charno.system.support.GoogleAvatarImporter;
+import org.charno.system.support.PublicProfileCache;
 import org.charno.common.service.PermissionService;
 import org.charno.common.utils.SecurityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +28,18 @@ public class SuperAdminController {
     @Autowired
     private PermissionService permissionService;
     
+    @Autowired
+    private LoginUserCache loginUserCache;
+    
+    @Autowired
+    private GoogleIdTokenUtils googleIdTokenUtils;
+    
+    @Autowired
+    private GoogleAvatarImporter googleAvatarImporter;
+    
+    @Autowired
+    private PublicProfileCache publicProfileCache;
+    
     /**
      * 系统重置 - 需要同时满足多个严格条件
      * 普通用户需要同时拥有super_admin和system_admin角色，以及system:reset和system:danger权限
@@ -125,4 +141,40 @@ public class SuperAdminController {
     public R<?> exclusiveFeature() {
         return R.ok("🎉 恭喜！只有超级管理员才能看到这个消息，因为普通用户永远无法满足上述权限要求");
     }
+    
+    /**
+     * 登录用户本地缓存统计（命中/未命中次数，可据此估算节省的Redis请求数）
+     */
+    @GetMapping("/metrics/login-cache")
+    @RequireRoles("super_admin")
+    public R<?> loginCacheStats() {
+        return R.ok(loginUserCache.getStats());
+    }
+    
+    /**
+     * Google公钥获取与ID Token验证统计
+     */
+    @GetMapping("/metrics/google-certs")
+    @RequireRoles("super_admin")
+    public R<?> googleCertsStats() {
+        return R.ok(googleIdTokenUtils.getStats());
+    }
+    
+    /**
+     * Google头像异步导入统计
+     */
+    @GetMapping("/metrics/avatar-import")
+    @RequireRoles("super_admin")
+    public R<?> avatarImportStats() {
+        return R.ok(googleAvatarImporter.getStats());
+    }
+    
+    /**
+     * 用户公开资料缓存统计
+     */
+    @GetMapping("/metrics/public-profile-cache")
+    @RequireRoles("super_admin")
+    public R<?> publicProfileCacheStats() {
+        return R.ok(publicProfileCache.getStats());
+    }
 } 
\ No newline at end of file
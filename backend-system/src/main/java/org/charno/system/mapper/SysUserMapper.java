@@ -3,7 +3,19 @@ package org.charno.system.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.charno.common.entity.SysUser;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface SysUserMapper extends BaseMapper<SysUser> {
+
+    /**
+     * 查询以指定前缀开头的全部用户名（包括已逻辑删除的用户，唯一约束对其同样生效）
+     *
+     * @param prefixPattern 已转义LIKE通配符并以%结尾的前缀模式
+     */
+    @Select("SELECT username FROM sys_user WHERE username LIKE #{prefixPattern}")
+    List<String> selectUsernamesByPrefix(@Param("prefixPattern") String prefixPattern);
 }
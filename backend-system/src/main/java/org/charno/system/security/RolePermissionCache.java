@@ -0,0 +1,413 @@
+package org.charno.system.security;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import org.charno.common.entity.SysMenu;
+import org.charno.common.entity.SysRole;
+import org.charno.common.entity.SysRoleMenu;
+import org.charno.system.mapper.SysMenuMapper;
+import org.charno.system.mapper.SysRoleMapper;
+import org.charno.system.mapper.SysRoleMenuMapper;
+import org.charno.common.utils.TransactionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 角色权限快照缓存
+ * 每个角色的权限编译为不可变快照，角色/菜单/角色菜单变更时通过Redis版本号递增并广播，
+ * 各节点收到新版本后丢弃全部快照。
+ * 用户角色调整后，登录会话中仍是旧角色ID：每个被调整的用户在Redis中记一个带有效期的键并广播，
+ * 有效期与登录会话相同，仍持有旧会话的用户访问时续期，所有旧会话过期后记录随之过期；
+ * 本地记录由后台任务定期清理，Redis中已过期的一并移除
+ */
+@Component
+public class RolePermissionCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RolePermissionCache.class);
+
+    /**
+     * 权限版本号
+     */
+    private static final String VERSION_KEY = "reflip:permission:version";
+
+    /**
+     * 旧版本的用户角色调整记录（单个哈希），启动时迁移为按用户的键
+     */
+    private static final String LEGACY_USER_ROLE_KEY = "reflip:permission:user_role";
+
+    /**
+     * 登录后被调整过角色的用户：前缀 + 用户ID -> 新角色ID
+     */
+    private static final String USER_ROLE_PREFIX = "reflip:permission:user_role:";
+
+    /**
+     * 用户角色调整广播频道，消息体为"用户ID:角色ID"
+     */
+    private static final String USER_ROLE_CHANNEL = "reflip:permission:user_role_changed";
+
+    /**
+     * 调整记录有效期在会话有效期之上的余量，也是同一用户两次续期的最小间隔
+     */
+    private static final long USER_ROLE_TTL_MARGIN_MINUTES = 10;
+
+    /**
+     * 版本变更广播频道，消息体为新版本号
+     */
+    private static final String VERSION_CHANNEL = "reflip:permission:version_changed";
+
+    /**
+     * 登录会话有效期（分钟），用户角色调整记录至少保留这么久
+     */
+    @Value("${value.permission.user-role-ttl-minutes:1440}")
+    private long userRoleTtlMinutes;
+
+    @Autowired
+    private SysRoleMapper roleMapper;
+
+    @Autowired
+    private SysRoleMenuMapper roleMenuMapper;
+
+    @Autowired
+    private SysMenuMapper menuMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final Map<Integer, RolePermissionSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * 权限标识 -> 位下标
+     */
+    private final Map<String, Integer> permissionIndex = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * 用户ID -> 角色调整记录
+     */
+    private final Map<Long, RoleOverride> userRoleOverrides = new ConcurrentHashMap<>();
+
+    private volatile long version;
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, List.of(new ChannelTopic(VERSION_CHANNEL), new ChannelTopic(USER_ROLE_CHANNEL)));
+        try {
+            String current = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+            version = current != null ? Long.parseLong(current) : 0L;
+        } catch (Exception e) {
+            logger.warn("读取权限版本失败，使用本地初始版本: {}", e.getMessage());
+        }
+        try {
+            migrateLegacyUserRoles();
+            loadUserRoleOverrides();
+        } catch (Exception e) {
+            logger.warn("加载用户角色调整记录失败: {}", e.getMessage());
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-role-override-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepExpiredOverrides,
+                USER_ROLE_TTL_MARGIN_MINUTES, USER_ROLE_TTL_MARGIN_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取角色权限快照，版本过期时重新加载
+     */
+    public RolePermissionSnapshot getSnapshot(Integer roleId) {
+        if (roleId == null) {
+            return null;
+        }
+        RolePermissionSnapshot snapshot = snapshots.get(roleId);
+        if (snapshot != null && snapshot.getVersion() == version) {
+            return snapshot;
+        }
+        snapshot = load(roleId);
+        snapshots.put(roleId, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 解析用户当前角色ID，登录后被调整过角色的以调整后的为准
+     * 旧会话仍在使用时为调整记录续期，保证记录比会话晚过期
+     */
+    public Integer resolveRoleId(Long userId, Integer sessionRoleId) {
+        RoleOverride override = userId != null ? userRoleOverrides.get(userId) : null;
+        if (override == null || override.roleId().equals(sessionRoleId)) {
+            return sessionRoleId;
+        }
+        long now = System.currentTimeMillis();
+        if (override.expireAt() - now < TimeUnit.MINUTES.toMillis(userRoleTtlMinutes)) {
+            override = renewOverride(userId, override);
+            if (override == null) {
+                return sessionRoleId;
+            }
+        }
+        return override.roleId();
+    }
+
+    /**
+     * 检查快照是否持有指定权限
+     */
+    public boolean hasPermission(RolePermissionSnapshot snapshot, String permission) {
+        Integer index = permissionIndex.get(permission);
+        return snapshot != null && index != null && snapshot.hasPermissionBit(index);
+    }
+
+    /**
+     * 角色、菜单或角色菜单关联变更后调用，事务提交后才递增版本
+     */
+    public void bumpVersion() {
+        TransactionUtils.runAfterCommit(this::publishNewVersion);
+    }
+
+    /**
+     * 用户角色被调整后调用，使已登录会话中的角色ID失效
+     */
+    public void onUserRoleChanged(Long userId, Integer roleId) {
+        if (userId == null || roleId == null) {
+            return;
+        }
+        TransactionUtils.runAfterCommit(() -> {
+            putOverride(userId, roleId);
+            try {
+                stringRedisTemplate.opsForValue().set(USER_ROLE_PREFIX + userId, roleId.toString(),
+                        userRoleTtlMinutes + USER_ROLE_TTL_MARGIN_MINUTES, TimeUnit.MINUTES);
+                stringRedisTemplate.convertAndSend(USER_ROLE_CHANNEL, userId + ":" + roleId);
+            } catch (Exception e) {
+                // Redis不可用时至少保证本节点生效
+                logger.error("广播用户角色调整失败: userId={}", userId, e);
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (USER_ROLE_CHANNEL.equals(channel)) {
+                int separator = body.indexOf(':');
+                putOverride(Long.valueOf(body.substring(0, separator)), Integer.valueOf(body.substring(separator + 1)));
+                return;
+            }
+            long newVersion = Long.parseLong(body);
+            if (newVersion > version) {
+                applyVersion(newVersion);
+            }
+        } catch (Exception e) {
+            logger.error("处理权限变更消息失败", e);
+        }
+    }
+
+    private void publishNewVersion() {
+        try {
+            Long newVersion = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+            if (newVersion != null) {
+                applyVersion(newVersion);
+                stringRedisTemplate.convertAndSend(VERSION_CHANNEL, newVersion.toString());
+            }
+        } catch (Exception e) {
+            // Redis不可用时至少保证本节点生效
+            logger.error("广播权限版本变更失败", e);
+            applyVersion(version + 1);
+        }
+    }
+
+    private synchronized void applyVersion(long newVersion) {
+        if (newVersion <= version) {
+            return;
+        }
+        version = newVersion;
+        snapshots.clear();
+        logger.debug("权限版本更新为 {}", newVersion);
+    }
+
+    private void putOverride(Long userId, Integer roleId) {
+        userRoleOverrides.put(userId, new RoleOverride(roleId, System.currentTimeMillis() + overrideTtlMillis()));
+    }
+
+    /**
+     * 清理本地已过期的调整记录：用一次批量读取确认Redis中的记录，已不存在的移除，仍存在的按现在重新计算本地有效期
+     */
+    private void sweepExpiredOverrides() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<Long, RoleOverride>> expired = userRoleOverrides.entrySet().stream()
+                    .filter(entry -> entry.getValue().expireAt() < now)
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+            if (expired.isEmpty()) {
+                return;
+            }
+            List<String> keys = expired.stream()
+                    .map(entry -> USER_ROLE_PREFIX + entry.getKey())
+                    .collect(Collectors.toList());
+            List<String> roleIds = stringRedisTemplate.opsForValue().multiGet(keys);
+            if (roleIds == null) {
+                return;
+            }
+            int removed = 0;
+            long expireAt = now + overrideTtlMillis();
+            for (int i = 0; i < expired.size(); i++) {
+                Long userId = expired.get(i).getKey();
+                RoleOverride override = expired.get(i).getValue();
+                String roleId = roleIds.get(i);
+                // 条件移除/替换，清理期间被重新调整的记录不受影响
+                if (roleId == null) {
+                    if (userRoleOverrides.remove(userId, override)) {
+                        removed++;
+                    }
+                } else {
+                    userRoleOverrides.replace(userId, override, new RoleOverride(Integer.valueOf(roleId), expireAt));
+                }
+            }
+            logger.debug("清理用户角色调整记录 {} 条，剩余 {} 条", removed, userRoleOverrides.size());
+        } catch (Exception e) {
+            // Redis不可用时保留本地记录，下一轮再清理
+            logger.warn("清理用户角色调整记录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 续期调整记录；Redis中记录已不存在时移除本地记录并返回null
+     */
+    private RoleOverride renewOverride(Long userId, RoleOverride override) {
+        try {
+            Boolean exists = stringRedisTemplate.expire(USER_ROLE_PREFIX + userId, overrideTtlMillis(), TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(exists)) {
+                userRoleOverrides.remove(userId, override);
+                return null;
+            }
+        } catch (Exception e) {
+            // Redis不可用时保持本地记录，下次访问再续期
+            logger.warn("续期用户角色调整记录失败: userId={}, {}", userId, e.getMessage());
+            return override;
+        }
+        RoleOverride renewed = new RoleOverride(override.roleId(), System.currentTimeMillis() + overrideTtlMillis());
+        userRoleOverrides.replace(userId, override, renewed);
+        return renewed;
+    }
+
+    /**
+     * 启动时加载仍有效的调整记录，本地有效期从现在算起，首次使用时续期确认
+     */
+    private void loadUserRoleOverrides() {
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(
+                ScanOptions.scanOptions().match(USER_ROLE_PREFIX + "*").count(500).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> roleIds = stringRedisTemplate.opsForValue().multiGet(keys);
+        long expireAt = System.currentTimeMillis() + overrideTtlMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            String roleId = roleIds != null ? roleIds.get(i) : null;
+            if (roleId != null) {
+                Long userId = Long.valueOf(keys.get(i).substring(USER_ROLE_PREFIX.length()));
+                userRoleOverrides.put(userId, new RoleOverride(Integer.valueOf(roleId), expireAt));
+            }
+        }
+    }
+
+    /**
+     * 将旧版本的哈希记录迁移为按用户的带有效期的键
+     */
+    private void migrateLegacyUserRoles() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(LEGACY_USER_ROLE_KEY);
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            stringRedisTemplate.opsForValue().setIfAbsent(USER_ROLE_PREFIX + entry.getKey(), entry.getValue().toString(),
+                    overrideTtlMillis(), TimeUnit.MILLISECONDS);
+        }
+        stringRedisTemplate.delete(LEGACY_USER_ROLE_KEY);
+        logger.info("迁移用户角色调整记录 {} 条", entries.size());
+    }
+
+    private long overrideTtlMillis() {
+        return TimeUnit.MINUTES.toMillis(userRoleTtlMinutes + USER_ROLE_TTL_MARGIN_MINUTES);
+    }
+
+    private RolePermissionSnapshot load(Integer roleId) {
+        // 先记录版本，加载期间若发生变更，下次访问会重新加载
+        long loadVersion = version;
+
+        SysRole role = roleMapper.selectById(roleId);
+        String roleKey = role != null && StringUtils.hasText(role.getKey()) ? role.getKey() : null;
+
+        List<Integer> menuIds = roleMenuMapper.selectList(
+                        new LambdaQueryWrapper<SysRoleMenu>()
+                                .eq(SysRoleMenu::getRoleId, roleId))
+                .stream()
+                .map(SysRoleMenu::getMenuId)
+                .collect(Collectors.toList());
+
+        Set<String> perms = new HashSet<>();
+        if (!menuIds.isEmpty()) {
+            menuMapper.selectList(
+                            new LambdaQueryWrapper<SysMenu>()
+                                    .select(SysMenu::getId, SysMenu::getPerms)
+                                    .in(SysMenu::getId, menuIds))
+                    .stream()
+                    .map(SysMenu::getPerms)
+                    .filter(StringUtils::hasText)
+                    .forEach(perms::add);
+        }
+
+        BitSet bits = new BitSet();
+        for (String perm : perms) {
+            bits.set(permissionIndex.computeIfAbsent(perm.intern(), p -> nextIndex.getAndIncrement()));
+        }
+        return new RolePermissionSnapshot(roleId, roleKey, bits, perms, loadVersion);
+    }
+
+    /**
+     * 用户角色调整记录，expireAt为本节点最近一次确认或续期后的过期时间
+     */
+    private record RoleOverride(Integer roleId, long expireAt) {
+    }
+}
@@ -0,0 +1,55 @@
+package org.charno.system.security;
+
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * 角色权限快照
+ * 角色标识与权限位图的不可变副本，权限位下标由RolePermissionCache统一分配
+ */
+public final class RolePermissionSnapshot {
+
+    private final Integer roleId;
+
+    private final String roleKey;
+
+    private final BitSet permissions;
+
+    private final Set<String> permissionNames;
+
+    private final long version;
+
+    RolePermissionSnapshot(Integer roleId, String roleKey, BitSet permissions, Set<String> permissionNames, long version) {
+        this.roleId = roleId;
+        this.roleKey = roleKey;
+        this.permissions = permissions;
+        this.permissionNames = Set.copyOf(permissionNames);
+        this.version = version;
+    }
+
+    public Integer getRoleId() {
+        return roleId;
+    }
+
+    public String getRoleKey() {
+        return roleKey;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 权限标识集合（只读）
+     */
+    public Set<String> getPermissionNames() {
+        return permissionNames;
+    }
+
+    /**
+     * 检查权限位，下标为负表示该权限未被任何角色持有
+     */
+    boolean hasPermissionBit(int index) {
+        return index >= 0 && permissions.get(index);
+    }
+}
@@ -1,8 +1,12 @@
 package org.charno.system.service;
 
 import org.charno.common.service.IBaseService;
+import org.charno.common.dto.PublicUserProfile;
 import org.charno.common.entity.SysUser;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface ISysUserService extends IBaseService<SysUser> {
     
     /**
@@ -11,4 +15,18 @@ public interface ISysUserService extends IBaseService<SysUser> {
      * @return 用户公开信息
      */
     SysUser getPublicUserInfo(Long userId);
+    
+    /**
+     * 获取用户公开资料（ID、昵称、头像），走本地缓存
+     * @param userId 用户ID
+     * @return 用户公开资料，用户不存在时返回null
+     */
+    PublicUserProfile getPublicProfile(Long userId);
+    
+    /**
+     * 批量获取用户公开资料，未命中缓存的用户用一次查询加载
+     * @param userIds 用户ID
+     * @return 用户ID -> 公开资料，不存在的用户不包含在内
+     */
+    Map<Long, PublicUserProfile> getPublicProfiles(Collection<Long> userIds);
 }
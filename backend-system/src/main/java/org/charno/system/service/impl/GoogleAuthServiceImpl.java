@@ -2,34 +2,45 @@ package org.charno.system.service.impl;
 
 import com.alibaba.fastjson2.JSON;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import org.charno.common.config.GoogleOAuth2Config;
 import org.charno.common.dto.GoogleUserInfo;
 import org.charno.common.entity.SysUser;
 import org.charno.common.security.LoginUser;
+import org.charno.common.utils.GoogleIdTokenUtils;
 import org.charno.common.utils.JwtUtils;
 import org.charno.common.utils.RedisUtils;
-import org.charno.common.utils.S3Utils;
 import org.charno.system.mapper.SysUserMapper;
 import org.charno.system.service.IGoogleAuthService;
+import org.charno.system.support.GoogleAvatarImporter;
+import org.charno.system.support.PublicProfileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ByteArrayOutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.Set;
 
 @Service
 public class GoogleAuthServiceImpl implements IGoogleAuthService {
 
+    private static final Logger logger = LoggerFactory.getLogger(GoogleAuthServiceImpl.class);
+
+    /**
+     * 用户名冲突时创建用户的最大尝试次数
+     */
+    private static final int MAX_CREATE_ATTEMPTS = 3;
+
     @Autowired
     private GoogleAuthorizationCodeFlow googleAuthFlow;
 
@@ -46,7 +57,13 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
     private RedisUtils redisUtils;
 
     @Autowired
-    private S3Utils s3Utils;
+    private GoogleAvatarImporter googleAvatarImporter;
+
+    @Autowired
+    private GoogleIdTokenUtils googleIdTokenUtils;
+
+    @Autowired
+    private PublicProfileCache publicProfileCache;
 
     @Override
     public GoogleUserInfo getGoogleUserInfo(String authCode) {
@@ -90,6 +107,7 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
 
         // 2. 查找用户
         SysUser user = findOrCreateUser(googleUserInfo);
+        boolean importAvatar = isNewGoogleUser(user);
 
         // 3. 生成token
         String token = jwtUtils.generateToken();
@@ -104,6 +122,11 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
         // 6. 存入Redis
         redisUtils.setLoginUser(token, loginUser);
 
+        // 7. 新用户在后台导入Google头像
+        if (importAvatar) {
+            googleAvatarImporter.submit(user.getId(), user.getGoogleSub(), googleUserInfo.getPicture(), user.getUsername(), token);
+        }
+
         return loginUser;
     }
 
@@ -118,6 +141,7 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
 
         // 2. 查找用户
         SysUser user = findOrCreateUser(googleUserInfo);
+        boolean importAvatar = isNewGoogleUser(user);
 
         // 3. 生成token
         String token = jwtUtils.generateToken();
@@ -132,25 +156,22 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
         // 6. 存入Redis
         redisUtils.setLoginUser(token, loginUser);
 
+        // 7. 新用户在后台导入Google头像
+        if (importAvatar) {
+            googleAvatarImporter.submit(user.getId(), user.getGoogleSub(), googleUserInfo.getPicture(), user.getUsername(), token);
+        }
+
         return loginUser;
     }
 
     @Override
     public GoogleUserInfo verifyGoogleIdToken(String idToken, String clientType) {
         try {
-            // 使用Google API验证ID Token
-            NetHttpTransport transport = new NetHttpTransport();
-            GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
-
-            com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier verifier = 
-                new com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier.Builder(transport, jsonFactory)
-                    .setAudience(java.util.Collections.singletonList(getClientIdForType(clientType)))
-                    .build();
-
-            com.google.api.client.googleapis.auth.oauth2.GoogleIdToken googleIdToken = verifier.verify(idToken);
+            // 使用共享的验证器验证ID Token（公钥已缓存）
+            GoogleIdToken googleIdToken = googleIdTokenUtils.verify(idToken, clientType);
             
             if (googleIdToken != null) {
-                com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload payload = googleIdToken.getPayload();
+                GoogleIdToken.Payload payload = googleIdToken.getPayload();
                 
                 // 创建GoogleUserInfo对象
                 GoogleUserInfo userInfo = new GoogleUserInfo();
@@ -171,19 +192,6 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
         }
     }
 
-    /**
-     * 根据客户端类型获取对应的Client ID
-     */
-    private String getClientIdForType(String clientType) {
-        switch (clientType.toLowerCase()) {
-            case "ios":
-                return googleConfig.getIosClientId();
-            case "web":
-            default:
-                return googleConfig.getWebClientId();
-        }
-    }
-
     @Override
     public String getAuthorizationUrl() {
         return googleAuthFlow.newAuthorizationUrl()
@@ -231,166 +239,88 @@ public class GoogleAuthServiceImpl implements IGoogleAuthService {
         // 只绑定Google账号ID
         user.setGoogleSub(googleUserInfo.getId());
         userMapper.updateById(user);
+        publicProfileCache.invalidate(user.getId());
         
-        System.out.println("更新已存在用户的Google绑定信息，用户: " + user.getUsername());
+        logger.info("更新已存在用户的Google绑定信息，用户: {}", user.getUsername());
     }
 
     private SysUser createNewUserFromGoogle(GoogleUserInfo googleUserInfo) {
-        SysUser newUser = new SysUser();
-        
-        // 生成用户名（使用邮箱前缀）
-        String username = generateUniqueUsername(googleUserInfo.getEmail());
-        
-        newUser.setUsername(username);
-        newUser.setNickname(googleUserInfo.getName() != null ? googleUserInfo.getName() : username);
-        newUser.setEmail(googleUserInfo.getEmail());
-        newUser.setGoogleSub(googleUserInfo.getId());
-        
-        // 只在创建新用户时下载并上传Google头像到S3
-        if (googleUserInfo.getPicture() != null && !googleUserInfo.getPicture().isEmpty()) {
-            System.out.println("正在为新用户下载并上传Google头像: " + username);
-            String s3AvatarUrl = downloadAndUploadAvatar(googleUserInfo.getPicture(), username);
-            if (s3AvatarUrl != null) {
-                newUser.setAvatar(s3AvatarUrl);
-                System.out.println("新用户头像上传成功: " + username);
-            } else {
-                System.out.println("新用户头像上传失败，将使用默认头像: " + username);
-            }
-        }
-        
-        newUser.setCreateTime(LocalDateTime.now());
-        newUser.setIsDelete(false);
-        newUser.setRoleId(1); // 默认角色
-
-        userMapper.insert(newUser);
-        System.out.println("创建新的Google用户: " + username);
-        return newUser;
-    }
-
-    /**
-     * 下载Google头像并上传到S3
-     * @param googleAvatarUrl Google头像URL
-     * @param username 用户名
-     * @return S3头像URL，如果失败返回null
-     */
-    private String downloadAndUploadAvatar(String googleAvatarUrl, String username) {
-        try {
-            // 1. 下载Google头像
-            URL url = new URL(googleAvatarUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000); // 10秒超时
-            connection.setReadTimeout(10000);
+        // 并发注册可能抢占同一个用户名，违反唯一约束时重新生成用户名重试
+        for (int attempt = 1; ; attempt++) {
+            SysUser newUser = new SysUser();
             
-            // 设置User-Agent避免被拒绝
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+            // 生成用户名（使用邮箱前缀）
+            String username = generateUniqueUsername(googleUserInfo.getEmail());
             
-            if (connection.getResponseCode() != 200) {
-                System.err.println("下载Google头像失败，响应码: " + connection.getResponseCode());
-                return null;
-            }
-
-            // 2. 完整读取图片数据到字节数组
-            InputStream inputStream = connection.getInputStream();
-            byte[] imageData = readAllBytes(inputStream);
-            inputStream.close();
-            connection.disconnect();
+            newUser.setUsername(username);
+            newUser.setNickname(googleUserInfo.getName() != null ? googleUserInfo.getName() : username);
+            newUser.setEmail(googleUserInfo.getEmail());
+            newUser.setGoogleSub(googleUserInfo.getId());
             
-            if (imageData.length == 0) {
-                System.err.println("下载的图片数据为空");
-                return null;
+            // 头像在登录完成后由GoogleAvatarImporter异步导入
+            newUser.setCreateTime(LocalDateTime.now());
+            newUser.setIsDelete(false);
+            newUser.setRoleId(1); // 默认角色
+
+            try {
+                userMapper.insert(newUser);
+            } catch (DuplicateKeyException e) {
+                // 同一Google账号被并发注册时，直接使用已创建的用户
+                SysUser existingUser = userMapper.selectOne(new QueryWrapper<SysUser>()
+                        .eq("google_sub", googleUserInfo.getId())
+                        .eq("is_delete", false));
+                if (existingUser != null) {
+                    return existingUser;
+                }
+                if (attempt >= MAX_CREATE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("用户名已被占用，重新生成: {}", username);
+                continue;
             }
-            
-            System.out.println("成功下载Google头像，大小: " + imageData.length + " 字节");
-            
-            // 3. 生成文件名
-            String fileExtension = getFileExtension(googleAvatarUrl);
-            String fileName = "avatars/google/" + username + "_" + UUID.randomUUID().toString().substring(0, 8) + fileExtension;
-            
-            // 4. 上传到S3
-            String s3Url = s3Utils.uploadImageFromBytes(imageData, fileName, getContentType(fileExtension));
-            
-            System.out.println("成功上传Google头像到S3: " + s3Url);
-            return s3Url;
-            
-        } catch (Exception e) {
-            System.err.println("下载并上传Google头像失败: " + e.getMessage());
-            e.printStackTrace();
-            // 发生错误时返回null，用户将使用默认头像
-            return null;
+            logger.info("创建新的Google用户: {}", username);
+            return newUser;
         }
     }
 
     /**
-     * 读取InputStream中的所有字节
+     * 是否为本次登录刚创建的Google用户（从未登录过且没有头像）
      */
-    private byte[] readAllBytes(InputStream inputStream) throws IOException {
-        byte[] buffer = new byte[8192];
-        int bytesRead;
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            outputStream.write(buffer, 0, bytesRead);
-        }
-        
-        return outputStream.toByteArray();
+    private boolean isNewGoogleUser(SysUser user) {
+        return user.getLastLoginDate() == null && user.getAvatar() == null;
     }
 
-    /**
-     * 根据URL获取文件扩展名
-     */
-    private String getFileExtension(String url) {
-        try {
-            // Google头像URL通常没有明确的扩展名，默认使用.jpg
-            if (url.contains(".png")) {
-                return ".png";
-            } else if (url.contains(".gif")) {
-                return ".gif";
-            } else if (url.contains(".webp")) {
-                return ".webp";
-            } else {
-                return ".jpg"; // 默认
+    private String generateUniqueUsername(String email) {
+        String baseUsername = email.split("@")[0];
+
+        // 一次查询取出所有以该前缀开头的用户名，在内存中选择第一个可用的：base, base1, base2...
+        List<String> taken = userMapper.selectUsernamesByPrefix(escapeLike(baseUsername) + "%");
+        Set<Integer> takenSuffixes = new HashSet<>();
+        for (String name : taken) {
+            if (name.equals(baseUsername)) {
+                takenSuffixes.add(0);
+                continue;
+            }
+            String suffix = name.substring(baseUsername.length());
+            if (suffix.length() <= 9 && suffix.charAt(0) != '0' && suffix.chars().allMatch(Character::isDigit)) {
+                takenSuffixes.add(Integer.parseInt(suffix));
             }
-        } catch (Exception e) {
-            return ".jpg";
         }
-    }
 
-    /**
-     * 根据文件扩展名获取Content-Type
-     */
-    private String getContentType(String extension) {
-        switch (extension.toLowerCase()) {
-            case ".png":
-                return "image/png";
-            case ".gif":
-                return "image/gif";
-            case ".webp":
-                return "image/webp";
-            case ".jpg":
-            case ".jpeg":
-            default:
-                return "image/jpeg";
+        if (!takenSuffixes.contains(0)) {
+            return baseUsername;
         }
-    }
-
-    private String generateUniqueUsername(String email) {
-        String baseUsername = email.split("@")[0];
-        String username = baseUsername;
         int counter = 1;
-
-        // 检查用户名是否已存在，如果存在则添加数字后缀
-        while (isUsernameExists(username)) {
-            username = baseUsername + counter;
+        while (takenSuffixes.contains(counter)) {
             counter++;
         }
-
-        return username;
+        return baseUsername + counter;
     }
 
-    private boolean isUsernameExists(String username) {
-        QueryWrapper<SysUser> query = new QueryWrapper<>();
-        query.eq("username", username).eq("is_delete", false);
-        return userMapper.exists(query);
+    /**
+     * 转义LIKE通配符（PostgreSQL默认转义字符为反斜杠）
+     */
+    private String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,17 @@
 package org.charno.system.service.impl;
 
-import org.charno.common.entity.SysMenu;
-import org.charno.common.entity.SysRole;
 import org.charno.common.entity.SysUser;
 import org.charno.common.service.PermissionService;
-import org.charno.system.mapper.SysRoleMapper;
+import org.charno.common.utils.SecurityUtils;
 import org.charno.system.mapper.SysUserMapper;
-import org.charno.system.service.ISysRoleMenuService;
+import org.charno.system.security.RolePermissionCache;
+import org.charno.system.security.RolePermissionSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * 权限服务实现类
@@ -30,38 +26,50 @@ public class PermissionServiceImpl implements PermissionService {
      */
     private static final Integer SUPER_ADMIN_ROLE_ID = 1;
     
-    @Autowired
-    private SysRoleMapper roleMapper;
-    
     @Autowired
     private SysUserMapper userMapper;
     
     @Autowired
-    private ISysRoleMenuService roleMenuService;
+    private RolePermissionCache rolePermissionCache;
     
     /**
-     * 检查用户是否为超级管理员
+     * 解析用户角色ID
+     * 当前登录用户直接使用会话中的角色ID，其他用户查询数据库
      * 
      * @param userId 用户ID
+     * @return 角色ID
+     */
+    private Integer resolveRoleId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        Integer roleId;
+        if (userId.equals(SecurityUtils.getUserId())) {
+            roleId = SecurityUtils.getRoleId();
+        } else {
+            SysUser user = userMapper.selectById(userId);
+            roleId = user != null ? user.getRoleId() : null;
+        }
+        return rolePermissionCache.resolveRoleId(userId, roleId);
+    }
+    
+    /**
+     * 检查角色是否为超级管理员
+     * 
+     * @param roleId 角色ID
      * @return 是否为超级管理员
      */
-    private boolean isSuperAdmin(Long userId) {
-        SysUser user = userMapper.selectById(userId);
-        return user != null && SUPER_ADMIN_ROLE_ID.equals(user.getRoleId());
+    private boolean isSuperAdmin(Integer roleId) {
+        return SUPER_ADMIN_ROLE_ID.equals(roleId);
     }
     
     @Override
     public Set<String> getUserRoles(Long userId) {
         Set<String> roleKeys = new HashSet<>();
         
-        // 根据用户ID获取用户信息
-        SysUser user = userMapper.selectById(userId);
-        if (user != null && user.getRoleId() != null) {
-            // 根据角色ID获取角色信息
-            SysRole role = roleMapper.selectById(user.getRoleId());
-            if (role != null && StringUtils.hasText(role.getKey())) {
-                roleKeys.add(role.getKey());
-            }
+        RolePermissionSnapshot snapshot = rolePermissionCache.getSnapshot(resolveRoleId(userId));
+        if (snapshot != null && snapshot.getRoleKey() != null) {
+            roleKeys.add(snapshot.getRoleKey());
         }
         
         return roleKeys;
@@ -69,28 +77,19 @@ public class PermissionServiceImpl implements PermissionService {
     
     @Override
     public Set<String> getUserPermissions(Long userId) {
-        Set<String> permissions = new HashSet<>();
-        
-        // 根据用户ID获取用户信息
-        SysUser user = userMapper.selectById(userId);
-        if (user != null && user.getRoleId() != null) {
-            // 根据角色ID获取菜单权限
-            List<SysMenu> menus = roleMenuService.getMenusByRoleId(user.getRoleId());
-            
-            // 提取权限标识
-            permissions = menus.stream()
-                    .filter(menu -> StringUtils.hasText(menu.getPerms()))
-                    .map(SysMenu::getPerms)
-                    .collect(Collectors.toSet());
+        RolePermissionSnapshot snapshot = rolePermissionCache.getSnapshot(resolveRoleId(userId));
+        if (snapshot == null) {
+            return new HashSet<>();
         }
-        
-        return permissions;
+        return new HashSet<>(snapshot.getPermissionNames());
     }
     
     @Override
     public boolean hasRole(Long userId, String[] roleKeys, boolean requireAll) {
+        Integer roleId = resolveRoleId(userId);
+        
         // 超级管理员直接通过验证
-        if (isSuperAdmin(userId)) {
+        if (isSuperAdmin(roleId)) {
             return true;
         }
         
@@ -98,22 +97,24 @@ public class PermissionServiceImpl implements PermissionService {
             return true;
         }
         
-        Set<String> userRoles = getUserRoles(userId);
-        Set<String> requiredRoles = new HashSet<>(Arrays.asList(roleKeys));
+        RolePermissionSnapshot snapshot = rolePermissionCache.getSnapshot(roleId);
+        String roleKey = snapshot != null ? snapshot.getRoleKey() : null;
         
         if (requireAll) {
             // 必须拥有所有角色
-            return userRoles.containsAll(requiredRoles);
+            return Arrays.stream(roleKeys).allMatch(key -> key.equals(roleKey));
         } else {
             // 拥有任意一个角色即可
-            return requiredRoles.stream().anyMatch(userRoles::contains);
+            return Arrays.stream(roleKeys).anyMatch(key -> key.equals(roleKey));
         }
     }
     
     @Override
     public boolean hasPermission(Long userId, String[] permissions, boolean requireAll) {
+        Integer roleId = resolveRoleId(userId);
+        
         // 超级管理员直接通过验证
-        if (isSuperAdmin(userId)) {
+        if (isSuperAdmin(roleId)) {
             return true;
         }
         
@@ -121,15 +122,14 @@ public class PermissionServiceImpl implements PermissionService {
             return true;
         }
         
-        Set<String> userPermissions = getUserPermissions(userId);
-        Set<String> requiredPermissions = new HashSet<>(Arrays.asList(permissions));
+        RolePermissionSnapshot snapshot = rolePermissionCache.getSnapshot(roleId);
         
         if (requireAll) {
             // 必须拥有所有权限
-            return userPermissions.containsAll(requiredPermissions);
+            return Arrays.stream(permissions).allMatch(perm -> rolePermissionCache.hasPermission(snapshot, perm));
         } else {
             // 拥有任意一个权限即可
-            return requiredPermissions.stream().anyMatch(userPermissions::contains);
+            return Arrays.stream(permissions).anyMatch(perm -> rolePermissionCache.hasPermission(snapshot, perm));
         }
     }
 } 
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.charno.common.entity.SysMenu;
 import org.charno.common.entity.SysRoleMenu;
 import org.charno.system.mapper.SysMenuMapper;
 import org.charno.system.mapper.SysRoleMenuMapper;
+import org.charno.system.security.RolePermissionCache;
 import org.charno.system.service.ISysRoleMenuService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -22,6 +23,9 @@ public class SysRoleMenuServiceImpl implements ISysRoleMenuService {
     @Autowired
     private SysMenuMapper menuMapper;
 
+    @Autowired
+    private RolePermissionCache rolePermissionCache;
+
     @Override
     public List<SysMenu> getMenusByRoleId(Integer roleId) {
         // 查询角色-菜单关联关系
@@ -71,5 +75,8 @@ public class SysRoleMenuServiceImpl implements ISysRoleMenuService {
                 roleMenuMapper.insert(roleMenu);
             }
         }
+
+        // 3. 使各节点的角色权限快照失效
+        rolePermissionCache.bumpVersion();
     }
 }
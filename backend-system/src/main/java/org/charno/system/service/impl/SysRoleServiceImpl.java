@@ -3,9 +3,65 @@ package org.charno.system.service.impl;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.charno.common.entity.SysRole;
 import org.charno.system.mapper.SysRoleMapper;
+import org.charno.system.security.RolePermissionCache;
 import org.charno.system.service.ISysRoleService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * 角色的增删改都会使权限快照失效，批量方法不经过单条方法，需要单独覆盖
+ */
 @Service
 public class SysRoleServiceImpl extends ServiceImpl<SysRoleMapper, SysRole> implements ISysRoleService {
+
+    @Autowired
+    private RolePermissionCache rolePermissionCache;
+
+    @Override
+    public boolean save(SysRole entity) {
+        return bumpIfChanged(super.save(entity));
+    }
+
+    @Override
+    public boolean saveBatch(Collection<SysRole> entityList, int batchSize) {
+        return bumpIfChanged(super.saveBatch(entityList, batchSize));
+    }
+
+    @Override
+    public boolean saveOrUpdateBatch(Collection<SysRole> entityList, int batchSize) {
+        return bumpIfChanged(super.saveOrUpdateBatch(entityList, batchSize));
+    }
+
+    @Override
+    public boolean updateById(SysRole entity) {
+        return bumpIfChanged(super.updateById(entity));
+    }
+
+    @Override
+    public boolean updateBatchById(Collection<SysRole> entityList, int batchSize) {
+        return bumpIfChanged(super.updateBatchById(entityList, batchSize));
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        return bumpIfChanged(super.removeById(id));
+    }
+
+    @Override
+    public boolean removeByIds(Collection<?> list) {
+        return bumpIfChanged(super.removeByIds(list));
+    }
+
+    /**
+     * 角色变更后使权限快照失效
+     */
+    private boolean bumpIfChanged(boolean changed) {
+        if (changed) {
+            rolePermissionCache.bumpVersion();
+        }
+        return changed;
+    }
 }
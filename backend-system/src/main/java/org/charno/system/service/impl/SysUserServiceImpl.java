@@ -2,15 +2,21 @@ package org.charno.system.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.charno.common.dto.PublicUserProfile;
 import org.charno.common.entity.SysUser;
 import org.charno.system.mapper.SysUserMapper;
+import org.charno.system.security.RolePermissionCache;
 import org.charno.system.service.ISysUserService;
+import org.charno.system.support.PublicProfileCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
 
 @Service
 public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> implements ISysUserService {
@@ -18,6 +24,12 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private RolePermissionCache rolePermissionCache;
+
+    @Autowired
+    private PublicProfileCache publicProfileCache;
+
     @Override
     public boolean save(SysUser entity) {
         // 新增用户时，对密码进行加密
@@ -40,10 +52,12 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
 
     @Override
     public boolean updateById(SysUser entity) {
+        // 获取原始用户信息（修改密码或角色时需要比对）
+        SysUser originalUser = StringUtils.hasText(entity.getPassword()) || entity.getRoleId() != null
+                ? getById(entity.getId()) : null;
+
         // 修改用户时，只有当密码字段不为空时才进行加密
         if (StringUtils.hasText(entity.getPassword())) {
-            // 获取原始用户信息
-            SysUser originalUser = getById(entity.getId());
             if (originalUser != null) {
                 // 如果密码与原密码不同，说明是要修改密码，需要加密
                 if (!entity.getPassword().equals(originalUser.getPassword())) {
@@ -58,7 +72,36 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
         // 设置更新时间
         entity.setUpdateTime(LocalDateTime.now());
         
-        return super.updateById(entity);
+        boolean updated = super.updateById(entity);
+        if (updated) {
+            publicProfileCache.invalidate(entity.getId());
+        }
+
+        // 角色被调整时，已登录会话中的角色ID随之失效
+        if (updated && originalUser != null && entity.getRoleId() != null
+                && !entity.getRoleId().equals(originalUser.getRoleId())) {
+            rolePermissionCache.onUserRoleChanged(entity.getId(), entity.getRoleId());
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean removed = super.removeById(id);
+        if (removed && id != null) {
+            publicProfileCache.invalidate(Long.valueOf(id.toString()));
+        }
+        return removed;
+    }
+
+    @Override
+    public PublicUserProfile getPublicProfile(Long userId) {
+        return publicProfileCache.get(userId);
+    }
+
+    @Override
+    public Map<Long, PublicUserProfile> getPublicProfiles(Collection<Long> userIds) {
+        return publicProfileCache.getAll(userIds);
     }
 
     @Override
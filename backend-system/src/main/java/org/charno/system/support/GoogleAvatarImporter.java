@@ -0,0 +1,309 @@
+package org.charno.system.support;
+
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import org.charno.common.entity.SysUser;
+import org.charno.common.security.LoginUser;
+import org.charno.common.utils.RedisUtils;
+import org.charno.common.utils.S3Utils;
+import org.charno.system.mapper.SysUserMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Google头像异步导入
+ * 新用户创建后在后台下载Google头像并上传到S3，完成后回写sys_user.avatar和当前会话。
+ * 并发传输数和排队任务数有上限，失败按指数退避重试，同一googleSub同时只有一个导入任务。
+ */
+@Component
+public class GoogleAvatarImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleAvatarImporter.class);
+
+    /**
+     * 最大并发传输数
+     */
+    @Value("${value.avatar-import.concurrency:4}")
+    private int concurrency;
+
+    /**
+     * 等待中的任务上限，超出时放弃导入（用户使用默认头像）
+     */
+    @Value("${value.avatar-import.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${value.avatar-import.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * 首次重试等待时间，之后每次翻倍
+     */
+    @Value("${value.avatar-import.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${value.avatar-import.timeout-ms:10000}")
+    private int timeoutMs;
+
+    @Autowired
+    private S3Utils s3Utils;
+
+    @Autowired
+    private SysUserMapper userMapper;
+
+    @Autowired
+    private RedisUtils redisUtils;
+
+    @Autowired
+    private PublicProfileCache publicProfileCache;
+
+    /**
+     * 正在导入的googleSub
+     */
+    private final Map<String, Boolean> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private ThreadPoolExecutor workers;
+
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "avatar-import-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        workers.allowCoreThreadTimeOut(true);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "avatar-import-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * 提交头像导入任务
+     *
+     * @param userId     用户ID
+     * @param googleSub  Google账号ID
+     * @param pictureUrl Google头像URL
+     * @param username   用户名（用于生成文件名）
+     * @param token      当前登录令牌，导入完成后同步更新会话中的头像，可为null
+     * @return 是否已提交（重复或队列已满时返回false）
+     */
+    public boolean submit(Long userId, String googleSub, String pictureUrl, String username, String token) {
+        if (userId == null || googleSub == null || pictureUrl == null || pictureUrl.isEmpty()) {
+            return false;
+        }
+        if (inFlight.putIfAbsent(googleSub, Boolean.TRUE) != null) {
+            deduplicated.increment();
+            return false;
+        }
+        ImportTask task = new ImportTask(userId, googleSub, pictureUrl, username, token);
+        try {
+            workers.execute(() -> run(task, 1));
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(googleSub);
+            rejected.increment();
+            logger.warn("头像导入队列已满，放弃导入: {}", username);
+            return false;
+        }
+    }
+
+    /**
+     * 导入统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("activeTransfers", workers.getActiveCount());
+        stats.put("queued", workers.getQueue().size());
+        return stats;
+    }
+
+    private void run(ImportTask task, int attempt) {
+        String avatarUrl;
+        try {
+            avatarUrl = transfer(task);
+        } catch (Exception e) {
+            if (attempt < maxAttempts) {
+                long delay = retryBackoffMs << (attempt - 1);
+                retried.increment();
+                logger.debug("头像导入失败，{}ms后第{}次重试: {}, {}", delay, attempt + 1, task.username(), e.getMessage());
+                scheduleRetry(task, attempt + 1, delay);
+            } else {
+                inFlight.remove(task.googleSub());
+                failed.increment();
+                logger.warn("头像导入失败，将使用默认头像: {}, {}", task.username(), e.getMessage());
+            }
+            return;
+        }
+
+        try {
+            applyAvatar(task, avatarUrl);
+            succeeded.increment();
+        } catch (Exception e) {
+            failed.increment();
+            logger.error("回写用户头像失败: {}", task.username(), e);
+        } finally {
+            inFlight.remove(task.googleSub());
+        }
+    }
+
+    private void scheduleRetry(ImportTask task, int attempt, long delay) {
+        try {
+            retryScheduler.schedule(() -> {
+                try {
+                    workers.execute(() -> run(task, attempt));
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(task.googleSub());
+                    rejected.increment();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(task.googleSub());
+        }
+    }
+
+    /**
+     * 下载Google头像并上传到S3，返回S3头像URL
+     */
+    private String transfer(ImportTask task) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(task.pictureUrl()).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            // 设置User-Agent避免被拒绝
+            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                throw new IOException("下载Google头像失败，响应码: " + status);
+            }
+
+            byte[] imageData;
+            try (InputStream inputStream = connection.getInputStream()) {
+                imageData = readAllBytes(inputStream);
+            }
+            if (imageData.length == 0) {
+                throw new IOException("下载的图片数据为空");
+            }
+
+            String fileExtension = getFileExtension(task.pictureUrl());
+            String fileName = "avatars/google/" + task.username() + "_" + UUID.randomUUID().toString().substring(0, 8) + fileExtension;
+            return s3Utils.uploadImageFromBytes(imageData, fileName, getContentType(fileExtension));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 回写头像：只在用户尚未设置头像时写入，避免覆盖用户在导入期间自行上传的头像
+     */
+    private void applyAvatar(ImportTask task, String avatarUrl) {
+        int updated = userMapper.update(null, new LambdaUpdateWrapper<SysUser>()
+                .eq(SysUser::getId, task.userId())
+                .isNull(SysUser::getAvatar)
+                .set(SysUser::getAvatar, avatarUrl));
+        if (updated == 0) {
+            return;
+        }
+        publicProfileCache.invalidate(task.userId());
+        if (task.token() == null) {
+            return;
+        }
+
+        Object session = redisUtils.getLoginUser(task.token());
+        if (session instanceof LoginUser loginUser && loginUser.getUser() != null
+                && loginUser.getUser().getAvatar() == null) {
+            loginUser.getUser().setAvatar(avatarUrl);
+            redisUtils.setLoginUser(task.token(), loginUser);
+        }
+        logger.info("Google头像导入成功: {}", task.username());
+    }
+
+    private byte[] readAllBytes(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 根据URL获取文件扩展名，Google头像URL通常没有明确的扩展名，默认使用.jpg
+     */
+    private String getFileExtension(String url) {
+        if (url.contains(".png")) {
+            return ".png";
+        } else if (url.contains(".gif")) {
+            return ".gif";
+        } else if (url.contains(".webp")) {
+            return ".webp";
+        }
+        return ".jpg";
+    }
+
+    private String getContentType(String extension) {
+        switch (extension) {
+            case ".png":
+                return "image/png";
+            case ".gif":
+                return "image/gif";
+            case ".webp":
+                return "image/webp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    private record ImportTask(Long userId, String googleSub, String pictureUrl, String username, String token) {
+    }
+}
@@ -0,0 +1,169 @@
+package org.charno.system.support;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import org.charno.common.dto.PublicUserProfile;
+import org.charno.common.entity.SysUser;
+import org.charno.common.utils.LruCache;
+import org.charno.system.mapper.SysUserMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户公开资料本地缓存
+ * 只查询ID、昵称、头像三列，未命中的用户每批用一次IN查询加载；超出容量时淘汰最久未访问的用户；
+ * 用户资料修改时失效本节点缓存，并通过Redis发布订阅通知其他节点
+ */
+@Component
+public class PublicProfileCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicProfileCache.class);
+
+    /**
+     * 失效广播频道，消息体为用户ID
+     */
+    private static final String INVALIDATE_CHANNEL = "reflip:public_profile:invalidate";
+
+    @Value("${value.public-profile-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${value.public-profile-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Autowired
+    private SysUserMapper userMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private LruCache<Long, PublicUserProfile> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>(maxSize, ttlSeconds * 1000);
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 获取单个用户的公开资料，用户不存在时返回null
+     */
+    public PublicUserProfile get(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return getAll(List.of(userId)).get(userId);
+    }
+
+    /**
+     * 批量获取用户公开资料，未命中的用户用一次查询加载；不存在的用户不出现在结果中
+     */
+    public Map<Long, PublicUserProfile> getAll(Collection<Long> userIds) {
+        Map<Long, PublicUserProfile> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long userId : userIds) {
+            if (userId == null || result.containsKey(userId) || missing.contains(userId)) {
+                continue;
+            }
+            PublicUserProfile profile = cache.get(userId);
+            if (profile != null) {
+                hits.increment();
+                result.put(userId, profile);
+            } else {
+                misses.increment();
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        loads.increment();
+        List<SysUser> users = userMapper.selectList(new LambdaQueryWrapper<SysUser>()
+                .select(SysUser::getId, SysUser::getNickname, SysUser::getAvatar)
+                .in(SysUser::getId, missing));
+        for (SysUser user : users) {
+            PublicUserProfile profile = new PublicUserProfile(user.getId(), user.getNickname(), user.getAvatar());
+            result.put(user.getId(), profile);
+            cache.put(user.getId(), profile);
+        }
+        return result;
+    }
+
+    /**
+     * 失效本节点缓存并通知其他节点
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        invalidateLocal(userId);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, userId.toString());
+        } catch (Exception e) {
+            // 其他节点最迟在本地TTL到期后失效
+            logger.warn("广播用户公开资料失效消息失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            invalidateLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            logger.warn("无效的用户公开资料失效消息: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("loads", loads.sum());
+        stats.put("evictions", cache.evictions());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private void invalidateLocal(Long userId) {
+        if (cache.remove(userId)) {
+            invalidations.increment();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.charno.system.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户角色调整记录清理测试
+ */
+class RolePermissionCacheTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+
+    private RolePermissionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        cache = new RolePermissionCache();
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(cache, "userRoleTtlMinutes", 1440L);
+    }
+
+    @Test
+    void expiredOverridesAreCheckedInOneBatch() {
+        // 本地有效期为负，写入后即已过期
+        ReflectionTestUtils.setField(cache, "userRoleTtlMinutes", -60L);
+        putOverride(1L, 2);
+        putOverride(3L, 4);
+        when(valueOperations.multiGet(Arrays.asList("reflip:permission:user_role:1", "reflip:permission:user_role:3")))
+                .thenReturn(Arrays.asList(null, "5"));
+
+        ReflectionTestUtils.setField(cache, "userRoleTtlMinutes", 1440L);
+        sweep();
+
+        Map<Long, ?> overrides = overrides();
+        assertFalse(overrides.containsKey(1L));
+        assertTrue(overrides.containsKey(3L));
+        assertEquals(5, cache.resolveRoleId(3L, 4));
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    void unexpiredOverridesAreNotChecked() {
+        putOverride(1L, 2);
+        sweep();
+
+        verify(valueOperations, never()).multiGet(anyList());
+        assertEquals(2, cache.resolveRoleId(1L, 1));
+    }
+
+    private void putOverride(Long userId, Integer roleId) {
+        ReflectionTestUtils.invokeMethod(cache, "putOverride", userId, roleId);
+    }
+
+    private void sweep() {
+        ReflectionTestUtils.invokeMethod(cache, "sweepExpiredOverrides");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, ?> overrides() {
+        return (Map<Long, ?>) ReflectionTestUtils.getField(cache, "userRoleOverrides");
+    }
+}
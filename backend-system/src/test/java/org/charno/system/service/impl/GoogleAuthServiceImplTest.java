@@ -0,0 +1,89 @@
+package org.charno.system.service.impl;
+
+import org.charno.system.mapper.SysUserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Google注册用户名生成测试：按前缀一次查出已占用的用户名，在内存中选择可用后缀
+ */
+class GoogleAuthServiceImplTest {
+
+    private final SysUserMapper userMapper = mock(SysUserMapper.class);
+
+    private GoogleAuthServiceImpl googleAuthService;
+
+    @BeforeEach
+    void setUp() {
+        googleAuthService = new GoogleAuthServiceImpl();
+        ReflectionTestUtils.setField(googleAuthService, "userMapper", userMapper);
+    }
+
+    @Test
+    void unusedBaseNameIsReturnedAsIs() {
+        taken();
+        assertEquals("alice", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void firstFreeSuffixFillsGap() {
+        taken("alice", "alice1", "alice3");
+        assertEquals("alice2", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void nextSuffixFollowsContiguousRun() {
+        taken("alice", "alice1", "alice2");
+        assertEquals("alice3", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void baseNameIsReusedWhenOnlySuffixedNamesExist() {
+        taken("alice1", "alice2");
+        assertEquals("alice", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void nonNumericAndZeroPaddedSuffixesDoNotCount() {
+        // alice01、alice_x、alicebob都不是base+数字形式，不占用后缀
+        taken("alice", "alice01", "alice_x", "alicebob", "alice1x");
+        assertEquals("alice1", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void oversizedNumericSuffixIsIgnored() {
+        taken("alice", "alice12345678901");
+        assertEquals("alice1", generate("alice@gmail.com"));
+    }
+
+    @Test
+    void likeWildcardsInPrefixAreEscaped() {
+        taken("john_doe", "john_doe1");
+        assertEquals("john_doe2", generate("john_doe@example.com"));
+        verify(userMapper).selectUsernamesByPrefix("john\\_doe%");
+    }
+
+    @Test
+    void percentAndBackslashInPrefixAreEscaped() {
+        taken();
+        assertEquals("a%b\\c", generate("a%b\\c@example.com"));
+        verify(userMapper).selectUsernamesByPrefix("a\\%b\\\\c%");
+    }
+
+    private void taken(String... usernames) {
+        when(userMapper.selectUsernamesByPrefix(anyString())).thenReturn(List.of(usernames));
+    }
+
+    private String generate(String email) {
+        return ReflectionTestUtils.invokeMethod(googleAuthService, "generateUniqueUsername", email);
+    }
+}
@@ -0,0 +1,53 @@
+-- 创建会话摘要表（聊天列表读模型）
+CREATE TABLE chat_conversation (
+    id BIGSERIAL PRIMARY KEY,
+    owner_user_id BIGINT NOT NULL,
+    partner_user_id BIGINT NOT NULL,
+    last_message_id BIGINT,
+    last_message_preview VARCHAR(200),
+    last_message_time TIMESTAMP,
+    unread_count INTEGER NOT NULL DEFAULT 0,
+    update_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    -- 每个用户与每个聊天对象只有一行
+    CONSTRAINT uk_chat_conversation_owner_partner UNIQUE (owner_user_id, partner_user_id)
+);
+
+-- 聊天列表按最后消息时间倒序分页
+CREATE INDEX idx_chat_conversation_owner_time ON chat_conversation(owner_user_id, last_message_time DESC, id DESC);
+
+-- 添加表注释
+COMMENT ON TABLE chat_conversation IS '会话摘要表';
+COMMENT ON COLUMN chat_conversation.id IS '主键';
+COMMENT ON COLUMN chat_conversation.owner_user_id IS '会话所属用户ID';
+COMMENT ON COLUMN chat_conversation.partner_user_id IS '聊天对象用户ID';
+COMMENT ON COLUMN chat_conversation.last_message_id IS '最后一条消息ID';
+COMMENT ON COLUMN chat_conversation.last_message_preview IS '最后一条消息预览';
+COMMENT ON COLUMN chat_conversation.last_message_time IS '最后一条消息时间';
+COMMENT ON COLUMN chat_conversation.unread_count IS '未读消息数量';
+COMMENT ON COLUMN chat_conversation.update_time IS '更新时间';
+
+-- 根据已有消息回填会话摘要
+INSERT INTO chat_conversation (owner_user_id, partner_user_id, last_message_id, last_message_preview, last_message_time, unread_count)
+SELECT latest.owner_user_id,
+       latest.partner_user_id,
+       latest.id,
+       LEFT(latest.message_content, 200),
+       latest.send_time,
+       (SELECT COUNT(*) FROM chat_message unread
+        WHERE unread.sender_user_id = latest.partner_user_id
+          AND unread.receiver_user_id = latest.owner_user_id
+          AND unread.is_read = false
+          AND unread.is_delete = false)
+FROM (
+    SELECT DISTINCT ON (owner_user_id, partner_user_id) *
+    FROM (
+        SELECT sender_user_id AS owner_user_id, receiver_user_id AS partner_user_id, id, message_content, send_time
+        FROM chat_message WHERE is_delete = false
+        UNION ALL
+        SELECT receiver_user_id AS owner_user_id, sender_user_id AS partner_user_id, id, message_content, send_time
+        FROM chat_message WHERE is_delete = false
+    ) pairs
+    ORDER BY owner_user_id, partner_user_id, id DESC
+) latest
+ON CONFLICT (owner_user_id, partner_user_id) DO NOTHING;
@@ -0,0 +1,9 @@
+-- 聊天记录会话索引
+-- 按规范化的会话键 (LEAST(发送者, 接收者), GREATEST(发送者, 接收者)) 聚合两个用户之间的双向消息，
+-- 配合 (send_time DESC, id DESC) 支持聊天记录的游标分页，避免 OR 条件和 OFFSET 扫描
+CREATE INDEX IF NOT EXISTS idx_chat_message_conversation ON chat_message (
+    LEAST(sender_user_id, receiver_user_id),
+    GREATEST(sender_user_id, receiver_user_id),
+    send_time DESC,
+    id DESC
+) WHERE is_delete = false;
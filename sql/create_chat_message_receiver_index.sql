@@ -0,0 +1,4 @@
+-- 聊天消息接收者索引
+-- WebSocket连接建立时按 (接收者, 消息ID倒序) 补发送达水位之后的新消息，配合消息ID游标逐批读取
+CREATE INDEX IF NOT EXISTS idx_chat_message_receiver_id ON chat_message (receiver_user_id, id)
+    WHERE is_delete = false;
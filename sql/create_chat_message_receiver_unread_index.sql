@@ -0,0 +1,5 @@
+-- 聊天消息接收者未读索引
+-- 离线消息补发在送达水位之后的新消息补完后，再按 (接收者, 消息ID倒序) 补发水位以内仍未读的消息；
+-- 部分索引只包含未读消息，读取时不必扫描接收者的全部历史消息
+CREATE INDEX IF NOT EXISTS idx_chat_message_receiver_unread ON chat_message (receiver_user_id, id DESC)
+    WHERE is_read = false AND is_delete = false;
@@ -0,0 +1,80 @@
+-- 聊天消息全文检索（在线迁移，可重复执行）
+-- content_tsv 为普通列，由触发器在写入/更新 message_content、message_type 时维护；图片、文件等媒体消息的内容为URL，不参与检索。
+-- 不使用 GENERATED ... STORED：在已有数据的表上添加存储生成列会在 ACCESS EXCLUSIVE 锁下重写整张表，期间聊天消息无法读写。
+-- 步骤：1) 添加可空列，只修改元数据；2) 创建触发器，此后写入的行即时维护；3) 分批回填存量行，每批单独提交；4) 并发创建索引。
+-- 第3、4步不能在事务块中执行，须以自动提交方式运行本脚本（psql 默认即是，不要加 -1/--single-transaction）。
+--
+-- 分词使用 simple 配置（不做词干化和停用词处理），适用于多语言混合的聊天内容，查询端须使用同一配置：websearch_to_tsquery('simple', ...)。
+-- simple 按空白和标点切词，不能切分中日韩文字（连续的汉字整体成为一个词），
+-- 因此含中日韩字符的关键词不走全文检索，改为对 message_content 做子串匹配（ILIKE），由 pg_trgm 三元组索引加速，结果按消息ID倒序。
+-- 三元组提取依赖数据库的 LC_CTYPE：UTF-8 区域（如 en_US.UTF-8、zh_CN.UTF-8）下汉字参与提取；C/POSIX 区域下汉字被视为分隔符，
+-- 索引无法缩小范围，查询退化为在该用户的消息中逐行匹配。少于3个字符的关键词同样无法利用三元组索引。
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- 1) 可空且无默认值的列只修改元数据
+ALTER TABLE chat_message ADD COLUMN IF NOT EXISTS content_tsv tsvector;
+
+-- 旧版脚本创建的生成列改为普通列（保留已有数据，不重写表），之后由触发器维护
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_attribute
+               WHERE attrelid = 'chat_message'::regclass AND attname = 'content_tsv' AND attgenerated = 's') THEN
+        ALTER TABLE chat_message ALTER COLUMN content_tsv DROP EXPRESSION;
+    END IF;
+END $$;
+
+-- 2) 检索向量的计算规则，触发器与回填共用
+CREATE OR REPLACE FUNCTION chat_message_content_tsv(p_message_type varchar, p_message_content text)
+    RETURNS tsvector
+    LANGUAGE sql IMMUTABLE AS $$
+    SELECT CASE WHEN p_message_type IN ('image', 'file', 'voice', 'video') THEN NULL
+                ELSE to_tsvector('simple', coalesce(p_message_content, ''))
+           END
+$$;
+
+CREATE OR REPLACE FUNCTION chat_message_content_tsv_trigger()
+    RETURNS trigger
+    LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.content_tsv := chat_message_content_tsv(NEW.message_type, NEW.message_content);
+    RETURN NEW;
+END
+$$;
+
+DROP TRIGGER IF EXISTS trg_chat_message_content_tsv ON chat_message;
+CREATE TRIGGER trg_chat_message_content_tsv
+    BEFORE INSERT OR UPDATE OF message_content, message_type ON chat_message
+    FOR EACH ROW EXECUTE FUNCTION chat_message_content_tsv_trigger();
+
+-- 3) 按主键分批回填存量行，每批5000行并提交，行锁只持有到本批结束
+DO $$
+DECLARE
+    last_id  bigint := 0;
+    batch_id bigint;
+BEGIN
+    LOOP
+        WITH batch AS (
+            SELECT id FROM chat_message WHERE id > last_id ORDER BY id LIMIT 5000
+        ), filled AS (
+            UPDATE chat_message m
+               SET content_tsv = chat_message_content_tsv(m.message_type, m.message_content)
+              FROM batch b
+             WHERE m.id = b.id
+               AND m.content_tsv IS NULL
+               AND coalesce(m.message_type, 'text') NOT IN ('image', 'file', 'voice', 'video')
+        )
+        SELECT max(id) INTO batch_id FROM batch;
+
+        EXIT WHEN batch_id IS NULL;
+        last_id := batch_id;
+        COMMIT;
+    END LOOP;
+END $$;
+
+-- 4) 并发建索引，不阻塞写入
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chat_message_content_tsv ON chat_message USING GIN (content_tsv)
+    WHERE is_delete = false;
+
+-- 中日韩关键词的子串匹配，谓词须与查询端（ChatMessageMapper.searchMessagesBySubstring）一致
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chat_message_content_trgm ON chat_message USING GIN (message_content gin_trgm_ops)
+    WHERE is_delete = false AND coalesce(message_type, 'text') NOT IN ('image', 'file', 'voice', 'video');
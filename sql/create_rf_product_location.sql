@@ -0,0 +1,48 @@
+-- 商品位置索引
+-- rf_product.address 为Google Maps地址JSON（formattedAddress、latitude、longitude），
+-- 由触发器解析出经纬度写入 latitude/longitude 列；地址不是合法JSON或坐标越界时置空。
+-- 使用 cube + earthdistance 扩展（PostgreSQL自带contrib，无需PostGIS）：
+--   ll_to_earth(latitude, longitude) 上的GiST索引同时支持半径过滤（earth_box）和按距离的KNN排序（<->）
+CREATE EXTENSION IF NOT EXISTS cube;
+CREATE EXTENSION IF NOT EXISTS earthdistance;
+
+ALTER TABLE rf_product ADD COLUMN IF NOT EXISTS latitude double precision;
+ALTER TABLE rf_product ADD COLUMN IF NOT EXISTS longitude double precision;
+
+CREATE OR REPLACE FUNCTION rf_product_extract_coordinates() RETURNS trigger AS $$
+DECLARE
+    location jsonb;
+BEGIN
+    NEW.latitude := NULL;
+    NEW.longitude := NULL;
+    IF NEW.address IS NOT NULL AND NEW.address <> '' THEN
+        BEGIN
+            location := NEW.address::jsonb;
+            IF jsonb_typeof(location) = 'object' THEN
+                NEW.latitude := (location ->> 'latitude')::double precision;
+                NEW.longitude := (location ->> 'longitude')::double precision;
+            END IF;
+        EXCEPTION WHEN others THEN
+            NEW.latitude := NULL;
+            NEW.longitude := NULL;
+        END;
+    END IF;
+    IF NEW.latitude IS NULL OR NEW.longitude IS NULL
+            OR NEW.latitude NOT BETWEEN -90 AND 90 OR NEW.longitude NOT BETWEEN -180 AND 180 THEN
+        NEW.latitude := NULL;
+        NEW.longitude := NULL;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_rf_product_coordinates ON rf_product;
+CREATE TRIGGER trg_rf_product_coordinates
+    BEFORE INSERT OR UPDATE OF address ON rf_product
+    FOR EACH ROW EXECUTE FUNCTION rf_product_extract_coordinates();
+
+-- 回填已有商品
+UPDATE rf_product SET address = address WHERE address IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_rf_product_location ON rf_product USING GIST (ll_to_earth(latitude, longitude))
+    WHERE is_delete = false AND latitude IS NOT NULL;
@@ -0,0 +1,18 @@
+-- 商品全文检索
+-- search_tsv 为按权重组合的生成列：名称(A) > 类别(B) > 描述(C)，由数据库在写入/更新时自动维护；
+-- 名称上的三元组索引用于拼写容错匹配（word_similarity，即 keyword <% name）。
+-- 查询端须使用同一分词配置：websearch_to_tsquery('english', ...)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE rf_product
+    ADD COLUMN IF NOT EXISTS search_tsv tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(category, '')), 'B') ||
+        setweight(to_tsvector('english', coalesce(description, '')), 'C')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_rf_product_search_tsv ON rf_product USING GIN (search_tsv)
+    WHERE is_delete = false;
+
+CREATE INDEX IF NOT EXISTS idx_rf_product_name_trgm ON rf_product USING GIN (name gin_trgm_ops)
+    WHERE is_delete = false;
@@ -0,0 +1,4 @@
+-- 用户名前缀查询索引
+-- sys_user_username_key 唯一约束使用默认排序规则，无法用于 LIKE 'xxx%' 前缀匹配，
+-- 这里补充 varchar_pattern_ops 索引，供Google注册时一次性查询同前缀的已占用用户名
+CREATE INDEX IF NOT EXISTS idx_sys_user_username_prefix ON sys_user (username varchar_pattern_ops);